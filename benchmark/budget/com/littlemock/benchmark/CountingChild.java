@@ -0,0 +1,14 @@
+package com.littlemock.benchmark;
+
+/**
+ * A view that counts how often it did the work of a measure and a layout pass, that is how often
+ * onMeasure and onLayout ran. View.measure only runs onMeasure for a requested layout or new measure
+ * specs, like on a device.
+ */
+interface CountingChild {
+    int getMeasureCount();
+
+    int getLayoutCount();
+
+    void resetCounts();
+}
@@ -0,0 +1,57 @@
+package com.littlemock.benchmark;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import com.littlemock.library.DynamicRelativeLayout;
+
+/**
+ * A DynamicRelativeLayout that counts its own passes, so a nested one is checked like any other child.
+ */
+class CountingLayout extends DynamicRelativeLayout implements CountingChild {
+    private int measureCount;
+    private int layoutCount;
+
+    CountingLayout(Context context) {
+        super(context);
+    }
+
+    CountingLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Called by the inflater once the children are added, like LayoutInflater does.
+     */
+    void finishInflate() {
+        onFinishInflate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        measureCount++;
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        layoutCount++;
+        super.onLayout(changed, l, t, r, b);
+    }
+
+    @Override
+    public int getMeasureCount() {
+        return measureCount;
+    }
+
+    @Override
+    public int getLayoutCount() {
+        return layoutCount;
+    }
+
+    @Override
+    public void resetCounts() {
+        measureCount = 0;
+        layoutCount = 0;
+    }
+}
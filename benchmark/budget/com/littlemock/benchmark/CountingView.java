@@ -0,0 +1,70 @@
+package com.littlemock.benchmark;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * A leaf view with a fixed content size, e.g. a Button and its text.
+ */
+class CountingView extends View implements CountingChild {
+    static final int DEFAULT_CONTENT_WIDTH = 120;
+    static final int DEFAULT_CONTENT_HEIGHT = 48;
+
+    private int contentWidth = DEFAULT_CONTENT_WIDTH;
+    private int contentHeight = DEFAULT_CONTENT_HEIGHT;
+    private int measureCount;
+    private int layoutCount;
+
+    CountingView(Context context) {
+        super(context);
+    }
+
+    CountingView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Changes the content like new text would and requests a layout.
+     */
+    void setContentSize(int contentWidth, int contentHeight) {
+        this.contentWidth = contentWidth;
+        this.contentHeight = contentHeight;
+        requestLayout();
+    }
+
+    int getContentWidth() {
+        return contentWidth;
+    }
+
+    int getContentHeight() {
+        return contentHeight;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        measureCount++;
+        setMeasuredDimension(resolveSize(contentWidth, widthMeasureSpec), resolveSize(contentHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        layoutCount++;
+    }
+
+    @Override
+    public int getMeasureCount() {
+        return measureCount;
+    }
+
+    @Override
+    public int getLayoutCount() {
+        return layoutCount;
+    }
+
+    @Override
+    public void resetCounts() {
+        measureCount = 0;
+        layoutCount = 0;
+    }
+}
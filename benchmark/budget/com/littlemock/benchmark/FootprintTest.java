@@ -0,0 +1,37 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.NodeSpec;
+import com.littlemock.engine.NodeSpecInterner;
+
+import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The retained sizes {@link MemoryFootprint} reports, per node of measured solvers.
+ */
+public class FootprintTest {
+    private static long perNode(int solverCount, SyntheticGraph.Shape shape, int nodeCount, NodeSpecInterner interner) {
+        return MemoryFootprint.measure(solverCount, shape, nodeCount, interner) / (solverCount * nodeCount);
+    }
+
+    @Test
+    public void sharedSpecsSaveASpecPerNode() {
+        final long copied = perNode(MemoryFootprint.ROWS, SyntheticGraph.Shape.WIDE, MemoryFootprint.ROW_CHILDREN, null);
+        final long interned = perNode(MemoryFootprint.ROWS, SyntheticGraph.Shape.WIDE, MemoryFootprint.ROW_CHILDREN,
+                new NodeSpecInterner());
+        final long spec = ClassLayout.parseClass(NodeSpec.class).instanceSize();
+        assertTrue("list rows take " + interned + " bytes/node interned and " + copied + " copied",
+                copied - interned >= spec);
+    }
+
+    @Test
+    public void unsharedSpecsCostNoMore() {
+        final long copied = perNode(1, SyntheticGraph.Shape.CANVAS, MemoryFootprint.CANVAS_NODES, null);
+        final long interned = perNode(1, SyntheticGraph.Shape.CANVAS, MemoryFootprint.CANVAS_NODES,
+                new NodeSpecInterner());
+        assertTrue("a canvas takes " + interned + " bytes/node interned and " + copied + " copied",
+                interned <= copied);
+    }
+}
@@ -0,0 +1,319 @@
+package com.littlemock.benchmark;
+
+import android.content.Context;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import com.littlemock.engine.NodeSpec;
+import com.littlemock.library.DynamicRelativeLayout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts how often every view does the work of a measure and a layout pass and fails when one exceeds
+ * the budget, by default once each. The layouts are real DynamicRelativeLayouts, run on a plain JVM
+ * against stubs of the platform views in the stubs folder. Those measure and lay out a view again like
+ * Android 4.1 does, for a requested layout or new measure specs, so the counts are the onMeasure and
+ * onLayout calls a device would make.
+ * <p/>
+ * The layouts are sample/res/layout/main.xml, inflated the way LayoutInflater does, generated graphs,
+ * a chain of GONE views and DynamicRelativeLayouts nested in wrap_content children, where a child
+ * measured twice by every level would be measured 2^depth times at the bottom. Every layout goes
+ * through the same passes, from the first measure to a rotation and a GONE child. The classes are
+ * test classes of the benchmark module, verify runs the check:
+ * <pre>
+ * mvn -pl engine,benchmark verify [-Dmeasure.budget=1] [-Dlayout.budget=1]
+ * </pre>
+ */
+public class MeasureBudget {
+    static final int DEFAULT_BUDGET = 1;
+    static final String DEFAULT_SAMPLE_LAYOUT = "sample/res/layout/main.xml";
+    static final int GENERATED_NODES = 200;
+    static final int NESTING_DEPTH = 3;
+    static final int NESTED_CHILDREN = 4;
+
+    /**
+     * The content view of a window: measures its children with the specs of the window like a
+     * FrameLayout and places them at its top left corner.
+     */
+    static final class ContentFrame extends ViewGroup {
+        final String name;
+
+        ContentFrame(Context context, String name) {
+            super(context);
+            this.name = name;
+        }
+
+        /**
+         * The layout the budget is checked for.
+         */
+        ViewGroup getLayout() {
+            return (ViewGroup) getChildAt(0);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            int width = 0;
+            int height = 0;
+            for (int i = 0; i < getChildCount(); i++) {
+                final View child = getChildAt(i);
+                final ViewGroup.LayoutParams lp = child.getLayoutParams();
+                child.measure(getChildMeasureSpec(widthMeasureSpec, lp.width),
+                        getChildMeasureSpec(heightMeasureSpec, lp.height));
+                width = Math.max(width, child.getMeasuredWidth());
+                height = Math.max(height, child.getMeasuredHeight());
+            }
+            setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            for (int i = 0; i < getChildCount(); i++) {
+                final View child = getChildAt(i);
+                child.layout(0, 0, child.getMeasuredWidth(), child.getMeasuredHeight());
+            }
+        }
+
+        private static int getChildMeasureSpec(int measureSpec, int childDimension) {
+            if (childDimension >= 0)
+                return MeasureSpec.makeMeasureSpec(childDimension, MeasureSpec.EXACTLY);
+            if (childDimension == ViewGroup.LayoutParams.MATCH_PARENT
+                    || MeasureSpec.getMode(measureSpec) == MeasureSpec.UNSPECIFIED)
+                return measureSpec;
+            return MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(measureSpec), MeasureSpec.AT_MOST);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int measureBudget = DEFAULT_BUDGET;
+        int layoutBudget = DEFAULT_BUDGET;
+        String sampleLayout = DEFAULT_SAMPLE_LAYOUT;
+        for (String arg : args) {
+            if (arg.startsWith("--measure-budget=")) {
+                measureBudget = Integer.parseInt(arg.substring("--measure-budget=".length()));
+            } else if (arg.startsWith("--layout-budget=")) {
+                layoutBudget = Integer.parseInt(arg.substring("--layout-budget=".length()));
+            } else if (arg.startsWith("--sample-layout=")) {
+                sampleLayout = arg.substring("--sample-layout=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg
+                        + ", expected --measure-budget=n, --layout-budget=n or --sample-layout=file");
+            }
+        }
+
+        final Context context = new Context();
+        final List<ContentFrame> frames = new ArrayList<ContentFrame>();
+        final ContentFrame sample = new ContentFrame(context, "main.xml");
+        new XmlLayoutInflater(context).inflate(new File(sampleLayout), sample);
+        frames.add(sample);
+        for (SyntheticGraph.Shape shape : SyntheticGraph.Shape.values()) {
+            frames.add(createFrame(context, shape.name(), createGeneratedLayout(context, shape)));
+        }
+        frames.add(createFrame(context, "GONE chain", createGoneChain(context)));
+        frames.add(createFrame(context, "nested", createNestedLayout(context, NESTING_DEPTH)));
+
+        final List<String> violations = new ArrayList<String>();
+        for (ContentFrame frame : frames) {
+            run(frame, measureBudget, layoutBudget, violations);
+        }
+        for (String violation : violations) {
+            System.out.println("OVER BUDGET " + violation);
+        }
+        if (!violations.isEmpty())
+            throw new RuntimeException(violations.size() + " views exceeded the budget of " + measureBudget
+                    + " onMeasure and " + layoutBudget + " onLayout calls per pass");
+    }
+
+    private static ContentFrame createFrame(Context context, String name, DynamicRelativeLayout layout) {
+        final ContentFrame frame = new ContentFrame(context, name);
+        frame.addView(layout, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+        return frame;
+    }
+
+    /**
+     * Runs the passes of every layout, checking the calls of each one.
+     */
+    private static void run(ContentFrame frame, int measureBudget, int layoutBudget, List<String> violations) {
+        final int width = LayoutSolverBenchmark.PARENT_WIDTH;
+        final int height = LayoutSolverBenchmark.PARENT_HEIGHT;
+        final ViewGroup layout = frame.getLayout();
+        final CountingView first = (CountingView) layout.getChildAt(0);
+        pass(frame, "first pass", exactly(width), exactly(height), measureBudget, layoutBudget, violations);
+        pass(frame, "same size", exactly(width), exactly(height), measureBudget, layoutBudget, violations);
+        pass(frame, "resize width", exactly(width / 2), exactly(height), measureBudget, layoutBudget, violations);
+        pass(frame, "rotate", exactly(height), exactly(width), measureBudget, layoutBudget, violations);
+
+        first.setContentSize(first.getContentWidth() + 10, first.getContentHeight());
+        pass(frame, "child changed", exactly(height), exactly(width), measureBudget, layoutBudget, violations);
+
+        pass(frame, "wrap_content", atMost(width), atMost(height), measureBudget, layoutBudget, violations);
+        first.setContentSize(first.getContentWidth() + 10, first.getContentHeight());
+        pass(frame, "wrap_content child changed", atMost(width), atMost(height), measureBudget, layoutBudget,
+                violations);
+
+        final View last = layout.getChildAt(layout.getChildCount() - 1);
+        last.setVisibility(last.getVisibility() == View.GONE ? View.VISIBLE : View.GONE);
+        pass(frame, "GONE toggled", exactly(width), exactly(height), measureBudget, layoutBudget, violations);
+    }
+
+    private static void pass(ContentFrame frame, String pass, int widthMeasureSpec, int heightMeasureSpec,
+                             int measureBudget, int layoutBudget, List<String> violations) {
+        resetCounts(frame.getLayout());
+        frame.measure(widthMeasureSpec, heightMeasureSpec);
+        frame.layout(0, 0, frame.getMeasuredWidth(), frame.getMeasuredHeight());
+        final int before = violations.size();
+        check(frame.getLayout(), frame.name + ", " + pass, false, measureBudget, layoutBudget, violations);
+        System.out.println(String.format("%-12s %-28s %6d onMeasure calls %s", frame.name, pass,
+                totalMeasureCount(frame.getLayout()), violations.size() > before ? "OVER BUDGET" : "ok"));
+    }
+
+    private static void resetCounts(View view) {
+        ((CountingChild) view).resetCounts();
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                resetCounts(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Adds a description of view and of every descendant over budget to violations. A GONE view and the
+     * descendants of one must not be measured or laid out at all.
+     */
+    private static void check(View view, String pass, boolean gone, int measureBudget, int layoutBudget,
+                              List<String> violations) {
+        final CountingChild counts = (CountingChild) view;
+        gone |= view.getVisibility() == View.GONE;
+        if (counts.getMeasureCount() > (gone ? 0 : measureBudget) || counts.getLayoutCount() > (gone ? 0 : layoutBudget)) {
+            violations.add(pass + ": " + (gone ? "GONE " : "") + describe(view) + " measured "
+                    + counts.getMeasureCount() + "x, laid out " + counts.getLayoutCount() + "x");
+        }
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                check(group.getChildAt(i), pass, gone, measureBudget, layoutBudget, violations);
+            }
+        }
+    }
+
+    private static String describe(View view) {
+        final String name = view instanceof DynamicRelativeLayout ? "layout" : "view";
+        if (view.getId() == View.NO_ID)
+            return name + " at index " + ((ViewGroup) view.getParent()).indexOfChild(view);
+        return name + " " + view.getResources().getResourceEntryName(view.getId());
+    }
+
+    private static int totalMeasureCount(View view) {
+        int total = ((CountingChild) view).getMeasureCount();
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                total += totalMeasureCount(group.getChildAt(i));
+            }
+        }
+        return total;
+    }
+
+    private static int exactly(int size) {
+        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+    }
+
+    private static int atMost(int size) {
+        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.AT_MOST);
+    }
+
+    /**
+     * Id of node i of a generated layout, views get their ids by name like with @+id.
+     */
+    private static int idOf(Context context, int node) {
+        return context.getResources().getIdentifier("node" + node, "id", context.getPackageName());
+    }
+
+    private static DynamicRelativeLayout.LayoutParams toLayoutParams(Context context, NodeSpec spec) {
+        final DynamicRelativeLayout.LayoutParams lp = new DynamicRelativeLayout.LayoutParams(
+                new ViewGroup.LayoutParams(spec.width, spec.height));
+        lp.setMargins(spec.leftMargin, spec.topMargin, spec.rightMargin, spec.bottomMargin);
+        lp.dynamicMarginLeft = spec.dynamicMarginLeft;
+        lp.dynamicMarginTop = spec.dynamicMarginTop;
+        lp.dynamicMarginRight = spec.dynamicMarginRight;
+        lp.dynamicMarginBottom = spec.dynamicMarginBottom;
+        lp.dynamicWidth = spec.dynamicWidth;
+        lp.dynamicHeight = spec.dynamicHeight;
+        lp.dynamicWidthMax = spec.dynamicWidthMax;
+        lp.dynamicWidthMin = spec.dynamicWidthMin;
+        lp.dynamicHeightMax = spec.dynamicHeightMax;
+        lp.dynamicHeightMin = spec.dynamicHeightMin;
+        lp.dynamicBaseRefLeft = toViewId(context, spec.dynamicBaseRefLeft);
+        lp.dynamicBaseRefTop = toViewId(context, spec.dynamicBaseRefTop);
+        lp.dynamicBaseRefRight = toViewId(context, spec.dynamicBaseRefRight);
+        lp.dynamicBaseRefBottom = toViewId(context, spec.dynamicBaseRefBottom);
+        return lp;
+    }
+
+    // the generated graphs number their nodes from 1, see SyntheticGraph.idOf
+    private static int toViewId(Context context, int graphId) {
+        return graphId == NodeSpec.NO_ID ? View.NO_ID : idOf(context, graphId - 1);
+    }
+
+    private static DynamicRelativeLayout createGeneratedLayout(Context context, SyntheticGraph.Shape shape) {
+        final SyntheticGraph graph = new SyntheticGraph(shape, GENERATED_NODES);
+        final CountingLayout layout = new CountingLayout(context);
+        for (int i = 0; i < GENERATED_NODES; i++) {
+            final CountingView child = new CountingView(context);
+            child.setId(idOf(context, i));
+            child.setContentSize(graph.getContentWidth(i), graph.getContentHeight(i));
+            if (graph.isGone(i))
+                child.setVisibility(View.GONE);
+            layout.addView(child, toLayoutParams(context, graph.getSpec(i)));
+        }
+        return layout;
+    }
+
+    /**
+     * A chain where every view is placed right of the previous one, with all views but the first and
+     * the last GONE, so the last one is based on GONE views through the whole chain.
+     */
+    private static DynamicRelativeLayout createGoneChain(Context context) {
+        final CountingLayout layout = new CountingLayout(context);
+        for (int i = 0; i < GENERATED_NODES; i++) {
+            final CountingView child = new CountingView(context);
+            child.setId(idOf(context, i));
+            if (i > 0 && i < GENERATED_NODES - 1)
+                child.setVisibility(View.GONE);
+            final DynamicRelativeLayout.LayoutParams lp = new DynamicRelativeLayout.LayoutParams(
+                    new ViewGroup.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            lp.leftMargin = 1;
+            if (i > 0)
+                lp.dynamicBaseRefLeft = idOf(context, i - 1);
+            layout.addView(child, lp);
+        }
+        return layout;
+    }
+
+    /**
+     * A layout whose children are wrap_content layouts of the same kind, depth levels deep, each child
+     * based on the previous one. The first child of every layout is a leaf view, so a change of it is
+     * the change of a single child.
+     */
+    private static DynamicRelativeLayout createNestedLayout(Context context, int depth) {
+        final CountingLayout layout = new CountingLayout(context);
+        for (int i = 0; i < NESTED_CHILDREN; i++) {
+            final View child = i == 0 || depth == 1 ? new CountingView(context) : createNestedLayout(context, depth - 1);
+            child.setId(idOf(context, i));
+            final DynamicRelativeLayout.LayoutParams lp = new DynamicRelativeLayout.LayoutParams(
+                    new ViewGroup.LayoutParams(i == NESTED_CHILDREN - 1 ? ViewGroup.LayoutParams.MATCH_PARENT
+                            : ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            lp.dynamicMarginLeft = .05f;
+            if (i > 0)
+                lp.dynamicBaseRefTop = idOf(context, i - 1);
+            layout.addView(child, lp);
+        }
+        return layout;
+    }
+}
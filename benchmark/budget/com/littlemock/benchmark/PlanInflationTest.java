@@ -0,0 +1,132 @@
+package com.littlemock.benchmark;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.littlemock.compiler.LayoutCompiler;
+import com.littlemock.engine.LayoutTemplate;
+import com.littlemock.engine.NodeSpec;
+import com.littlemock.library.DynamicRelativeLayout;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A layout inflated with the plan the compiler wrote for it is placed like one whose children parse
+ * their attributes.
+ */
+public class PlanInflationTest {
+    // the row layout the compiler tests compile as well
+    private static final File RESOURCES = new File("../compiler/test-res");
+    private static final File ROW = new File(RESOURCES, "layout/row.xml");
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File assets;
+    private Map<?, ?> templates;
+
+    @Before
+    public void setUp() throws Exception {
+        assets = folder.newFolder("assets");
+        final LayoutCompiler compiler = new LayoutCompiler(RESOURCES, assets);
+        assertEquals(1, compiler.compile());
+
+        final Field field = DynamicRelativeLayout.class.getDeclaredField("templates");
+        field.setAccessible(true);
+        templates = (Map<?, ?>) field.get(null);
+        clearTemplates();
+    }
+
+    private void clearTemplates() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    private Context createContext(boolean withPlans, boolean debuggable) {
+        final Context context = new Context();
+        if (withPlans)
+            context.getAssets().setDirectory(assets);
+        if (debuggable)
+            context.getApplicationInfo().flags |= ApplicationInfo.FLAG_DEBUGGABLE;
+        return context;
+    }
+
+    /**
+     * Inflates the row, runs a pass and returns the frames of its children.
+     */
+    private static int[] inflate(Context context) throws IOException {
+        final MeasureBudget.ContentFrame frame = new MeasureBudget.ContentFrame(context, "row");
+        new XmlLayoutInflater(context).inflate(ROW, frame);
+        frame.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        frame.layout(0, 0, WIDTH, HEIGHT);
+
+        final ViewGroup row = frame.getLayout();
+        final int[] frames = new int[row.getChildCount() * 4];
+        for (int i = 0; i < row.getChildCount(); i++) {
+            final View child = row.getChildAt(i);
+            frames[i * 4] = child.getLeft();
+            frames[i * 4 + 1] = child.getTop();
+            frames[i * 4 + 2] = child.getRight();
+            frames[i * 4 + 3] = child.getBottom();
+        }
+        return frames;
+    }
+
+    /**
+     * The template shared by the rows inflated in context. One created from a plan has no sizes in
+     * pixels, one compiled from the first row has those of its children.
+     */
+    private LayoutTemplate getTemplate(Context context) {
+        synchronized (templates) {
+            final SparseArray<?> configurationTemplates =
+                    (SparseArray<?>) templates.get(context.getResources().getConfiguration());
+            final int row = context.getResources().getIdentifier("row", "id", context.getPackageName());
+            return (LayoutTemplate) configurationTemplates.get(row);
+        }
+    }
+
+    @Test
+    public void planPlacesChildrenLikeParsedAttributes() throws IOException {
+        final Context parsing = createContext(false, false);
+        final int[] parsed = inflate(parsing);
+        // the title is right of the icon, both are below the header
+        assertTrue(parsed[2 * 4] > parsed[4 + 2] && parsed[4 + 1] >= parsed[3] && parsed[2 * 4 + 1] > parsed[3]);
+        assertEquals(ViewGroup.LayoutParams.MATCH_PARENT, getTemplate(parsing).getSpec(0).width);
+        clearTemplates();
+
+        final Context planned = createContext(true, false);
+        assertEquals(Arrays.toString(parsed), Arrays.toString(inflate(planned)));
+        assertEquals(NodeSpec.WRAP_CONTENT, getTemplate(planned).getSpec(0).width);
+        // later rows share the template of the plan
+        assertEquals(Arrays.toString(parsed), Arrays.toString(inflate(planned)));
+    }
+
+    @Test
+    public void validatedPlanPlacesChildrenLikeParsedAttributes() throws IOException {
+        final int[] parsed = inflate(createContext(false, true));
+        clearTemplates();
+
+        final Context planned = createContext(true, true);
+        assertEquals(Arrays.toString(parsed), Arrays.toString(inflate(planned)));
+        assertEquals(NodeSpec.WRAP_CONTENT, getTemplate(planned).getSpec(0).width);
+    }
+}
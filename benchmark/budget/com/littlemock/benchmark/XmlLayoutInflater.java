@@ -0,0 +1,156 @@
+package com.littlemock.benchmark;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.littlemock.library.DynamicRelativeLayout;
+import com.littlemock.library.R;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Inflates a layout file from res/layout in the order LayoutInflater does: every child is created, gets
+ * its LayoutParams from generateLayoutParams of its parent, gets its own children and is added, and a
+ * layout gets onFinishInflate after its children. DynamicRelativeLayout tags become a
+ * {@link CountingLayout}, every other view a {@link CountingView}.
+ */
+final class XmlLayoutInflater {
+    static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    static final String LIBRARY_NAMESPACE = "http://schemas.android.com/apk/res-auto";
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    /**
+     * The attributes of an element as strings, with the name resource of the attributes of the library.
+     */
+    private static final class XmlAttributes implements AttributeSet {
+        private final Context context;
+        private final List<Attr> attributes = new ArrayList<Attr>();
+
+        XmlAttributes(Context context, Element element) {
+            this.context = context;
+            final NamedNodeMap map = element.getAttributes();
+            for (int i = 0; i < map.getLength(); i++) {
+                final Attr attribute = (Attr) map.item(i);
+                if (!XMLNS_NAMESPACE.equals(attribute.getNamespaceURI()))
+                    attributes.add(attribute);
+            }
+        }
+
+        @Override
+        public int getAttributeCount() {
+            return attributes.size();
+        }
+
+        @Override
+        public String getAttributeName(int index) {
+            return attributes.get(index).getLocalName();
+        }
+
+        @Override
+        public String getAttributeValue(int index) {
+            return attributes.get(index).getValue();
+        }
+
+        @Override
+        public String getAttributeValue(String namespace, String name) {
+            for (Attr attribute : attributes) {
+                if (name.equals(attribute.getLocalName()) && namespace.equals(attribute.getNamespaceURI()))
+                    return attribute.getValue();
+            }
+            return null;
+        }
+
+        @Override
+        public int getAttributeNameResource(int index) {
+            final Attr attribute = attributes.get(index);
+            if (!LIBRARY_NAMESPACE.equals(attribute.getNamespaceURI()))
+                return 0;
+            try {
+                return R.attr.class.getField(attribute.getLocalName()).getInt(null);
+            } catch (NoSuchFieldException e) {
+                return 0;
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int getIdAttributeResourceValue(int defaultValue) {
+            final String id = getAttributeValue(ANDROID_NAMESPACE, "id");
+            if (id == null)
+                return defaultValue;
+            return context.getResources().getIdentifier(id.substring(id.indexOf('/') + 1), "id",
+                    context.getPackageName());
+        }
+    }
+
+    private final Context context;
+
+    XmlLayoutInflater(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Inflates file into root and returns root, a merge file adds its children to root.
+     */
+    ViewGroup inflate(File file, ViewGroup root) throws IOException {
+        final Element element;
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            element = factory.newDocumentBuilder().parse(file).getDocumentElement();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        } catch (SAXException e) {
+            throw new IOException("Can not parse " + file, e);
+        }
+        if (element.getTagName().equals("merge")) {
+            inflateChildren(element, root);
+        } else {
+            inflateChild(element, root);
+        }
+        return root;
+    }
+
+    private void inflateChildren(Element element, ViewGroup parent) {
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element)
+                inflateChild((Element) node, parent);
+        }
+    }
+
+    private void inflateChild(Element element, ViewGroup parent) {
+        final XmlAttributes attrs = new XmlAttributes(context, element);
+        final View view = createView(element.getTagName(), attrs);
+        final ViewGroup.LayoutParams params = parent.generateLayoutParams(attrs);
+        if (view instanceof CountingLayout) {
+            inflateChildren(element, (CountingLayout) view);
+            ((CountingLayout) view).finishInflate();
+        }
+        parent.addView(view, params);
+    }
+
+    private View createView(String tag, AttributeSet attrs) {
+        if (tag.equals(DynamicRelativeLayout.class.getName()))
+            return new CountingLayout(context, attrs);
+        if (tag.equals("merge"))
+            throw new IllegalArgumentException("<merge> is only supported as the root of a file");
+        if (tag.equals("include"))
+            throw new IllegalArgumentException("<include> is not supported");
+        return new CountingView(context, attrs);
+    }
+}
@@ -0,0 +1,240 @@
+package com.littlemock.library;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measure and layout passes of a DynamicRelativeLayout whose children did not change structure must
+ * not allocate, like the passes of its solver, see the AllocationTest of the engine. These go through
+ * onMeasure and onLayout of the layout, so they include refreshing the specs of the children from their
+ * LayoutParams.
+ */
+public class AllocationTest {
+    private static final int CHILD_COUNT = 30;
+    private static final int ROW = 6;
+    private static final int WARMUP_PASSES = 50;
+    private static final int PASSES = 2000;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    // a leaf with a content size, e.g. a TextView
+    private static final class Leaf extends View {
+        int contentWidth = 120;
+        int contentHeight = 48;
+
+        Leaf(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            setMeasuredDimension(resolveSize(contentWidth, widthMeasureSpec), resolveSize(contentHeight, heightMeasureSpec));
+        }
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+    private DynamicRelativeLayout layout;
+    private Leaf changingChild;
+    private Leaf movingChild;
+
+    private static DynamicRelativeLayout.LayoutParams createParams(int width, int height) {
+        return new DynamicRelativeLayout.LayoutParams(new ViewGroup.LayoutParams(width, height));
+    }
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        // rows of children placed below each other, each row right of its first child, with percent
+        // margins and sizes, a GONE child in every row and a nested layout with a child the last row is
+        // based on
+        final Context context = new Context();
+        layout = new DynamicRelativeLayout(context);
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            final DynamicRelativeLayout.LayoutParams lp;
+            final View child;
+            if (i % ROW == 0) {
+                lp = createParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                lp.dynamicMarginTop = 0.01f;
+                if (i > 0)
+                    lp.dynamicBaseRefTop = 100 + i - ROW;
+            } else {
+                lp = createParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                lp.dynamicBaseRefLeft = 100 + i - 1;
+                lp.dynamicBaseRefTop = 100 + i - i % ROW - ROW;
+                lp.dynamicMarginLeft = 0.02f;
+                lp.dynamicWidth = i % 3 == 0 ? 0.1f : -1;
+                lp.dynamicWidthMax = 0.2f;
+            }
+            if (i == ROW * 2) {
+                final DynamicRelativeLayout nested = new DynamicRelativeLayout(context);
+                for (int j = 0; j < 3; j++) {
+                    final Leaf leaf = new Leaf(context);
+                    leaf.setId(200 + j);
+                    final DynamicRelativeLayout.LayoutParams nestedLp = createParams(
+                            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    if (j > 0)
+                        nestedLp.dynamicBaseRefLeft = 200 + j - 1;
+                    nested.addView(leaf, nestedLp);
+                }
+                child = nested;
+            } else {
+                child = new Leaf(context);
+            }
+            if (i == CHILD_COUNT - 1) {
+                // nothing is based on the last child, with a fixed size it is moved without a pass
+                lp.width = 50;
+                lp.height = 30;
+                lp.dynamicBaseRefLeft = 202;
+                movingChild = (Leaf) child;
+            }
+            child.setId(100 + i);
+            if (i % ROW == 4)
+                child.setVisibility(View.GONE);
+            layout.addView(child, lp);
+        }
+        changingChild = (Leaf) layout.getChildAt(7);
+        pass(exactly(WIDTH), exactly(HEIGHT));
+    }
+
+    private void pass(int widthMeasureSpec, int heightMeasureSpec) {
+        layout.measure(widthMeasureSpec, heightMeasureSpec);
+        layout.layout(0, 0, layout.getMeasuredWidth(), layout.getMeasuredHeight());
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int exactly(int size) {
+        return View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY);
+    }
+
+    private static int atMost(int size) {
+        return View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.AT_MOST);
+    }
+
+    /**
+     * Runs pass WARMUP_PASSES times, so every lazily allocated buffer exists, then returns the bytes
+     * allocated by PASSES more passes.
+     */
+    private long measureAllocation(Runnable pass) {
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            pass.run();
+        }
+        final long overhead = allocatedBytes();
+        final long start = allocatedBytes();
+        for (int i = 0; i < PASSES; i++) {
+            pass.run();
+        }
+        final long end = allocatedBytes();
+        return end - start - (start - overhead);
+    }
+
+    private void assertNoAllocation(String name, Runnable pass) {
+        final long bytes = measureAllocation(pass);
+        assertTrue(name + " allocated " + bytes + " bytes in " + PASSES + " passes", bytes < PASSES);
+    }
+
+    @Test
+    public void cachedPass() {
+        assertNoAllocation("cached pass", new Runnable() {
+            @Override
+            public void run() {
+                layout.requestLayout();
+                pass(exactly(WIDTH), exactly(HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void childChangedPass() {
+        assertNoAllocation("child changed pass", new Runnable() {
+            @Override
+            public void run() {
+                changingChild.contentWidth = changingChild.contentWidth == 120 ? 160 : 120;
+                changingChild.requestLayout();
+                pass(exactly(WIDTH), exactly(HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void resizePass() {
+        final boolean[] narrow = new boolean[1];
+        assertNoAllocation("resize pass", new Runnable() {
+            @Override
+            public void run() {
+                narrow[0] = !narrow[0];
+                pass(exactly(narrow[0] ? WIDTH / 2 : WIDTH), exactly(HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void wrapContentPass() {
+        assertNoAllocation("wrap_content pass", new Runnable() {
+            @Override
+            public void run() {
+                layout.requestLayout();
+                pass(atMost(WIDTH), atMost(HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void changedMarginPass() {
+        // the params of the child get a spec of their own once, which is updated in place from then on
+        final DynamicRelativeLayout.LayoutParams lp = (DynamicRelativeLayout.LayoutParams) changingChild.getLayoutParams();
+        final int[] frame = new int[1];
+        assertNoAllocation("changed margin pass", new Runnable() {
+            @Override
+            public void run() {
+                lp.leftMargin = frame[0]++ % 100;
+                changingChild.requestLayout();
+                pass(exactly(WIDTH), exactly(HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void animatedDynamicMargins() {
+        final int[] frame = new int[1];
+        assertNoAllocation("setChildDynamicMargins", new Runnable() {
+            @Override
+            public void run() {
+                layout.setChildDynamicMargins(movingChild, (frame[0]++ % 100) / 1000f, 0, 0, 0);
+                if (layout.isLayoutRequested())
+                    throw new AssertionError("the child was not moved without a measure pass");
+            }
+        });
+    }
+
+    @Test
+    public void graphRebuildAllocates() {
+        // the check itself has to see allocations: a rebuilt graph allocates its arrays
+        final long bytes = measureAllocation(new Runnable() {
+            @Override
+            public void run() {
+                layout.invalidateChildGraph();
+                layout.requestLayout();
+                pass(exactly(WIDTH), exactly(HEIGHT));
+            }
+        });
+        assertTrue(bytes >= PASSES);
+    }
+}
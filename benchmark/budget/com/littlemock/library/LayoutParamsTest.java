@@ -0,0 +1,112 @@
+package com.littlemock.library;
+
+import android.view.ViewGroup;
+
+import com.littlemock.engine.NodeSpec;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LayoutParamsTest {
+    private static final int THREADS = 4;
+    private static final int PARAMS_PER_THREAD = 20000;
+    private static final int DISTINCT_VALUES = 50;
+
+    private static DynamicRelativeLayout.LayoutParams createParams(int value) {
+        final DynamicRelativeLayout.LayoutParams params = new DynamicRelativeLayout.LayoutParams(
+                new ViewGroup.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        params.dynamicMarginLeft = value / 100f;
+        params.dynamicBaseRefTop = 1000 + value % 7;
+        return params;
+    }
+
+    @Test
+    public void equalParamsShareOneSpec() {
+        final NodeSpec probe = new NodeSpec();
+        final NodeSpec spec = createParams(3).toNodeSpec(42, probe);
+        assertTrue(spec.isInterned());
+        assertSame(spec, createParams(3).toNodeSpec(42, probe));
+    }
+
+    @Test
+    public void changedParamsUpdateASpecOfTheirOwn() {
+        final NodeSpec probe = new NodeSpec();
+        final DynamicRelativeLayout.LayoutParams params = createParams(3);
+        final NodeSpec interned = params.toNodeSpec(42, probe);
+
+        params.leftMargin = 10;
+        final NodeSpec own = params.toNodeSpec(42, probe);
+        assertFalse(own.isInterned());
+        assertEquals(10, own.leftMargin);
+        assertEquals(0, interned.leftMargin);
+
+        // every later change, e.g. each frame of an animation, updates that spec in place
+        params.leftMargin = 20;
+        assertSame(own, params.toNodeSpec(42, probe));
+        assertEquals(20, own.leftMargin);
+    }
+
+    /**
+     * LayoutParams keep their public fields, the spec they refer to is the only state added to them.
+     */
+    @Test
+    public void paramsOnlyAddTheirSpec() {
+        final List<String> fields = new ArrayList<String>();
+        for (Field field : DynamicRelativeLayout.LayoutParams.class.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isPublic(field.getModifiers()))
+                fields.add(field.getName());
+        }
+        assertEquals(Collections.singletonList("nodeSpec"), fields);
+    }
+
+    /**
+     * Layouts are inflated on several threads with AsyncLayoutInflater, the children of each of them
+     * intern their first spec.
+     */
+    @Test
+    public void paramsInternedOnSeveralThreadsShareOneSpec() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<NodeSpec[]>> results = new ArrayList<Future<NodeSpec[]>>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(new Callable<NodeSpec[]>() {
+                    @Override
+                    public NodeSpec[] call() {
+                        // each layout has a probe of its own
+                        final NodeSpec probe = new NodeSpec();
+                        final NodeSpec[] specs = new NodeSpec[PARAMS_PER_THREAD];
+                        for (int i = 0; i < PARAMS_PER_THREAD; i++) {
+                            specs[i] = createParams(i % DISTINCT_VALUES).toNodeSpec(42, probe);
+                        }
+                        return specs;
+                    }
+                }));
+            }
+            final NodeSpec[] first = results.get(0).get();
+            for (Future<NodeSpec[]> result : results) {
+                final NodeSpec[] specs = result.get();
+                for (int i = 0; i < PARAMS_PER_THREAD; i++) {
+                    final NodeSpec expected = createParams(i % DISTINCT_VALUES).toNodeSpec(42, new NodeSpec());
+                    assertSame("spec " + i, expected, specs[i]);
+                    assertSame("spec " + i, first[i], specs[i]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.littlemock.library;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The templates of layouts inflated with dynamic_template are shared by configuration, only the
+ * configurations used last keep theirs.
+ */
+public class TemplateCacheTest {
+    // the attributes of <DynamicRelativeLayout app:dynamic_template="@layout/row">
+    private static final AttributeSet TEMPLATE_ATTRIBUTES = new AttributeSet() {
+        @Override
+        public int getAttributeCount() {
+            return 1;
+        }
+
+        @Override
+        public String getAttributeName(int index) {
+            return "dynamic_template";
+        }
+
+        @Override
+        public String getAttributeValue(int index) {
+            return "@layout/row";
+        }
+
+        @Override
+        public String getAttributeValue(String namespace, String name) {
+            return "dynamic_template".equals(name) ? getAttributeValue(0) : null;
+        }
+
+        @Override
+        public int getAttributeNameResource(int index) {
+            return R.attr.dynamic_template;
+        }
+
+        @Override
+        public int getIdAttributeResourceValue(int defaultValue) {
+            return defaultValue;
+        }
+    };
+
+    private final Context context = new Context();
+    private Map<?, ?> templates;
+
+    @Before
+    public void setUp() throws Exception {
+        final Field field = DynamicRelativeLayout.class.getDeclaredField("templates");
+        field.setAccessible(true);
+        templates = (Map<?, ?>) field.get(null);
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    private void inflate() {
+        final DynamicRelativeLayout layout = new DynamicRelativeLayout(context, TEMPLATE_ATTRIBUTES);
+        for (int i = 0; i < 3; i++) {
+            final View child = new View(context);
+            child.setId(100 + i);
+            final DynamicRelativeLayout.LayoutParams lp = new DynamicRelativeLayout.LayoutParams(
+                    new ViewGroup.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            if (i > 0)
+                lp.dynamicBaseRefLeft = 100 + i - 1;
+            layout.addView(child, lp);
+        }
+        layout.onFinishInflate();
+    }
+
+    private void inflateIn(int orientation) {
+        context.getResources().getConfiguration().orientation = orientation;
+        inflate();
+    }
+
+    private boolean hasTemplatesFor(int orientation) {
+        final Configuration configuration = new Configuration();
+        configuration.orientation = orientation;
+        synchronized (templates) {
+            return templates.containsKey(configuration);
+        }
+    }
+
+    @Test
+    public void rotatingKeepsBothOrientations() {
+        for (int i = 0; i < 10; i++) {
+            inflateIn(Configuration.ORIENTATION_PORTRAIT);
+            inflateIn(Configuration.ORIENTATION_LANDSCAPE);
+        }
+        assertEquals(2, templates.size());
+        assertTrue(hasTemplatesFor(Configuration.ORIENTATION_PORTRAIT));
+        assertTrue(hasTemplatesFor(Configuration.ORIENTATION_LANDSCAPE));
+    }
+
+    @Test
+    public void leastRecentlyUsedConfigurationIsDropped() {
+        inflateIn(Configuration.ORIENTATION_PORTRAIT);
+        inflateIn(Configuration.ORIENTATION_LANDSCAPE);
+        // portrait is used again, landscape is the one left behind
+        inflateIn(Configuration.ORIENTATION_PORTRAIT);
+        inflateIn(Configuration.ORIENTATION_UNDEFINED);
+        assertEquals(2, templates.size());
+        assertTrue(hasTemplatesFor(Configuration.ORIENTATION_PORTRAIT));
+        assertTrue(hasTemplatesFor(Configuration.ORIENTATION_UNDEFINED));
+    }
+}
@@ -0,0 +1,87 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.BatchSolver;
+import com.littlemock.engine.LayoutSolver;
+import com.littlemock.engine.LayoutTemplate;
+import com.littlemock.engine.MeasureSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link BatchSolver} for a batch of jobs of the same layout in different parent sizes,
+ * over the number of worker threads. WIDE nodes are independent, so a large WIDE job is split as well,
+ * a CHAIN is a single component and every job is solved in one piece.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    static final int JOB_COUNT = 64;
+
+    @Param({"WIDE", "CHAIN"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"100", "5000"})
+    public int nodeCount;
+
+    @Param({"1", "2", "4"})
+    public int threadCount;
+
+    private BatchSolver batchSolver;
+    private List<BatchSolver.Job> jobs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final SyntheticGraph graph = new SyntheticGraph(shape, nodeCount);
+        final LayoutSolver solver = new LayoutSolver();
+        graph.setNodes(solver);
+        final LayoutTemplate template = solver.createTemplate();
+        final boolean[] gone = new boolean[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            gone[i] = graph.isGone(i);
+        }
+
+        batchSolver = new BatchSolver(threadCount);
+        jobs = new ArrayList<BatchSolver.Job>();
+        for (int i = 0; i < JOB_COUNT; i++) {
+            // every job needs a measurer of its own, a SyntheticGraph keeps the measured sizes
+            final int width = LayoutSolverBenchmark.PARENT_WIDTH / 2 + i * 10;
+            final int height = LayoutSolverBenchmark.PARENT_HEIGHT / 2 + i * 15;
+            jobs.add(new BatchSolver.Job(template, gone, MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY), new SyntheticGraph(shape, nodeCount)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batchSolver.shutdown();
+    }
+
+    /**
+     * Solving all jobs of the batch.
+     */
+    @Benchmark
+    public int solveBatch() throws InterruptedException {
+        batchSolver.solve(jobs);
+        return jobs.get(JOB_COUNT - 1).getMeasuredWidth();
+    }
+}
@@ -0,0 +1,55 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.DependencyCycleException;
+import com.littlemock.engine.LayoutSolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a graph that contains a cycle: a CHAIN whose first node is based on its last one,
+ * so the whole graph is left over by the topological sort and has to be walked to report the cycle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleDetectionBenchmark {
+    @Param({"10", "100", "1000", "5000"})
+    public int nodeCount;
+
+    private LayoutSolver solver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final SyntheticGraph graph = new SyntheticGraph(SyntheticGraph.Shape.CHAIN, nodeCount);
+        graph.getSpec(0).dynamicBaseRefLeft = SyntheticGraph.idOf(nodeCount - 1);
+        solver = new LayoutSolver();
+        graph.setNodes(solver);
+    }
+
+    @Benchmark
+    public int[] cycleDetection() {
+        solver.invalidateGraph();
+        try {
+            solver.updateGraph();
+        } catch (DependencyCycleException e) {
+            return e.getCycleIds();
+        }
+        throw new IllegalStateException("The cycle was not detected");
+    }
+}
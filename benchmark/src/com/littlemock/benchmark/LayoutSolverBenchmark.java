@@ -0,0 +1,153 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.LayoutSolver;
+import com.littlemock.engine.LayoutTracer;
+import com.littlemock.engine.MeasureSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graph build, full measure and layout of the engine, each measured on its own over the
+ * {@link SyntheticGraph.Shape shapes} and sizes below.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutSolverBenchmark {
+    static final int PARENT_WIDTH = 1080;
+    static final int PARENT_HEIGHT = 1920;
+
+    @Param({"WIDE", "CHAIN", "FAN_OUT", "MIXED_GONE"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"10", "100", "1000", "5000"})
+    public int nodeCount;
+
+    // whether the parent is wrap_content, measured with AT_MOST instead of EXACTLY
+    @Param({"false", "true"})
+    public boolean wrapContent;
+
+    private SyntheticGraph graph;
+    private LayoutSolver solver;
+    // same nodes, keeping the solutions of both orientations
+    private LayoutSolver cachingSolver;
+    // same nodes, recording every pass and node measure
+    private LayoutSolver tracingSolver;
+    private int widthMeasureSpec;
+    private int heightMeasureSpec;
+    private boolean narrow;
+    private boolean landscape;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new SyntheticGraph(shape, nodeCount);
+        solver = new LayoutSolver();
+        final int mode = wrapContent ? MeasureSpec.AT_MOST : MeasureSpec.EXACTLY;
+        widthMeasureSpec = MeasureSpec.makeMeasureSpec(PARENT_WIDTH, mode);
+        heightMeasureSpec = MeasureSpec.makeMeasureSpec(PARENT_HEIGHT, mode);
+        graph.setNodes(solver);
+        solver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+        solver.layout(graph);
+
+        cachingSolver = new LayoutSolver();
+        cachingSolver.setSolutionCacheSize(2);
+        graph.setNodes(cachingSolver);
+        cachingSolver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+
+        tracingSolver = new LayoutSolver();
+        tracingSolver.setTracer(new LayoutTracer(), 0);
+        graph.setNodes(tracingSolver);
+        tracingSolver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+    }
+
+    /**
+     * Resolving the base references, building the reverse edges and sorting the nodes, which
+     * includes the check for cycles.
+     */
+    @Benchmark
+    public LayoutSolver graphBuild() {
+        solver.invalidateGraph();
+        solver.updateGraph();
+        return solver;
+    }
+
+    /**
+     * A measure pass that measures every node, as after a size change of the parent.
+     */
+    @Benchmark
+    public int measure() {
+        solver.invalidate();
+        solver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+        return solver.getMeasuredWidth() + solver.getMeasuredHeight();
+    }
+
+    /**
+     * The same pass with a {@link LayoutTracer}, the difference is the cost of recording an event per node.
+     */
+    @Benchmark
+    public int measureTraced() {
+        tracingSolver.invalidate();
+        tracingSolver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+        return tracingSolver.getMeasuredWidth() + tracingSolver.getMeasuredHeight();
+    }
+
+    /**
+     * A measure pass after the parent only changed its width, as when a window is resized along one
+     * axis. The width alternates between the full and half the parent width.
+     */
+    @Benchmark
+    public int resizeWidth() {
+        narrow = !narrow;
+        final int width = narrow ? PARENT_WIDTH / 2 : PARENT_WIDTH;
+        solver.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.getMode(widthMeasureSpec)),
+                heightMeasureSpec, 0, 0, graph);
+        return solver.getMeasuredWidth() + solver.getMeasuredHeight();
+    }
+
+    /**
+     * A measure pass after the parent swapped its width and height, as on rotation, without and with
+     * the solution cache. The cache only restores solutions of parents that are not wrap_content.
+     */
+    @Benchmark
+    public int rotate() {
+        return rotate(solver);
+    }
+
+    @Benchmark
+    public int rotateWithSolutionCache() {
+        return rotate(cachingSolver);
+    }
+
+    private int rotate(LayoutSolver rotated) {
+        landscape = !landscape;
+        final int mode = MeasureSpec.getMode(widthMeasureSpec);
+        rotated.measure(MeasureSpec.makeMeasureSpec(landscape ? PARENT_HEIGHT : PARENT_WIDTH, mode),
+                MeasureSpec.makeMeasureSpec(landscape ? PARENT_WIDTH : PARENT_HEIGHT, mode), 0, 0, graph);
+        return rotated.getMeasuredWidth() + rotated.getMeasuredHeight();
+    }
+
+    /**
+     * Placing every node at the frame computed by the measure pass.
+     */
+    @Benchmark
+    public int layout() {
+        solver.layout(graph);
+        return graph.getPlacedArea();
+    }
+}
@@ -0,0 +1,85 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.LayoutSolver;
+import com.littlemock.engine.MeasureSpec;
+import com.littlemock.engine.NodeSpec;
+import com.littlemock.engine.NodeSpecInterner;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints the retained size per node of measured solvers with a spec copy per node, as every child
+ * had before, and with specs shared through a {@link NodeSpecInterner}. ROWS solvers of the same
+ * children model the rows of a list, a CANVAS of unique nodes shows the cost when nothing is shared.
+ * Children whose params changed after they were measured, e.g. animated margins, keep a spec of their
+ * own like the copied column.
+ * <p/>
+ * A child also holds its LayoutParams, which is printed when the library classes and android.jar are
+ * on the classpath:
+ * <pre>
+ * java -cp benchmarks.jar:&lt;library classes&gt;:android.jar com.littlemock.benchmark.MemoryFootprint
+ * </pre>
+ */
+public class MemoryFootprint {
+    static final int ROWS = 100;
+    static final int ROW_CHILDREN = 20;
+    static final int CANVAS_NODES = 5000;
+    static final String LAYOUT_PARAMS = "com.littlemock.library.DynamicRelativeLayout$LayoutParams";
+
+    public static void main(String[] args) {
+        report("list rows", ROWS, SyntheticGraph.Shape.WIDE, ROW_CHILDREN);
+        report("canvas", 1, SyntheticGraph.Shape.CANVAS, CANVAS_NODES);
+        reportLayoutParams();
+    }
+
+    /**
+     * Shallow size of the LayoutParams of a child, the spec it refers to is part of the node sizes.
+     */
+    private static void reportLayoutParams() {
+        final Class<?> layoutParams;
+        try {
+            layoutParams = Class.forName(LAYOUT_PARAMS, false, MemoryFootprint.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            System.out.println("LayoutParams not measured, the library and android.jar are not on the classpath");
+            return;
+        }
+        System.out.println(String.format("%-10s %6d bytes/child", "LayoutParams",
+                ClassLayout.parseClass(layoutParams).instanceSize()));
+    }
+
+    private static void report(String name, int solverCount, SyntheticGraph.Shape shape, int nodeCount) {
+        final long copied = measure(solverCount, shape, nodeCount, null);
+        final long interned = measure(solverCount, shape, nodeCount, new NodeSpecInterner());
+        final int nodes = solverCount * nodeCount;
+        System.out.println(String.format("%-10s %6d nodes: %6d bytes/node copied, %6d bytes/node interned",
+                name, nodes, copied / nodes, interned / nodes));
+    }
+
+    /**
+     * Retained size of solverCount measured solvers with the nodes of a graph, without the graph.
+     */
+    static long measure(int solverCount, SyntheticGraph.Shape shape, int nodeCount,
+                                NodeSpecInterner interner) {
+        final SyntheticGraph graph = new SyntheticGraph(shape, nodeCount);
+        final List<LayoutSolver> solvers = new ArrayList<LayoutSolver>();
+        for (int s = 0; s < solverCount; s++) {
+            final LayoutSolver solver = new LayoutSolver();
+            solver.setNodeCount(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                final NodeSpec spec = graph.getSpec(i);
+                solver.setNode(i, interner != null ? interner.intern(spec) : new NodeSpec(spec),
+                        graph.isGone(i), false);
+            }
+            solver.measure(MeasureSpec.makeMeasureSpec(LayoutSolverBenchmark.PARENT_WIDTH, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(LayoutSolverBenchmark.PARENT_HEIGHT, MeasureSpec.EXACTLY),
+                    0, 0, graph);
+            solvers.add(solver);
+        }
+        // the graph is the measurer and not part of a layout, the solvers do not keep it
+        return GraphLayout.parseInstance(solvers.toArray()).totalSize();
+    }
+}
@@ -0,0 +1,165 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.LayoutSolver;
+import com.littlemock.engine.MeasureSpec;
+import com.littlemock.engine.NodeSpec;
+
+/**
+ * A generated set of nodes together with a {@link LayoutSolver.Measurer} that measures them like
+ * leaf views with a fixed content size, and a {@link LayoutSolver.Placer} that only keeps a checksum.
+ * Generation is deterministic, so every run sees the same graph.
+ */
+public class SyntheticGraph implements LayoutSolver.Measurer, LayoutSolver.Placer {
+    // children per node of a FAN_OUT tree
+    private static final int FAN_OUT = 4;
+    // every n-th node of a MIXED_GONE graph is GONE
+    private static final int GONE_INTERVAL = 3;
+    // grid of a CANVAS graph, nodes are a cell apart
+    public static final int CANVAS_COLUMNS = 20;
+    public static final int CANVAS_CELL = 100;
+
+    public enum Shape {
+        // independent nodes placed with dynamic margins
+        WIDE,
+        // every node is placed right of the previous one with dynamicBaseRefLeft
+        CHAIN,
+        // a tree where every node is placed below its parent node
+        FAN_OUT,
+        // nodes based on their two predecessors with every third node GONE
+        MIXED_GONE,
+        // independent fixed size nodes on a grid, a layout much larger than the screen
+        CANVAS
+    }
+
+    private final NodeSpec[] specs;
+    private final boolean[] gone;
+    private final int[] contentWidths;
+    private final int[] contentHeights;
+    private final int[] measuredWidths;
+    private final int[] measuredHeights;
+    private int placedArea;
+
+    public SyntheticGraph(Shape shape, int nodeCount) {
+        specs = new NodeSpec[nodeCount];
+        gone = new boolean[nodeCount];
+        contentWidths = new int[nodeCount];
+        contentHeights = new int[nodeCount];
+        measuredWidths = new int[nodeCount];
+        measuredHeights = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            final NodeSpec spec = new NodeSpec();
+            spec.id = idOf(i);
+            switch (shape) {
+                case WIDE:
+                    spec.dynamicMarginLeft = (i % 10) / 10f;
+                    spec.dynamicMarginTop = (i % 7) / 7f;
+                    spec.dynamicWidth = 0.05f;
+                    break;
+                case CHAIN:
+                    if (i > 0)
+                        spec.dynamicBaseRefLeft = idOf(i - 1);
+                    spec.leftMargin = 1;
+                    break;
+                case FAN_OUT:
+                    if (i > 0)
+                        spec.dynamicBaseRefTop = idOf((i - 1) / FAN_OUT);
+                    spec.dynamicMarginLeft = ((i - 1) % FAN_OUT) / (float) FAN_OUT;
+                    break;
+                case MIXED_GONE:
+                    if (i > 0)
+                        spec.dynamicBaseRefLeft = idOf(i - 1);
+                    if (i > 1)
+                        spec.dynamicBaseRefTop = idOf(i - 2);
+                    spec.dynamicHeight = 0.02f;
+                    gone[i] = i % GONE_INTERVAL == GONE_INTERVAL - 1;
+                    break;
+                case CANVAS:
+                    spec.width = CANVAS_CELL / 2;
+                    spec.height = CANVAS_CELL / 2;
+                    spec.leftMargin = (i % CANVAS_COLUMNS) * CANVAS_CELL;
+                    spec.topMargin = (i / CANVAS_COLUMNS) * CANVAS_CELL;
+                    break;
+            }
+            specs[i] = spec;
+            contentWidths[i] = 20 + i % 7;
+            contentHeights[i] = 10 + i % 5;
+        }
+    }
+
+    public static int idOf(int node) {
+        return node + 1;
+    }
+
+    public int getNodeCount() {
+        return specs.length;
+    }
+
+    public NodeSpec getSpec(int node) {
+        return specs[node];
+    }
+
+    public boolean isGone(int node) {
+        return gone[node];
+    }
+
+    /**
+     * Size a node is measured to when it is wrap_content and has the room.
+     */
+    public int getContentWidth(int node) {
+        return contentWidths[node];
+    }
+
+    public int getContentHeight(int node) {
+        return contentHeights[node];
+    }
+
+    /**
+     * Hands all nodes over to the solver, as a host does at the start of every measure pass.
+     */
+    public void setNodes(LayoutSolver solver) {
+        solver.setNodeCount(specs.length);
+        for (int i = 0; i < specs.length; i++) {
+            solver.setNode(i, specs[i], gone[i], false);
+        }
+    }
+
+    @Override
+    public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+        measuredWidths[node] = resolveSize(contentWidths[node], widthMeasureSpec);
+        measuredHeights[node] = resolveSize(contentHeights[node], heightMeasureSpec);
+    }
+
+    @Override
+    public int getMeasuredWidth(int node) {
+        return measuredWidths[node];
+    }
+
+    @Override
+    public int getMeasuredHeight(int node) {
+        return measuredHeights[node];
+    }
+
+    @Override
+    public void place(int node, int left, int top, int right, int bottom) {
+        placedArea += (right - left) * (bottom - top);
+    }
+
+    /**
+     * Sum of the areas of all frames placed so far, so the placing can not be optimized away.
+     */
+    public int getPlacedArea() {
+        return placedArea;
+    }
+
+    private static int resolveSize(int contentSize, int measureSpec) {
+        final int size = MeasureSpec.getSize(measureSpec);
+        switch (MeasureSpec.getMode(measureSpec)) {
+            case MeasureSpec.EXACTLY:
+                return size;
+            case MeasureSpec.AT_MOST:
+                return Math.min(contentSize, size);
+            default:
+                return contentSize;
+        }
+    }
+}
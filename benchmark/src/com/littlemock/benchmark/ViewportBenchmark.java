@@ -0,0 +1,77 @@
+package com.littlemock.benchmark;
+
+import com.littlemock.engine.LayoutSolver;
+import com.littlemock.engine.MeasureSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure and layout of a {@link SyntheticGraph.Shape#CANVAS CANVAS} that is scrolled by a screen
+ * every pass, with all nodes or only the ones near the screen through {@link LayoutSolver#setViewport}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewportBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int nodeCount;
+
+    @Param({"false", "true"})
+    public boolean viewport;
+
+    private SyntheticGraph graph;
+    private LayoutSolver solver;
+    private int canvasWidth;
+    private int canvasHeight;
+    private int widthMeasureSpec;
+    private int heightMeasureSpec;
+    private int scrollY;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new SyntheticGraph(SyntheticGraph.Shape.CANVAS, nodeCount);
+        solver = new LayoutSolver();
+        canvasWidth = SyntheticGraph.CANVAS_COLUMNS * SyntheticGraph.CANVAS_CELL;
+        canvasHeight = (nodeCount + SyntheticGraph.CANVAS_COLUMNS - 1) / SyntheticGraph.CANVAS_COLUMNS
+                * SyntheticGraph.CANVAS_CELL;
+        widthMeasureSpec = MeasureSpec.makeMeasureSpec(canvasWidth, MeasureSpec.EXACTLY);
+        heightMeasureSpec = MeasureSpec.makeMeasureSpec(canvasHeight, MeasureSpec.EXACTLY);
+        graph.setNodes(solver);
+        solver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+        solver.layout(graph);
+    }
+
+    /**
+     * A pass after scrolling by a screen. Without a viewport every node is measured and placed, with one
+     * the screen and a screen above and below it.
+     */
+    @Benchmark
+    public int scrollPass() {
+        final int screenHeight = LayoutSolverBenchmark.PARENT_HEIGHT;
+        scrollY = (scrollY + screenHeight) % canvasHeight;
+        if (viewport) {
+            solver.setViewport(0, scrollY - screenHeight, canvasWidth, scrollY + 2 * screenHeight);
+        } else {
+            solver.invalidate();
+        }
+        solver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, graph);
+        solver.layout(graph);
+        return graph.getPlacedArea();
+    }
+}
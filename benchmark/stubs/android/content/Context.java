@@ -0,0 +1,47 @@
+package android.content;
+
+import android.content.pm.ApplicationInfo;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.util.AttributeSet;
+
+/**
+ * Stub of the platform Context with the parts the library uses.
+ */
+public class Context {
+    private final Resources resources = new Resources();
+    private final AssetManager assets = new AssetManager();
+    private final ApplicationInfo applicationInfo = new ApplicationInfo();
+
+    public Resources getResources() {
+        return resources;
+    }
+
+    public AssetManager getAssets() {
+        return assets;
+    }
+
+    public ApplicationInfo getApplicationInfo() {
+        return applicationInfo;
+    }
+
+    public String getPackageName() {
+        return "com.littlemock.sample";
+    }
+
+    /**
+     * Picks the values of the attributes in attrs out of set, matched by their name resource.
+     */
+    public final TypedArray obtainStyledAttributes(AttributeSet set, int[] attrs) {
+        final String[] values = new String[attrs.length];
+        final int count = set != null ? set.getAttributeCount() : 0;
+        for (int i = 0; i < attrs.length; i++) {
+            for (int j = 0; j < count; j++) {
+                if (set.getAttributeNameResource(j) == attrs[i])
+                    values[i] = set.getAttributeValue(j);
+            }
+        }
+        return new TypedArray(resources, getPackageName(), values);
+    }
+}
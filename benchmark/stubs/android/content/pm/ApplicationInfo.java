@@ -0,0 +1,11 @@
+package android.content.pm;
+
+/**
+ * Stub of the platform ApplicationInfo, a release build targeting Android 4.1.
+ */
+public class ApplicationInfo {
+    public static final int FLAG_DEBUGGABLE = 1 << 1;
+
+    public int flags = 0;
+    public int targetSdkVersion = 16;
+}
@@ -0,0 +1,28 @@
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stub of the platform AssetManager, without any assets unless it is given a directory to read them
+ * from, like the assets directory of an app.
+ */
+public final class AssetManager {
+    private File directory;
+
+    /**
+     * Not part of the platform API, serves the files in directory as assets.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public InputStream open(String fileName) throws IOException {
+        if (directory == null)
+            throw new FileNotFoundException(fileName);
+        return new FileInputStream(new File(directory, fileName));
+    }
+}
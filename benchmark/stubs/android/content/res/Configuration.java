@@ -0,0 +1,29 @@
+package android.content.res;
+
+/**
+ * Stub of the platform Configuration, only the orientation.
+ */
+public final class Configuration {
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_PORTRAIT = 1;
+    public static final int ORIENTATION_LANDSCAPE = 2;
+
+    public int orientation = ORIENTATION_PORTRAIT;
+
+    public Configuration() {
+    }
+
+    public Configuration(Configuration source) {
+        orientation = source.orientation;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof Configuration && ((Configuration) that).orientation == orientation;
+    }
+
+    @Override
+    public int hashCode() {
+        return orientation;
+    }
+}
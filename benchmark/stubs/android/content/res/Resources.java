@@ -0,0 +1,55 @@
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Stub of the platform Resources. There is no resource table, every id name gets an id the first time
+ * it is looked up, like the ids aapt generates for @+id.
+ */
+public class Resources {
+    private static final int FIRST_ID = 0x7f080000;
+
+    public static class NotFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    private final DisplayMetrics displayMetrics = new DisplayMetrics();
+    private final Configuration configuration = new Configuration();
+    private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<String> idNames = new ArrayList<String>();
+
+    public DisplayMetrics getDisplayMetrics() {
+        return displayMetrics;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    public int getIdentifier(String name, String defType, String defPackage) {
+        if (!"id".equals(defType))
+            return 0;
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = FIRST_ID + idNames.size();
+            ids.put(name, id);
+            idNames.add(name);
+        }
+        return id;
+    }
+
+    public String getResourceEntryName(int resid) {
+        final int index = resid - FIRST_ID;
+        if (index < 0 || index >= idNames.size())
+            throw new NotFoundException("Unable to find resource ID #0x" + Integer.toHexString(resid));
+        return idNames.get(index);
+    }
+}
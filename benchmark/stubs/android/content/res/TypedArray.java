@@ -0,0 +1,36 @@
+package android.content.res;
+
+/**
+ * Stub of the platform TypedArray, the raw values of the attributes an attribute set has in a styleable.
+ */
+public class TypedArray {
+    private final Resources resources;
+    private final String packageName;
+    private final String[] values;
+
+    public TypedArray(Resources resources, String packageName, String[] values) {
+        this.resources = resources;
+        this.packageName = packageName;
+        this.values = values;
+    }
+
+    public float getFloat(int index, float defValue) {
+        return values[index] != null ? Float.parseFloat(values[index]) : defValue;
+    }
+
+    /**
+     * Resolves @id/name and @+id/name references.
+     */
+    public int getResourceId(int index, int defValue) {
+        final String value = values[index];
+        if (value == null)
+            return defValue;
+        final int slash = value.indexOf('/');
+        if (!value.startsWith("@") || slash < 0)
+            throw new IllegalArgumentException("Not a reference: " + value);
+        return resources.getIdentifier(value.substring(slash + 1), "id", packageName);
+    }
+
+    public void recycle() {
+    }
+}
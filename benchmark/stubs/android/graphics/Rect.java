@@ -0,0 +1,27 @@
+package android.graphics;
+
+/**
+ * Stub of the platform Rect with the parts the library uses.
+ */
+public final class Rect {
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public void set(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public boolean isEmpty() {
+        return left >= right || top >= bottom;
+    }
+
+    public boolean contains(Rect r) {
+        return left < right && top < bottom
+                && left <= r.left && top <= r.top && right >= r.right && bottom >= r.bottom;
+    }
+}
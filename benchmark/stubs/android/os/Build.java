@@ -0,0 +1,10 @@
+package android.os;
+
+/**
+ * Stub of the platform Build, the views behave like Android 4.1.
+ */
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = 16;
+    }
+}
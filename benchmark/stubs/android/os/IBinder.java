@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * Stub of the platform IBinder, only used as the window token of a view.
+ */
+public interface IBinder {
+}
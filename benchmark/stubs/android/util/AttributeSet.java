@@ -0,0 +1,19 @@
+package android.util;
+
+/**
+ * Stub of the platform AttributeSet with the parts the stubs and the library use. Names are without a
+ * namespace prefix, the name resource of an attribute is its id in R.attr.
+ */
+public interface AttributeSet {
+    int getAttributeCount();
+
+    String getAttributeName(int index);
+
+    String getAttributeValue(int index);
+
+    String getAttributeValue(String namespace, String name);
+
+    int getAttributeNameResource(int index);
+
+    int getIdAttributeResourceValue(int defaultValue);
+}
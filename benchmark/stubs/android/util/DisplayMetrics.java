@@ -0,0 +1,10 @@
+package android.util;
+
+/**
+ * Stub of the platform DisplayMetrics, a 720x1280 screen at a density of 1.
+ */
+public class DisplayMetrics {
+    public int widthPixels = 720;
+    public int heightPixels = 1280;
+    public float density = 1;
+}
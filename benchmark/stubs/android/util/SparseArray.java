@@ -0,0 +1,26 @@
+package android.util;
+
+import java.util.HashMap;
+
+/**
+ * Stub of the platform SparseArray, backed by a HashMap.
+ */
+public class SparseArray<E> {
+    private final HashMap<Integer, E> values = new HashMap<Integer, E>();
+
+    public E get(int key) {
+        return values.get(key);
+    }
+
+    public void put(int key, E value) {
+        values.put(key, value);
+    }
+
+    public void remove(int key) {
+        values.remove(key);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,265 @@
+package android.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Rect;
+import android.os.IBinder;
+import android.util.AttributeSet;
+
+/**
+ * Stub of the platform View with the parts the library uses, so MeasureBudget runs the library on a plain
+ * JVM. Measure and layout are cached like on Android 4.1: measure only calls onMeasure when a layout was
+ * requested or the measure specs changed, layout only calls onLayout when the frame changed or the view
+ * was measured since. The view is never attached to a window.
+ */
+public class View {
+    public static final int NO_ID = -1;
+    public static final int VISIBLE = 0;
+    public static final int INVISIBLE = 4;
+    public static final int GONE = 8;
+
+    static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+
+    public static class MeasureSpec {
+        private static final int MODE_SHIFT = 30;
+        private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+        public static final int UNSPECIFIED = 0;
+        public static final int EXACTLY = 1 << MODE_SHIFT;
+        public static final int AT_MOST = 2 << MODE_SHIFT;
+
+        public static int makeMeasureSpec(int size, int mode) {
+            return size + mode;
+        }
+
+        public static int getMode(int measureSpec) {
+            return measureSpec & MODE_MASK;
+        }
+
+        public static int getSize(int measureSpec) {
+            return measureSpec & ~MODE_MASK;
+        }
+    }
+
+    private final Context context;
+    private final ViewTreeObserver viewTreeObserver = new ViewTreeObserver();
+    ViewParent parent;
+    private ViewGroup.LayoutParams layoutParams;
+    private int id = NO_ID;
+    private int visibility = VISIBLE;
+    private boolean forceLayout = true;
+    private boolean layoutRequired = false;
+    private int oldWidthMeasureSpec = Integer.MIN_VALUE;
+    private int oldHeightMeasureSpec = Integer.MIN_VALUE;
+    private int measuredWidth;
+    private int measuredHeight;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    private int minWidth;
+    private int minHeight;
+
+    public View(Context context) {
+        this.context = context;
+    }
+
+    public View(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public View(Context context, AttributeSet attrs, int defStyle) {
+        this(context);
+        if (attrs == null)
+            return;
+        id = attrs.getIdAttributeResourceValue(NO_ID);
+        final String visibility = attrs.getAttributeValue(ANDROID_NAMESPACE, "visibility");
+        if ("gone".equals(visibility)) {
+            this.visibility = GONE;
+        } else if ("invisible".equals(visibility)) {
+            this.visibility = INVISIBLE;
+        }
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public Resources getResources() {
+        return context.getResources();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(int visibility) {
+        final boolean goneChanged = (this.visibility == GONE) != (visibility == GONE);
+        this.visibility = visibility;
+        if (goneChanged)
+            requestLayout();
+    }
+
+    public ViewGroup.LayoutParams getLayoutParams() {
+        return layoutParams;
+    }
+
+    public void setLayoutParams(ViewGroup.LayoutParams params) {
+        layoutParams = params;
+        requestLayout();
+    }
+
+    public final ViewParent getParent() {
+        return parent;
+    }
+
+    public final void measure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (forceLayout || widthMeasureSpec != oldWidthMeasureSpec || heightMeasureSpec != oldHeightMeasureSpec) {
+            onMeasure(widthMeasureSpec, heightMeasureSpec);
+            layoutRequired = true;
+        }
+        oldWidthMeasureSpec = widthMeasureSpec;
+        oldHeightMeasureSpec = heightMeasureSpec;
+    }
+
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+    }
+
+    public static int getDefaultSize(int size, int measureSpec) {
+        return MeasureSpec.getMode(measureSpec) == MeasureSpec.UNSPECIFIED ? size : MeasureSpec.getSize(measureSpec);
+    }
+
+    public static int resolveSize(int size, int measureSpec) {
+        switch (MeasureSpec.getMode(measureSpec)) {
+            case MeasureSpec.EXACTLY:
+                return MeasureSpec.getSize(measureSpec);
+            case MeasureSpec.AT_MOST:
+                return Math.min(size, MeasureSpec.getSize(measureSpec));
+            default:
+                return size;
+        }
+    }
+
+    protected int getSuggestedMinimumWidth() {
+        return minWidth;
+    }
+
+    protected int getSuggestedMinimumHeight() {
+        return minHeight;
+    }
+
+    public void setMinimumWidth(int minWidth) {
+        this.minWidth = minWidth;
+        requestLayout();
+    }
+
+    public void setMinimumHeight(int minHeight) {
+        this.minHeight = minHeight;
+        requestLayout();
+    }
+
+    protected final void setMeasuredDimension(int measuredWidth, int measuredHeight) {
+        this.measuredWidth = measuredWidth;
+        this.measuredHeight = measuredHeight;
+    }
+
+    public final int getMeasuredWidth() {
+        return measuredWidth;
+    }
+
+    public final int getMeasuredHeight() {
+        return measuredHeight;
+    }
+
+    public void layout(int l, int t, int r, int b) {
+        final boolean changed = l != left || t != top || r != right || b != bottom;
+        left = l;
+        top = t;
+        right = r;
+        bottom = b;
+        if (changed || layoutRequired) {
+            onLayout(changed, l, t, r, b);
+            layoutRequired = false;
+        }
+        forceLayout = false;
+    }
+
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+    }
+
+    public final int getLeft() {
+        return left;
+    }
+
+    public final int getTop() {
+        return top;
+    }
+
+    public final int getRight() {
+        return right;
+    }
+
+    public final int getBottom() {
+        return bottom;
+    }
+
+    public final int getWidth() {
+        return right - left;
+    }
+
+    public final int getHeight() {
+        return bottom - top;
+    }
+
+    public void requestLayout() {
+        forceLayout = true;
+        if (parent != null && !parent.isLayoutRequested())
+            parent.requestLayout();
+    }
+
+    public void forceLayout() {
+        forceLayout = true;
+    }
+
+    public boolean isLayoutRequested() {
+        return forceLayout;
+    }
+
+    public void invalidate() {
+    }
+
+    public boolean post(Runnable action) {
+        // not attached, the platform would run it once the view is attached
+        return true;
+    }
+
+    public IBinder getWindowToken() {
+        return null;
+    }
+
+    public ViewTreeObserver getViewTreeObserver() {
+        return viewTreeObserver;
+    }
+
+    public boolean getLocalVisibleRect(Rect r) {
+        return false;
+    }
+
+    protected void onFinishInflate() {
+    }
+
+    protected void onAttachedToWindow() {
+    }
+
+    protected void onDetachedFromWindow() {
+    }
+}
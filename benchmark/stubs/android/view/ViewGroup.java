@@ -0,0 +1,186 @@
+package android.view;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import java.util.ArrayList;
+
+/**
+ * Stub of the platform ViewGroup with the parts the library uses, see {@link View}.
+ */
+public abstract class ViewGroup extends View implements ViewParent {
+    private final ArrayList<View> children = new ArrayList<View>();
+
+    public static class LayoutParams {
+        public static final int FILL_PARENT = -1;
+        public static final int MATCH_PARENT = -1;
+        public static final int WRAP_CONTENT = -2;
+
+        public int width;
+        public int height;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+            width = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_width"), WRAP_CONTENT);
+            height = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_height"), WRAP_CONTENT);
+        }
+
+        public LayoutParams(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public LayoutParams(LayoutParams source) {
+            width = source.width;
+            height = source.height;
+        }
+
+        /**
+         * Parses match_parent, wrap_content and dimensions in px or dp.
+         */
+        static int parseSize(Context c, String value, int defValue) {
+            if (value == null)
+                return defValue;
+            if (value.equals("match_parent") || value.equals("fill_parent"))
+                return MATCH_PARENT;
+            if (value.equals("wrap_content"))
+                return WRAP_CONTENT;
+            if (value.endsWith("px"))
+                return Integer.parseInt(value.substring(0, value.length() - 2));
+            if (value.endsWith("dp") || value.endsWith("dip")) {
+                final float density = c.getResources().getDisplayMetrics().density;
+                return Math.round(Float.parseFloat(value.substring(0, value.length() - (value.endsWith("dp") ? 2 : 3)))
+                        * density);
+            }
+            throw new IllegalArgumentException("Unsupported dimension " + value);
+        }
+    }
+
+    public static class MarginLayoutParams extends LayoutParams {
+        public int leftMargin;
+        public int topMargin;
+        public int rightMargin;
+        public int bottomMargin;
+
+        public MarginLayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+            final int margin = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_margin"), 0);
+            leftMargin = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_marginLeft"), margin);
+            topMargin = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_marginTop"), margin);
+            rightMargin = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_marginRight"), margin);
+            bottomMargin = parseSize(c, attrs.getAttributeValue(ANDROID_NAMESPACE, "layout_marginBottom"), margin);
+        }
+
+        public MarginLayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public MarginLayoutParams(LayoutParams source) {
+            super(source);
+        }
+
+        public MarginLayoutParams(MarginLayoutParams source) {
+            super(source);
+            leftMargin = source.leftMargin;
+            topMargin = source.topMargin;
+            rightMargin = source.rightMargin;
+            bottomMargin = source.bottomMargin;
+        }
+
+        public void setMargins(int left, int top, int right, int bottom) {
+            leftMargin = left;
+            topMargin = top;
+            rightMargin = right;
+            bottomMargin = bottom;
+        }
+    }
+
+    public ViewGroup(Context context) {
+        super(context);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    public int getChildCount() {
+        return children.size();
+    }
+
+    public View getChildAt(int index) {
+        return index >= 0 && index < children.size() ? children.get(index) : null;
+    }
+
+    public int indexOfChild(View child) {
+        return children.indexOf(child);
+    }
+
+    public void addView(View child) {
+        addView(child, -1, child.getLayoutParams() != null ? child.getLayoutParams() : generateDefaultLayoutParams());
+    }
+
+    public void addView(View child, LayoutParams params) {
+        addView(child, -1, params);
+    }
+
+    public void addView(View child, int index, LayoutParams params) {
+        if (child.getParent() != null)
+            throw new IllegalStateException("The specified child already has a parent.");
+        if (!checkLayoutParams(params))
+            params = generateLayoutParams(params);
+        child.setLayoutParams(params);
+        child.parent = this;
+        if (index < 0) {
+            children.add(child);
+        } else {
+            children.add(index, child);
+        }
+        requestLayout();
+        onViewAdded(child);
+    }
+
+    public void removeView(View child) {
+        if (children.remove(child)) {
+            child.parent = null;
+            requestLayout();
+            onViewRemoved(child);
+        }
+    }
+
+    protected void onViewAdded(View child) {
+    }
+
+    protected void onViewRemoved(View child) {
+    }
+
+    @Override
+    public final void layout(int l, int t, int r, int b) {
+        super.layout(l, t, r, b);
+    }
+
+    @Override
+    protected abstract void onLayout(boolean changed, int l, int t, int r, int b);
+
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    protected LayoutParams generateLayoutParams(LayoutParams p) {
+        return p;
+    }
+
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    protected boolean checkLayoutParams(LayoutParams p) {
+        return p != null;
+    }
+
+    public boolean shouldDelayChildPressedState() {
+        return true;
+    }
+}
@@ -0,0 +1,12 @@
+package android.view;
+
+/**
+ * Stub of the platform ViewParent, see {@link View}.
+ */
+public interface ViewParent {
+    void requestLayout();
+
+    boolean isLayoutRequested();
+
+    ViewParent getParent();
+}
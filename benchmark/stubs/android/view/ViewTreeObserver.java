@@ -0,0 +1,16 @@
+package android.view;
+
+/**
+ * Stub of the platform ViewTreeObserver, see {@link View}. Nothing scrolls, so listeners are never called.
+ */
+public final class ViewTreeObserver {
+    public interface OnScrollChangedListener {
+        void onScrollChanged();
+    }
+
+    public void addOnScrollChangedListener(OnScrollChangedListener listener) {
+    }
+
+    public void removeOnScrollChangedListener(OnScrollChangedListener listener) {
+    }
+}
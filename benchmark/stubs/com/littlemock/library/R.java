@@ -0,0 +1,60 @@
+package com.littlemock.library;
+
+/**
+ * Stub of the R class aapt generates for the library from res/values/attrs.xml, the styleable lists
+ * the attributes in the same order.
+ */
+public final class R {
+    public static final class attr {
+        public static final int layout_dynamic_margin_left = 0x7f010000;
+        public static final int layout_dynamic_margin_top = 0x7f010001;
+        public static final int layout_dynamic_margin_right = 0x7f010002;
+        public static final int layout_dynamic_margin_bottom = 0x7f010003;
+        public static final int layout_dynamic_width = 0x7f010004;
+        public static final int layout_dynamic_height = 0x7f010005;
+        public static final int layout_dynamic_margin_base_left = 0x7f010006;
+        public static final int layout_dynamic_margin_base_top = 0x7f010007;
+        public static final int layout_dynamic_margin_base_right = 0x7f010008;
+        public static final int layout_dynamic_margin_base_bottom = 0x7f010009;
+        public static final int layout_dynamic_max_height = 0x7f01000a;
+        public static final int layout_dynamic_max_width = 0x7f01000b;
+        public static final int layout_dynamic_min_height = 0x7f01000c;
+        public static final int layout_dynamic_min_width = 0x7f01000d;
+        public static final int dynamic_template = 0x7f01000e;
+    }
+
+    public static final class styleable {
+        public static final int[] DynamicRelativeLayout = {
+                attr.layout_dynamic_margin_left,
+                attr.layout_dynamic_margin_top,
+                attr.layout_dynamic_margin_right,
+                attr.layout_dynamic_margin_bottom,
+                attr.layout_dynamic_width,
+                attr.layout_dynamic_height,
+                attr.layout_dynamic_margin_base_left,
+                attr.layout_dynamic_margin_base_top,
+                attr.layout_dynamic_margin_base_right,
+                attr.layout_dynamic_margin_base_bottom,
+                attr.layout_dynamic_max_height,
+                attr.layout_dynamic_max_width,
+                attr.layout_dynamic_min_height,
+                attr.layout_dynamic_min_width,
+                attr.dynamic_template
+        };
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_left = 0;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_top = 1;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_right = 2;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_bottom = 3;
+        public static final int DynamicRelativeLayout_layout_dynamic_width = 4;
+        public static final int DynamicRelativeLayout_layout_dynamic_height = 5;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_base_left = 6;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_base_top = 7;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_base_right = 8;
+        public static final int DynamicRelativeLayout_layout_dynamic_margin_base_bottom = 9;
+        public static final int DynamicRelativeLayout_layout_dynamic_max_height = 10;
+        public static final int DynamicRelativeLayout_layout_dynamic_max_width = 11;
+        public static final int DynamicRelativeLayout_layout_dynamic_min_height = 12;
+        public static final int DynamicRelativeLayout_layout_dynamic_min_width = 13;
+        public static final int DynamicRelativeLayout_dynamic_template = 14;
+    }
+}
@@ -0,0 +1,53 @@
+package com.littlemock.compiler;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Checks every DynamicRelativeLayout in the layout resources for missing base references and cycles,
+ * and writes the layout plans of the ones with a dynamic_template to the assets.
+ *
+ * @goal compile
+ * @phase generate-resources
+ */
+public class CompileLayoutsMojo extends AbstractMojo {
+    /**
+     * Resource directory of the Android project.
+     *
+     * @parameter default-value="${project.basedir}/res"
+     * @required
+     */
+    private File resourceDirectory;
+
+    /**
+     * Assets directory the plans are written to, it has to be packaged with the app.
+     *
+     * @parameter default-value="${project.build.directory}/generated-assets"
+     * @required
+     */
+    private File outputDirectory;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final LayoutCompiler compiler = new LayoutCompiler(resourceDirectory, outputDirectory);
+        final int planCount;
+        try {
+            planCount = compiler.compile();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not compile the layouts in " + resourceDirectory, e);
+        }
+        for (String warning : compiler.getWarnings()) {
+            getLog().warn(warning);
+        }
+        if (!compiler.getErrors().isEmpty()) {
+            for (String error : compiler.getErrors()) {
+                getLog().error(error);
+            }
+            throw new MojoFailureException(compiler.getErrors().size() + " layout error(s), see above");
+        }
+        getLog().info("Wrote " + planCount + " layout plan(s) to " + outputDirectory);
+    }
+}
@@ -0,0 +1,389 @@
+package com.littlemock.compiler;
+
+import com.littlemock.engine.DependencyCycleException;
+import com.littlemock.engine.LayoutPlan;
+import com.littlemock.engine.NodeSpec;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reads the layout resources of a project, checks the base references of every DynamicRelativeLayout
+ * in them and compiles the ones with a dynamic_template into a {@link LayoutPlan}, which
+ * DynamicRelativeLayout loads from PLAN_DIRECTORY in the assets instead of parsing the children.
+ * <p/>
+ * A plan is only written when the layout can be known at build time: it is not overridden in a
+ * qualified layout folder, it has no include children and all dynamic values are literals.
+ */
+public class LayoutCompiler {
+    public static final String PLAN_DIRECTORY = "dynamic_layouts";
+    public static final String PLAN_EXTENSION = ".plan";
+
+    private static final String LAYOUT_CLASS = "com.littlemock.library.DynamicRelativeLayout";
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    private static final String RES_AUTO_NAMESPACE = "http://schemas.android.com/apk/res-auto";
+    private static final String RES_NAMESPACE_PREFIX = "http://schemas.android.com/apk/res/";
+
+    // same as library/res/values/attrs.xml, in the order of setDynamicValue
+    private static final String[] VALUE_ATTRS = {
+            "layout_dynamic_margin_left", "layout_dynamic_margin_top",
+            "layout_dynamic_margin_right", "layout_dynamic_margin_bottom",
+            "layout_dynamic_width", "layout_dynamic_height",
+            "layout_dynamic_max_width", "layout_dynamic_min_width",
+            "layout_dynamic_max_height", "layout_dynamic_min_height"};
+    // in the direction order of LayoutSolver
+    private static final String[] BASE_REF_ATTRS = {
+            "layout_dynamic_margin_base_left", "layout_dynamic_margin_base_top",
+            "layout_dynamic_margin_base_right", "layout_dynamic_margin_base_bottom"};
+    private static final String TEMPLATE_ATTR = "dynamic_template";
+
+    private final File resourceDirectory;
+    private final File outputDirectory;
+    private final List<String> errors = new ArrayList<String>();
+    private final List<String> warnings = new ArrayList<String>();
+    // plans by the name of their layout
+    private final Map<String, LayoutPlan> plans = new TreeMap<String, LayoutPlan>();
+    private final Set<String> qualifiedLayouts = new HashSet<String>();
+
+    public LayoutCompiler(File resourceDirectory, File outputDirectory) {
+        this.resourceDirectory = resourceDirectory;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Checks all layouts and writes the plans, plans of an earlier run are removed. Nothing is written
+     * if a layout has an error. Returns the number of plans written.
+     */
+    public int compile() throws IOException {
+        final DocumentBuilder builder;
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            builder = factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IOException("No XML parser: " + e.getMessage());
+        }
+
+        final File[] folders = listSorted(resourceDirectory);
+        for (File folder : folders) {
+            if (folder.getName().startsWith("layout-")) {
+                for (File file : listSorted(folder)) {
+                    qualifiedLayouts.add(getLayoutName(file));
+                }
+            }
+        }
+        for (File folder : folders) {
+            final String name = folder.getName();
+            if (!folder.isDirectory() || !(name.equals("layout") || name.startsWith("layout-")))
+                continue;
+            for (File file : listSorted(folder)) {
+                if (file.getName().endsWith(".xml"))
+                    compileFile(builder, file, name.equals("layout"));
+            }
+        }
+
+        final File planDirectory = new File(outputDirectory, PLAN_DIRECTORY);
+        for (File stale : listSorted(planDirectory)) {
+            if (stale.getName().endsWith(PLAN_EXTENSION) && !stale.delete())
+                throw new IOException("Could not delete " + stale);
+        }
+        if (!errors.isEmpty() || plans.isEmpty())
+            return 0;
+        if (!planDirectory.isDirectory() && !planDirectory.mkdirs())
+            throw new IOException("Could not create " + planDirectory);
+        for (Map.Entry<String, LayoutPlan> entry : plans.entrySet()) {
+            final File file = new File(planDirectory, entry.getKey() + PLAN_EXTENSION);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                entry.getValue().writeTo(out);
+            } finally {
+                out.close();
+            }
+        }
+        return plans.size();
+    }
+
+    private static File[] listSorted(File folder) {
+        final File[] files = folder.listFiles();
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static String getLayoutName(File file) {
+        final String name = file.getName();
+        final int extension = name.lastIndexOf('.');
+        return extension < 0 ? name : name.substring(0, extension);
+    }
+
+    private void compileFile(DocumentBuilder builder, File file, boolean defaultFolder) throws IOException {
+        final Document document;
+        try {
+            document = builder.parse(file);
+        } catch (SAXException e) {
+            errors.add(describe(file) + ": " + e.getMessage());
+            return;
+        }
+        final NodeList elements = document.getElementsByTagName("*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            final Element element = (Element) elements.item(i);
+            if (element.getTagName().equals(LAYOUT_CLASS))
+                compileLayout(file, element, defaultFolder);
+        }
+    }
+
+    private static String describe(File file) {
+        return file.getParentFile().getName() + "/" + file.getName();
+    }
+
+    private void compileLayout(File file, Element layout, boolean defaultFolder) {
+        final String location = describe(file);
+        final List<Element> children = new ArrayList<Element>();
+        for (Node node = layout.getFirstChild(); node != null; node = node.getNextSibling()) {
+            // requestFocus and tag only configure their parent, they do not add a child
+            if (node instanceof Element && !node.getNodeName().equals("requestFocus") && !node.getNodeName().equals("tag"))
+                children.add((Element) node);
+        }
+
+        // the ids are numbered in order of appearance, the numbers stand for the names while compiling
+        final int count = children.size();
+        final List<String> names = new ArrayList<String>();
+        final String[] idNames = new String[count];
+        final NodeSpec[] specs = new NodeSpec[count];
+        final int errorCount = errors.size();
+        String notPrecompiled = null;
+        for (int i = 0; i < count; i++) {
+            final Element child = children.get(i);
+            final NodeSpec spec = new NodeSpec();
+            specs[i] = spec;
+            if (child.getNodeName().equals("include"))
+                notPrecompiled = "it includes another layout";
+            final String id = child.getAttributeNS(ANDROID_NAMESPACE, "id");
+            if (id.length() > 0) {
+                idNames[i] = parseIdReference(id);
+                if (idNames[i] == null) {
+                    errors.add(location + ": " + id + " is not an id");
+                    continue;
+                }
+                spec.id = number(names, idNames[i]);
+            }
+            for (int v = 0; v < VALUE_ATTRS.length; v++) {
+                final String value = getAppAttribute(child, VALUE_ATTRS[v]);
+                if (value == null)
+                    continue;
+                try {
+                    setDynamicValue(spec, v, Float.parseFloat(value.trim()));
+                } catch (NumberFormatException e) {
+                    if (value.startsWith("@") || value.startsWith("?")) {
+                        notPrecompiled = VALUE_ATTRS[v] + " of " + describe(child, i, idNames) + " is a reference";
+                    } else {
+                        errors.add(location + ": " + VALUE_ATTRS[v] + " of " + describe(child, i, idNames)
+                                + " is not a number: " + value);
+                    }
+                }
+            }
+        }
+        // children can also be based on the descendants of a nested DynamicRelativeLayout next to them
+        final List<Set<String>> descendantNames = new ArrayList<Set<String>>();
+        for (int i = 0; i < count; i++) {
+            Set<String> descendants = null;
+            if (children.get(i).getTagName().equals(LAYOUT_CLASS)) {
+                descendants = new HashSet<String>();
+                collectDescendantIds(children.get(i), descendants);
+            }
+            descendantNames.add(descendants);
+        }
+        for (int i = 0; i < count; i++) {
+            final Element child = children.get(i);
+            for (int d = 0; d < BASE_REF_ATTRS.length; d++) {
+                final String value = getAppAttribute(child, BASE_REF_ATTRS[d]);
+                if (value == null)
+                    continue;
+                final String base = parseIdReference(value);
+                if (base == null) {
+                    errors.add(location + ": " + BASE_REF_ATTRS[d] + " of " + describe(child, i, idNames)
+                            + " is not an id: " + value);
+                } else if (!names.contains(base)) {
+                    if (isDescendantOfOther(descendantNames, i, base)) {
+                        // a plan only holds references between the children, the layout resolves it
+                        notPrecompiled = describe(child, i, idNames) + " is based on a view inside another layout";
+                    } else {
+                        errors.add(location + ": " + describe(child, i, idNames) + " is based on " + value
+                                + ", which is neither a child of the same DynamicRelativeLayout nor inside a"
+                                + " DynamicRelativeLayout among its children");
+                    }
+                } else {
+                    specs[i].setBaseRef(d, names.indexOf(base));
+                }
+            }
+        }
+        if (errors.size() > errorCount)
+            return;
+
+        final LayoutPlan plan;
+        try {
+            plan = LayoutPlan.compile(idNames, specs);
+        } catch (DependencyCycleException e) {
+            // the ids are the numbers of the names
+            final String cycle = e.describeCycle(new DependencyCycleException.IdNames() {
+                @Override
+                public String getName(int id) {
+                    return names.get(id);
+                }
+            });
+            errors.add(location + ": A CYCLE IS DETECTED BETWEEN VIEWS! " + cycle);
+            return;
+        }
+
+        final String template = getAppAttribute(layout, TEMPLATE_ATTR);
+        if (template == null)
+            return;
+        if (!template.startsWith("@layout/")) {
+            errors.add(location + ": " + TEMPLATE_ATTR + " has to be a layout, not " + template);
+            return;
+        }
+        final String name = template.substring("@layout/".length());
+        if (!defaultFolder || qualifiedLayouts.contains(name)) {
+            warnings.add(location + ": no plan for @layout/" + name + ", the layout differs per configuration");
+        } else if (notPrecompiled != null) {
+            warnings.add(location + ": no plan for @layout/" + name + ", " + notPrecompiled);
+        } else if (plans.containsKey(name)) {
+            errors.add(location + ": more than one DynamicRelativeLayout uses @layout/" + name + " as template");
+        } else {
+            plans.put(name, plan);
+        }
+    }
+
+    /**
+     * Adds the id names of the children of layout and, for nested DynamicRelativeLayouts, of their
+     * descendants, like DynamicRelativeLayout declares them to its parent.
+     */
+    private static void collectDescendantIds(Element layout, Set<String> names) {
+        for (Node node = layout.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!(node instanceof Element))
+                continue;
+            final Element child = (Element) node;
+            final String id = parseIdReference(child.getAttributeNS(ANDROID_NAMESPACE, "id"));
+            if (id != null)
+                names.add(id);
+            if (child.getTagName().equals(LAYOUT_CLASS))
+                collectDescendantIds(child, names);
+        }
+    }
+
+    private static boolean isDescendantOfOther(List<Set<String>> descendantNames, int index, String name) {
+        for (int i = 0; i < descendantNames.size(); i++) {
+            if (i != index && descendantNames.get(i) != null && descendantNames.get(i).contains(name))
+                return true;
+        }
+        return false;
+    }
+
+    private static int number(List<String> names, String name) {
+        final int number = names.indexOf(name);
+        if (number >= 0)
+            return number;
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    private static String describe(Element child, int index, String[] idNames) {
+        return idNames[index] != null ? idNames[index] : "child " + index + " (" + child.getNodeName() + ")";
+    }
+
+    /**
+     * Returns the name of the id in a reference like @+id/name, android ids as android:id/name like
+     * Resources.getIdentifier expects them, or null if value is no id reference.
+     */
+    private static String parseIdReference(String value) {
+        String reference = value.trim();
+        if (!reference.startsWith("@"))
+            return null;
+        reference = reference.substring(reference.startsWith("@+") ? 2 : 1);
+        final int separator = reference.indexOf(':');
+        final String type = separator < 0 ? reference : reference.substring(separator + 1);
+        if (!type.startsWith("id/") || type.length() == 3)
+            return null;
+        return separator < 0 ? type.substring(3) : reference;
+    }
+
+    /**
+     * Returns the value of one of the attributes of the library, which can be in the res-auto or the
+     * package namespace.
+     */
+    private static String getAppAttribute(Element element, String name) {
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            final String namespace = attribute.getNamespaceURI();
+            if (name.equals(attribute.getLocalName()) && namespace != null && !namespace.equals(ANDROID_NAMESPACE)
+                    && (namespace.equals(RES_AUTO_NAMESPACE) || namespace.startsWith(RES_NAMESPACE_PREFIX)))
+                return attribute.getValue();
+        }
+        return null;
+    }
+
+    private static void setDynamicValue(NodeSpec spec, int index, float value) {
+        switch (index) {
+            case 0:
+                spec.dynamicMarginLeft = value;
+                break;
+            case 1:
+                spec.dynamicMarginTop = value;
+                break;
+            case 2:
+                spec.dynamicMarginRight = value;
+                break;
+            case 3:
+                spec.dynamicMarginBottom = value;
+                break;
+            case 4:
+                spec.dynamicWidth = value;
+                break;
+            case 5:
+                spec.dynamicHeight = value;
+                break;
+            case 6:
+                spec.dynamicWidthMax = value;
+                break;
+            case 7:
+                spec.dynamicWidthMin = value;
+                break;
+            case 8:
+                spec.dynamicHeightMax = value;
+                break;
+            default:
+                spec.dynamicHeightMin = value;
+                break;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.littlemock.compiler;
+
+import com.littlemock.engine.LayoutPlan;
+import com.littlemock.engine.LayoutTemplate;
+import com.littlemock.engine.NodeSpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LayoutCompilerTest {
+    // the row layout in test-res, the benchmark module inflates it with and without its plan
+    private static final File FIXTURE = new File("test-res");
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<com.littlemock.library.DynamicRelativeLayout"
+            + " xmlns:android=\"http://schemas.android.com/apk/res/android\""
+            + " xmlns:mlayout=\"http://schemas.android.com/apk/res-auto\"";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeLayout(File resources, String layoutFolder, String name, String xml) throws IOException {
+        final File directory = new File(resources, layoutFolder);
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        final File file = new File(directory, name + ".xml");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(xml);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static File getPlanFile(File output, String name) {
+        return new File(new File(output, LayoutCompiler.PLAN_DIRECTORY), name + LayoutCompiler.PLAN_EXTENSION);
+    }
+
+    private static LayoutPlan readPlan(File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return LayoutPlan.readFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void fixtureIsCompiledIntoAPlan() throws IOException {
+        final File output = folder.newFolder("assets");
+        final LayoutCompiler compiler = new LayoutCompiler(FIXTURE, output);
+        assertEquals(1, compiler.compile());
+        assertEquals(Arrays.<String>asList(), compiler.getErrors());
+        assertEquals(Arrays.<String>asList(), compiler.getWarnings());
+
+        final LayoutPlan plan = readPlan(getPlanFile(output, "row"));
+        assertEquals(5, plan.getNodeCount());
+        assertEquals("header", plan.getIdName(0));
+        assertEquals("title", plan.getIdName(2));
+        assertNull(plan.getIdName(4));
+
+        // the ids are only known to the app, the references of the plan are resolved to them
+        final int[] ids = {10, 11, 12, 13, NodeSpec.NO_ID};
+        final LayoutTemplate template = plan.toTemplate(ids, true);
+        final NodeSpec title = template.getSpec(2);
+        assertEquals(12, title.id);
+        assertEquals(11, title.dynamicBaseRefLeft);
+        assertEquals(10, title.dynamicBaseRefTop);
+        assertEquals(0.5f, title.dynamicWidthMax, 0);
+        assertEquals(0.9f, template.getSpec(4).dynamicWidth, 0);
+        assertEquals(11, template.getSpec(4).dynamicBaseRefTop);
+        // sizes in pixels depend on the density and are not part of a plan
+        assertEquals(NodeSpec.WRAP_CONTENT, template.getSpec(0).width);
+        // badge on title on icon on header
+        assertEquals(3, template.getMaxDependencyDepth());
+    }
+
+    @Test
+    public void cycleIsRejected() throws IOException {
+        final File resources = folder.newFolder("res");
+        final File output = folder.newFolder("assets");
+        writeLayout(resources, "layout", "row", HEADER + " mlayout:dynamic_template=\"@layout/row\">\n"
+                + "<View android:id=\"@+id/a\" mlayout:layout_dynamic_margin_base_left=\"@id/c\"/>\n"
+                + "<View android:id=\"@+id/b\" mlayout:layout_dynamic_margin_base_top=\"@id/a\"/>\n"
+                + "<View android:id=\"@+id/c\" mlayout:layout_dynamic_margin_base_left=\"@id/b\"/>\n"
+                + "</com.littlemock.library.DynamicRelativeLayout>");
+        // a plan of an earlier build is removed
+        final File stale = getPlanFile(output, "row");
+        assertTrue(stale.getParentFile().mkdirs() && stale.createNewFile());
+
+        final LayoutCompiler compiler = new LayoutCompiler(resources, output);
+        assertEquals(0, compiler.compile());
+        assertEquals(1, compiler.getErrors().size());
+        final String error = compiler.getErrors().get(0);
+        final String prefix = "layout/row.xml: A CYCLE IS DETECTED BETWEEN VIEWS! ";
+        assertTrue(error, error.startsWith(prefix));
+        // the cycle by id names, from any of its views back to it
+        final List<String> cycle = Arrays.asList(error.substring(prefix.length()).split(" -> "));
+        assertEquals(error, 4, cycle.size());
+        assertEquals(error, cycle.get(0), cycle.get(3));
+        assertEquals(error, new HashSet<String>(Arrays.asList("a", "b", "c")), new HashSet<String>(cycle));
+        assertFalse(stale.exists());
+    }
+
+    @Test
+    public void unknownBaseIsRejected() throws IOException {
+        final File resources = folder.newFolder("res");
+        writeLayout(resources, "layout", "row", HEADER + ">\n"
+                + "<View android:id=\"@+id/a\" mlayout:layout_dynamic_margin_base_left=\"@id/missing\"/>\n"
+                + "</com.littlemock.library.DynamicRelativeLayout>");
+        final LayoutCompiler compiler = new LayoutCompiler(resources, folder.newFolder("assets"));
+        assertEquals(0, compiler.compile());
+        assertEquals(1, compiler.getErrors().size());
+        assertTrue(compiler.getErrors().get(0), compiler.getErrors().get(0).contains("@id/missing"));
+    }
+
+    @Test
+    public void descendantBaseIsNotPrecompiled() throws IOException {
+        final File resources = folder.newFolder("res");
+        final File output = folder.newFolder("assets");
+        writeLayout(resources, "layout", "row", HEADER + " mlayout:dynamic_template=\"@layout/row\">\n"
+                + "<com.littlemock.library.DynamicRelativeLayout android:id=\"@+id/nested\">\n"
+                + "  <View android:id=\"@+id/inner\"/>\n"
+                + "</com.littlemock.library.DynamicRelativeLayout>\n"
+                + "<View android:id=\"@+id/a\" mlayout:layout_dynamic_margin_base_left=\"@id/inner\"/>\n"
+                + "</com.littlemock.library.DynamicRelativeLayout>");
+        final LayoutCompiler compiler = new LayoutCompiler(resources, output);
+        assertEquals(0, compiler.compile());
+        assertEquals(Arrays.<String>asList(), compiler.getErrors());
+        assertEquals(Arrays.asList("layout/row.xml: no plan for @layout/row, a is based on a view inside another layout"),
+                compiler.getWarnings());
+        assertFalse(getPlanFile(output, "row").exists());
+    }
+
+    @Test
+    public void referencedValueIsNotPrecompiled() throws IOException {
+        final File resources = folder.newFolder("res");
+        writeLayout(resources, "layout", "row", HEADER + " mlayout:dynamic_template=\"@layout/row\">\n"
+                + "<View android:id=\"@+id/a\" mlayout:layout_dynamic_width=\"@dimen/width\"/>\n"
+                + "</com.littlemock.library.DynamicRelativeLayout>");
+        final LayoutCompiler compiler = new LayoutCompiler(resources, folder.newFolder("assets"));
+        assertEquals(0, compiler.compile());
+        assertEquals(Arrays.<String>asList(), compiler.getErrors());
+        assertEquals(1, compiler.getWarnings().size());
+    }
+
+    @Test
+    public void layoutOfAConfigurationIsNotPrecompiled() throws IOException {
+        final File resources = folder.newFolder("res");
+        final String xml = HEADER + " mlayout:dynamic_template=\"@layout/row\">\n"
+                + "<View android:id=\"@+id/a\" mlayout:layout_dynamic_width=\".5\"/>\n"
+                + "</com.littlemock.library.DynamicRelativeLayout>";
+        writeLayout(resources, "layout", "row", xml);
+        writeLayout(resources, "layout-land", "row", xml);
+        final LayoutCompiler compiler = new LayoutCompiler(resources, folder.newFolder("assets"));
+        assertEquals(0, compiler.compile());
+        assertEquals(Arrays.<String>asList(), compiler.getErrors());
+        assertEquals(2, compiler.getWarnings().size());
+        assertTrue(compiler.getWarnings().get(0), compiler.getWarnings().get(0).endsWith("differs per configuration"));
+    }
+}
@@ -0,0 +1,331 @@
+package com.littlemock.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Solves many layouts off the UI thread at once, e.g. every layout of an app for a list of screen
+ * sizes to render screenshots or thumbnails. Every {@link Job} is measured by a {@link LayoutSolver}
+ * of its own, on a pool of worker threads.
+ * <p/>
+ * A large job is split as well: nodes that are not connected through base references do not depend
+ * on each other while the parent size is fixed, so each group of them is solved on its own thread.
+ * The measurer of such a job is called from several threads at once, for different nodes. Frames do
+ * not depend on how the work was split, every job gets the same result as a single solver.
+ */
+public class BatchSolver {
+    // jobs with fewer nodes are solved in one piece, see setSplitThreshold
+    public static final int DEFAULT_SPLIT_THRESHOLD = 2000;
+
+    /**
+     * One layout to solve: a template with the GONE state of its nodes, the parent specs and the
+     * measurer for its nodes. The result can be read once {@link #solve} returned.
+     */
+    public static final class Job {
+        final LayoutTemplate template;
+        final boolean[] gone;
+        final int widthMeasureSpec;
+        final int heightMeasureSpec;
+        final LayoutSolver.Measurer measurer;
+        int[] frames;
+        int measuredWidth;
+        int measuredHeight;
+
+        /**
+         * @param gone GONE state of every node of template, null when all of them are visible
+         */
+        public Job(LayoutTemplate template, boolean[] gone, int widthMeasureSpec, int heightMeasureSpec,
+                   LayoutSolver.Measurer measurer) {
+            if (gone != null && gone.length != template.getNodeCount())
+                throw new IllegalArgumentException("gone has " + gone.length + " entries for "
+                        + template.getNodeCount() + " nodes");
+            this.template = template;
+            this.gone = gone;
+            this.widthMeasureSpec = widthMeasureSpec;
+            this.heightMeasureSpec = heightMeasureSpec;
+            this.measurer = measurer;
+        }
+
+        boolean isGone(int node) {
+            return gone != null && gone[node];
+        }
+
+        /**
+         * Frames of the nodes, four ints per node like {@link LayoutSolver#getFrames}. GONE nodes are 0.
+         */
+        public int[] getFrames() {
+            return frames;
+        }
+
+        public int getMeasuredWidth() {
+            return measuredWidth;
+        }
+
+        public int getMeasuredHeight() {
+            return measuredHeight;
+        }
+    }
+
+    /**
+     * Nodes of a template that are solved together, with a template of their own. nodes maps the
+     * index of a node in the part to its index in the whole template.
+     */
+    private static final class Part {
+        final LayoutTemplate template;
+        final int[] nodes;
+
+        Part(LayoutTemplate template, int[] nodes) {
+            this.template = template;
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * Measures the nodes of a part through the measurer of the whole job.
+     */
+    private static final class PartMeasurer implements LayoutSolver.ContainerMeasurer {
+        private final LayoutSolver.Measurer measurer;
+        private final int[] nodes;
+
+        PartMeasurer(LayoutSolver.Measurer measurer, int[] nodes) {
+            this.measurer = measurer;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+            measurer.measure(nodes[node], widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        public int getMeasuredWidth(int node) {
+            return measurer.getMeasuredWidth(nodes[node]);
+        }
+
+        @Override
+        public int getMeasuredHeight(int node) {
+            return measurer.getMeasuredHeight(nodes[node]);
+        }
+
+        @Override
+        public boolean getDescendantFrame(int node, int id, int[] frame) {
+            return measurer instanceof LayoutSolver.ContainerMeasurer
+                    && ((LayoutSolver.ContainerMeasurer) measurer).getDescendantFrame(nodes[node], id, frame);
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int threadCount;
+    private int splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+    // templates split into parts of about equal size, a template is split once for all its jobs. The
+    // parts do not refer to their template, so a template that is no longer used drops out. Guarded by
+    // itself
+    private final Map<LayoutTemplate, Part[]> parts = new WeakHashMap<LayoutTemplate, Part[]>();
+
+    /**
+     * Creates a solver with one worker thread per available processor.
+     */
+    public BatchSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchSolver(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount must be at least 1, got " + threadCount);
+        this.threadCount = threadCount;
+        // daemon threads, so a tool that forgets to shut the solver down still exits
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "BatchSolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Jobs with at least this many nodes and a parent that is not wrap_content are split into
+     * unconnected parts that are solved in parallel. Integer.MAX_VALUE never splits a job, so every
+     * measurer is only called from one thread at a time.
+     */
+    public void setSplitThreshold(int splitThreshold) {
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * Solves every job and returns when all of them are done.
+     *
+     * @throws RuntimeException with the failure of the first job that failed, e.g. a measurer that threw
+     */
+    public void solve(List<Job> jobs) throws InterruptedException {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Job job : jobs) {
+            final int nodeCount = job.template.getNodeCount();
+            job.frames = new int[nodeCount * LayoutSolver.DIRECTION_COUNT];
+            if (nodeCount < splitThreshold || threadCount == 1
+                    || MeasureSpec.getMode(job.widthMeasureSpec) == MeasureSpec.AT_MOST
+                    || MeasureSpec.getMode(job.heightMeasureSpec) == MeasureSpec.AT_MOST) {
+                // the size of a wrap_content parent depends on every node, so its nodes are not independent
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        solvePart(job, null);
+                        return null;
+                    }
+                });
+                continue;
+            }
+            for (final Part part : getParts(job.template)) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        solvePart(job, part);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads, jobs that are being solved are finished first.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        synchronized (parts) {
+            parts.clear();
+        }
+    }
+
+    /**
+     * Solves part of job, or all of it without a part. The parts of a job write different frames and
+     * agree on the measured size, which is the parent size for a split job.
+     */
+    private static void solvePart(Job job, Part part) {
+        final LayoutTemplate template = part != null ? part.template : job.template;
+        final LayoutSolver solver = new LayoutSolver();
+        solver.setTemplate(template);
+        final int count = template.getNodeCount();
+        for (int i = 0; i < count; i++) {
+            solver.setNode(i, template.getSpec(i), job.isGone(part != null ? part.nodes[i] : i), false);
+        }
+        solver.measure(job.widthMeasureSpec, job.heightMeasureSpec, 0, 0,
+                part != null ? new PartMeasurer(job.measurer, part.nodes) : job.measurer);
+
+        final int[] frames = solver.getFrames();
+        for (int i = 0; i < count; i++) {
+            final int node = part != null ? part.nodes[i] : i;
+            if (!job.isGone(node)) {
+                System.arraycopy(frames, i * LayoutSolver.DIRECTION_COUNT,
+                        job.frames, node * LayoutSolver.DIRECTION_COUNT, LayoutSolver.DIRECTION_COUNT);
+            }
+        }
+        job.measuredWidth = solver.getMeasuredWidth();
+        job.measuredHeight = solver.getMeasuredHeight();
+    }
+
+    private Part[] getParts(LayoutTemplate template) {
+        synchronized (parts) {
+            Part[] templateParts = parts.get(template);
+            if (templateParts == null) {
+                templateParts = split(template, threadCount * 2);
+                parts.put(template, templateParts);
+            }
+            return templateParts;
+        }
+    }
+
+    private static int findRoot(int[] roots, int node) {
+        while (roots[node] != node) {
+            roots[node] = roots[roots[node]];
+            node = roots[node];
+        }
+        return node;
+    }
+
+    /**
+     * Splits template into at most partCount parts of about the same node count. Nodes connected
+     * through a base reference always end up in the same part.
+     */
+    private static Part[] split(LayoutTemplate template, int partCount) {
+        final DependencyGraph graph = template.graph;
+        final int count = graph.getNodeCount();
+        final int[] roots = new int[count];
+        for (int i = 0; i < count; i++) {
+            roots[i] = i;
+        }
+        for (int i = 0; i < graph.baseRefIndex.length; i++) {
+            final int base = graph.baseRefIndex[i];
+            if (base != DependencyGraph.NO_REF) {
+                roots[findRoot(roots, i / LayoutSolver.DIRECTION_COUNT)] = findRoot(roots, base);
+            }
+        }
+
+        // whole components are handed out in node order until a part is full
+        final int[] componentSize = new int[count];
+        for (int i = 0; i < count; i++) {
+            roots[i] = findRoot(roots, i);
+            componentSize[roots[i]]++;
+        }
+        final int target = (count + partCount - 1) / partCount;
+        final int[] partOfRoot = new int[count];
+        Arrays.fill(partOfRoot, -1);
+        final int[] partSize = new int[count];
+        int parts = 0;
+        for (int i = 0; i < count; i++) {
+            final int root = roots[i];
+            if (partOfRoot[root] != -1)
+                continue;
+            if (parts == 0 || partSize[parts - 1] >= target)
+                parts++;
+            partOfRoot[root] = parts - 1;
+            partSize[parts - 1] += componentSize[root];
+        }
+
+        final int[][] nodes = new int[parts][];
+        final int[] filled = new int[parts];
+        for (int p = 0; p < parts; p++) {
+            nodes[p] = new int[partSize[p]];
+        }
+        for (int i = 0; i < count; i++) {
+            final int p = partOfRoot[roots[i]];
+            nodes[p][filled[p]++] = i;
+        }
+        // a base reference resolves to the same node within its part, the node it resolves to in the
+        // whole graph is the last one with that id and connected to it
+        final Part[] result = new Part[parts];
+        for (int p = 0; p < parts; p++) {
+            final NodeSpec[] specs = new NodeSpec[nodes[p].length];
+            final int[][] descendantIds = graph.descendantIds != null ? new int[specs.length][] : null;
+            for (int i = 0; i < specs.length; i++) {
+                specs[i] = template.getSpec(nodes[p][i]);
+                if (descendantIds != null)
+                    descendantIds[i] = graph.descendantIds[nodes[p][i]];
+            }
+            result[p] = new Part(new LayoutTemplate(DependencyGraph.build(specs, specs.length, descendantIds, null,
+                    NodeSpec.NO_ID), specs), nodes[p]);
+        }
+        return result;
+    }
+}
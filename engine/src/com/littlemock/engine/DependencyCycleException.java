@@ -0,0 +1,53 @@
+package com.littlemock.engine;
+
+/**
+ * Thrown when the base references of the nodes form a cycle, so they can not be put in a measure order.
+ */
+public class DependencyCycleException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Names the ids of a cycle for {@link #describeCycle}, e.g. with the names of view id resources.
+     */
+    public interface IdNames {
+        String getName(int id);
+    }
+
+    private static final IdNames HEX_IDS = new IdNames() {
+        @Override
+        public String getName(int id) {
+            return "0x" + Integer.toHexString(id);
+        }
+    };
+
+    private final int[] cycleIds;
+
+    public DependencyCycleException(int[] cycleIds) {
+        super("A CYCLE IS DETECTED BETWEEN VIEWS! PLEASE CHECK YOUR VIEW DEPENDENCY! " + describe(cycleIds, HEX_IDS));
+        this.cycleIds = cycleIds;
+    }
+
+    /**
+     * Ids of the nodes on the cycle in reference order, the first id is repeated at the end.
+     */
+    public int[] getCycleIds() {
+        return cycleIds;
+    }
+
+    /**
+     * The cycle as "a -> b -> a", with every id named by names.
+     */
+    public String describeCycle(IdNames names) {
+        return describe(cycleIds, names);
+    }
+
+    private static String describe(int[] cycleIds, IdNames names) {
+        final StringBuilder cycle = new StringBuilder();
+        for (int i = 0; i < cycleIds.length; i++) {
+            if (i > 0)
+                cycle.append(" -> ");
+            cycle.append(names.getName(cycleIds[i]));
+        }
+        return cycle.toString();
+    }
+}
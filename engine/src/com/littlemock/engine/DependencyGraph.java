@@ -0,0 +1,332 @@
+package com.littlemock.engine;
+
+import java.util.Arrays;
+
+/**
+ * Dependency graph of a set of nodes, built from their ids and base references and never changed
+ * afterwards, so solvers with the same structure can share one instance, see {@link LayoutTemplate}.
+ * <p/>
+ * baseRefIndex holds the index of the referenced node for every direction of every node, the
+ * dependents of node i are dependents[dependentsStart[i]] up to dependentsStart[i + 1] and
+ * measureOrder lists the nodes so that every node comes after the nodes it is based on.
+ * <p/>
+ * Left and right references only affect the x axis and top and bottom references only the y axis, so
+ * the graph also holds the dependents of every node along each axis on its own. measureOrder is a valid
+ * order for both of them.
+ * <p/>
+ * A reference to an id that no node has resolves to the node containing a descendant with that id, if
+ * one declared it, see {@link LayoutSolver#setDescendantIds}. descendantRefs tells these references
+ * apart, it is null when there are none.
+ */
+final class DependencyGraph {
+    static final int NO_REF = -1;
+
+    // reverse edges of a single axis, see reverseEdges
+    private static final int ALL_DIRECTIONS = -1;
+    private static final int HORIZONTAL = LayoutSolver.LEFT;
+    private static final int VERTICAL = LayoutSolver.TOP;
+
+    static final DependencyGraph EMPTY = create(new int[0], new int[0], new int[0], 0);
+
+    final int[] ids;
+    final int[] baseRefIds;
+    final int[] baseRefIndex;
+    final int[] dependentsStart;
+    final int[] dependents;
+    final int[] horizontalDependentsStart;
+    final int[] horizontalDependents;
+    final int[] verticalDependentsStart;
+    final int[] verticalDependents;
+    final int[] measureOrder;
+    final int maxDependencyDepth;
+    // descendant ids of every node the graph was built with, null when there were none
+    final int[][] descendantIds;
+    final boolean[] descendantRefs;
+    // whether a base reference is to an id no node has, which descendant ids could resolve
+    final boolean unresolvedRefs;
+
+    private DependencyGraph(int[] ids, int[] baseRefIds, int[] baseRefIndex, int[] dependentsStart,
+                            int[] dependents, int[] measureOrder, int maxDependencyDepth,
+                            int[][] descendantIds, boolean[] descendantRefs, boolean unresolvedRefs) {
+        this.ids = ids;
+        this.baseRefIds = baseRefIds;
+        this.baseRefIndex = baseRefIndex;
+        this.dependentsStart = dependentsStart;
+        this.dependents = dependents;
+        final int count = ids.length;
+        horizontalDependentsStart = new int[count + 1];
+        horizontalDependents = reverseEdges(baseRefIndex, count, horizontalDependentsStart, HORIZONTAL);
+        verticalDependentsStart = new int[count + 1];
+        verticalDependents = reverseEdges(baseRefIndex, count, verticalDependentsStart, VERTICAL);
+        this.measureOrder = measureOrder;
+        this.maxDependencyDepth = maxDependencyDepth;
+        this.descendantIds = descendantIds;
+        this.descendantRefs = descendantRefs;
+        this.unresolvedRefs = unresolvedRefs;
+    }
+
+    int getNodeCount() {
+        return ids.length;
+    }
+
+    /**
+     * Whether spec has the id and base references node was built with.
+     */
+    boolean matches(int node, NodeSpec spec) {
+        if (spec.id != ids[node])
+            return false;
+        final int offset = node * LayoutSolver.DIRECTION_COUNT;
+        for (int d = 0; d < LayoutSolver.DIRECTION_COUNT; d++) {
+            if (spec.getBaseRef(d) != baseRefIds[offset + d])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether the graph was built with ids as the descendant ids of node, or they would not resolve any
+     * reference.
+     */
+    boolean matchesDescendants(int node, int[] ids) {
+        if (!unresolvedRefs && descendantRefs == null)
+            return true;
+        final int[] built = descendantIds != null ? descendantIds[node] : null;
+        return built == ids || Arrays.equals(built, ids);
+    }
+
+    private static int findNode(long[] nodeIndexById, int count, int id) {
+        // entries are sorted by id and then by index, the last node with the id wins
+        final long key = ((long) id << 32) | 0xffffffffL;
+        int low = 0;
+        int high = count - 1;
+        int found = NO_REF;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long entry = nodeIndexById[mid];
+            if (entry <= key) {
+                if ((int) (entry >> 32) == id)
+                    found = (int) entry;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Builds the graph of the first count specs.
+     *
+     * @throws DependencyCycleException if the base references of the nodes form a cycle
+     */
+    static DependencyGraph build(NodeSpec[] specs, int count) {
+        return build(specs, count, null, null, NodeSpec.NO_ID);
+    }
+
+    /**
+     * Like {@link #build(NodeSpec[], int)}, with the descendant ids of every node unless descendantIds is
+     * null. The cycle check is recorded with tracer unless it is null.
+     */
+    static DependencyGraph build(NodeSpec[] specs, int count, int[][] descendantIds, LayoutTracer tracer,
+                                 int traceId) {
+        final int directions = LayoutSolver.DIRECTION_COUNT;
+        final int[] ids = new int[count];
+        final long[] nodeIndexById = new long[count];
+        int idCount = 0;
+        for (int i = 0; i < count; i++) {
+            ids[i] = specs[i].id;
+            if (specs[i].id != NodeSpec.NO_ID) {
+                nodeIndexById[idCount++] = ((long) specs[i].id << 32) | i;
+            }
+        }
+        Arrays.sort(nodeIndexById, 0, idCount);
+        int descendantCount = 0;
+        if (descendantIds != null) {
+            for (int i = 0; i < count; i++) {
+                descendantCount += descendantIds[i] != null ? descendantIds[i].length : 0;
+            }
+        }
+        // containers by descendant id, like nodeIndexById
+        final long[] containerById = new long[descendantCount];
+        if (descendantCount > 0) {
+            int next = 0;
+            for (int i = 0; i < count; i++) {
+                if (descendantIds[i] != null) {
+                    for (int id : descendantIds[i]) {
+                        containerById[next++] = ((long) id << 32) | i;
+                    }
+                }
+            }
+            Arrays.sort(containerById);
+        }
+        boolean[] descendantRefs = null;
+        boolean unresolvedRefs = false;
+
+        // resolve the base references and count the unresolved bases of every node
+        final int[] baseRefIds = new int[count * directions];
+        final int[] baseRefIndex = new int[count * directions];
+        final int[] remainingRefs = new int[count];
+        final int[] depths = new int[count];
+        for (int i = 0; i < count; i++) {
+            final int offset = i * directions;
+            for (int d = 0; d < directions; d++) {
+                final int refId = specs[i].getBaseRef(d);
+                int base = refId == NodeSpec.NO_ID ? NO_REF : findNode(nodeIndexById, idCount, refId);
+                if (base == NO_REF && refId != NodeSpec.NO_ID && descendantCount > 0) {
+                    // a node can not be based on its own descendants, they are placed inside of it
+                    base = findNode(containerById, descendantCount, refId);
+                    if (base == i) {
+                        base = NO_REF;
+                    } else if (base != NO_REF) {
+                        if (descendantRefs == null)
+                            descendantRefs = new boolean[count * directions];
+                        descendantRefs[offset + d] = true;
+                    }
+                }
+                if (base == NO_REF && refId != NodeSpec.NO_ID)
+                    unresolvedRefs = true;
+                baseRefIds[offset + d] = refId;
+                baseRefIndex[offset + d] = base;
+                if (base != NO_REF)
+                    remainingRefs[i]++;
+            }
+        }
+        final int[] dependentsStart = new int[count + 1];
+        final int[] dependents = reverseEdges(baseRefIndex, count, dependentsStart, ALL_DIRECTIONS);
+
+        // Kahn's algorithm, measureOrder doubles as the queue. Nodes that never get queued
+        // are part of a cycle or based on one
+        final long checkStart = tracer != null ? System.nanoTime() : 0;
+        final int[] measureOrder = new int[count];
+        int head = 0;
+        int tail = 0;
+        int maxDepth = 0;
+        for (int i = 0; i < count; i++) {
+            if (remainingRefs[i] == 0)
+                measureOrder[tail++] = i;
+        }
+        while (head < tail) {
+            final int base = measureOrder[head++];
+            for (int e = dependentsStart[base]; e < dependentsStart[base + 1]; e++) {
+                final int dependent = dependents[e];
+                if (depths[base] + 1 > depths[dependent]) {
+                    depths[dependent] = depths[base] + 1;
+                    maxDepth = Math.max(maxDepth, depths[dependent]);
+                }
+                if (--remainingRefs[dependent] == 0)
+                    measureOrder[tail++] = dependent;
+            }
+        }
+        if (tracer != null)
+            tracer.record(LayoutTracer.CYCLE_CHECK, traceId, maxDepth, checkStart);
+        if (tail < count)
+            throw new DependencyCycleException(findCycle(ids, baseRefIndex, remainingRefs));
+        return new DependencyGraph(ids, baseRefIds, baseRefIndex, dependentsStart, dependents, measureOrder, maxDepth,
+                descendantCount > 0 ? Arrays.copyOf(descendantIds, count) : null, descendantRefs, unresolvedRefs);
+    }
+
+    /**
+     * Creates the graph of nodes whose base references were already resolved to baseRefIndex and put in
+     * measureOrder, e.g. by a {@link LayoutPlan}. Nothing is checked, a bad order is not detected.
+     */
+    static DependencyGraph create(int[] ids, int[] baseRefIndex, int[] measureOrder, int maxDependencyDepth) {
+        final int count = ids.length;
+        final int[] baseRefIds = new int[count * LayoutSolver.DIRECTION_COUNT];
+        for (int i = 0; i < baseRefIds.length; i++) {
+            baseRefIds[i] = baseRefIndex[i] == NO_REF ? NodeSpec.NO_ID : ids[baseRefIndex[i]];
+        }
+        final int[] dependentsStart = new int[count + 1];
+        final int[] dependents = reverseEdges(baseRefIndex, count, dependentsStart, ALL_DIRECTIONS);
+        return new DependencyGraph(ids, baseRefIds, baseRefIndex, dependentsStart, dependents, measureOrder,
+                maxDependencyDepth, null, null, false);
+    }
+
+    /**
+     * Returns the dependency depth of every node, 0 for a node that is not based on another one.
+     */
+    int[] computeDepths() {
+        final int[] depths = new int[ids.length];
+        for (int node : measureOrder) {
+            final int offset = node * LayoutSolver.DIRECTION_COUNT;
+            for (int d = 0; d < LayoutSolver.DIRECTION_COUNT; d++) {
+                final int base = baseRefIndex[offset + d];
+                if (base != NO_REF && depths[base] + 1 > depths[node])
+                    depths[node] = depths[base] + 1;
+            }
+        }
+        return depths;
+    }
+
+    private static boolean isOnAxis(int direction, int axis) {
+        return axis == ALL_DIRECTIONS || direction % 2 == axis;
+    }
+
+    /**
+     * Fills dependentsStart and returns the dependents of every node, in node order. With HORIZONTAL or
+     * VERTICAL only the references of that axis count.
+     */
+    private static int[] reverseEdges(int[] baseRefIndex, int count, int[] dependentsStart, int axis) {
+        final int[] dependentCount = new int[count];
+        int edgeCount = 0;
+        for (int i = 0; i < baseRefIndex.length; i++) {
+            if (baseRefIndex[i] != NO_REF && isOnAxis(i % LayoutSolver.DIRECTION_COUNT, axis)) {
+                dependentCount[baseRefIndex[i]]++;
+                edgeCount++;
+            }
+        }
+        final int[] dependents = new int[edgeCount];
+        for (int i = 0; i < count; i++) {
+            dependentsStart[i + 1] = dependentsStart[i] + dependentCount[i];
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            final int offset = i * LayoutSolver.DIRECTION_COUNT;
+            for (int d = LayoutSolver.DIRECTION_COUNT - 1; d >= 0; d--) {
+                final int base = baseRefIndex[offset + d];
+                if (base != NO_REF && isOnAxis(d, axis)) {
+                    dependents[dependentsStart[base] + --dependentCount[base]] = i;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    private static int nextOnCycle(int node, int[] baseRefIndex, int[] remainingRefs) {
+        final int offset = node * LayoutSolver.DIRECTION_COUNT;
+        for (int d = 0; d < LayoutSolver.DIRECTION_COUNT; d++) {
+            final int base = baseRefIndex[offset + d];
+            if (base != NO_REF && remainingRefs[base] != 0)
+                return base;
+        }
+        return NO_REF;
+    }
+
+    /**
+     * Walks the base references of the nodes left over by the topological sort until one repeats,
+     * every node on that walk from the repeated one on forms a cycle.
+     */
+    private static int[] findCycle(int[] ids, int[] baseRefIndex, int[] remainingRefs) {
+        int start = 0;
+        while (remainingRefs[start] == 0) {
+            start++;
+        }
+        final boolean[] visited = new boolean[ids.length];
+        int current = start;
+        while (!visited[current]) {
+            visited[current] = true;
+            current = nextOnCycle(current, baseRefIndex, remainingRefs);
+        }
+
+        int length = 1;
+        for (int node = nextOnCycle(current, baseRefIndex, remainingRefs); node != current;
+             node = nextOnCycle(node, baseRefIndex, remainingRefs)) {
+            length++;
+        }
+        final int[] cycle = new int[length + 1];
+        int node = current;
+        for (int i = 0; i <= length; i++) {
+            cycle[i] = ids[node];
+            node = nextOnCycle(node, baseRefIndex, remainingRefs);
+        }
+        return cycle;
+    }
+}
@@ -0,0 +1,182 @@
+package com.littlemock.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Precompiled form of a layout, written at build time and loaded instead of parsing and validating the
+ * layout at runtime. A plan holds the dynamic values of every node, the base references resolved to node
+ * indexes and the measure order, but no ids: those are only known once the resources are packaged, so
+ * the nodes carry the names of their ids and the host resolves them, see {@link #toTemplate}.
+ * <p/>
+ * Sizes and margins in pixels are not part of a plan, they depend on the density of the device.
+ */
+public final class LayoutPlan {
+    private static final int MAGIC = 0x444c504c;
+    private static final int VERSION = 1;
+
+    private final String[] idNames;
+    // dynamic values only, ids and base references are unresolved
+    private final NodeSpec[] specs;
+    private final int[] baseRefIndex;
+    private final int[] measureOrder;
+    private final int maxDependencyDepth;
+
+    private LayoutPlan(String[] idNames, NodeSpec[] specs, int[] baseRefIndex, int[] measureOrder,
+                       int maxDependencyDepth) {
+        this.idNames = idNames;
+        this.specs = specs;
+        this.baseRefIndex = baseRefIndex;
+        this.measureOrder = measureOrder;
+        this.maxDependencyDepth = maxDependencyDepth;
+    }
+
+    /**
+     * Compiles the plan of the nodes described by specs, whose ids can be any numbers standing for the
+     * idNames of the nodes. idNames has a null entry for a node without id.
+     *
+     * @throws DependencyCycleException if the base references of the nodes form a cycle
+     */
+    public static LayoutPlan compile(String[] idNames, NodeSpec[] specs) {
+        if (idNames.length != specs.length)
+            throw new IllegalArgumentException("Every node needs an id name, or null");
+        final DependencyGraph graph = DependencyGraph.build(specs, specs.length);
+        final NodeSpec[] values = new NodeSpec[specs.length];
+        for (int i = 0; i < specs.length; i++) {
+            values[i] = copyDynamicValues(specs[i]);
+        }
+        return new LayoutPlan(idNames.clone(), values, graph.baseRefIndex, graph.measureOrder,
+                graph.maxDependencyDepth);
+    }
+
+    private static NodeSpec copyDynamicValues(NodeSpec source) {
+        final NodeSpec spec = new NodeSpec();
+        spec.dynamicMarginLeft = source.dynamicMarginLeft;
+        spec.dynamicMarginTop = source.dynamicMarginTop;
+        spec.dynamicMarginRight = source.dynamicMarginRight;
+        spec.dynamicMarginBottom = source.dynamicMarginBottom;
+        spec.dynamicWidth = source.dynamicWidth;
+        spec.dynamicHeight = source.dynamicHeight;
+        spec.dynamicWidthMax = source.dynamicWidthMax;
+        spec.dynamicWidthMin = source.dynamicWidthMin;
+        spec.dynamicHeightMax = source.dynamicHeightMax;
+        spec.dynamicHeightMin = source.dynamicHeightMin;
+        return spec;
+    }
+
+    public int getNodeCount() {
+        return specs.length;
+    }
+
+    /**
+     * Name of the id of node, null if it has none.
+     */
+    public String getIdName(int node) {
+        return idNames[node];
+    }
+
+    /**
+     * Creates the template of the plan for the resolved ids of the nodes. Without validate the stored
+     * measure order is trusted, otherwise the graph is built and checked for cycles again, like a layout
+     * without a plan.
+     *
+     * @throws DependencyCycleException if validate is set and the base references form a cycle
+     */
+    public LayoutTemplate toTemplate(int[] ids, boolean validate) {
+        final int count = specs.length;
+        if (ids.length != count)
+            throw new IllegalArgumentException("Expected " + count + " ids, got " + ids.length);
+        final NodeSpec[] resolved = new NodeSpec[count];
+        for (int i = 0; i < count; i++) {
+            resolved[i] = new NodeSpec(specs[i]);
+            resolved[i].id = ids[i];
+            final int offset = i * LayoutSolver.DIRECTION_COUNT;
+            for (int d = 0; d < LayoutSolver.DIRECTION_COUNT; d++) {
+                final int base = baseRefIndex[offset + d];
+                resolved[i].setBaseRef(d, base == DependencyGraph.NO_REF ? NodeSpec.NO_ID : ids[base]);
+            }
+        }
+        final DependencyGraph graph = validate ? DependencyGraph.build(resolved, count)
+                : DependencyGraph.create(ids.clone(), baseRefIndex, measureOrder, maxDependencyDepth);
+        return new LayoutTemplate(graph, resolved);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        final int count = specs.length;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            final NodeSpec spec = specs[i];
+            out.writeBoolean(idNames[i] != null);
+            if (idNames[i] != null)
+                out.writeUTF(idNames[i]);
+            out.writeFloat(spec.dynamicMarginLeft);
+            out.writeFloat(spec.dynamicMarginTop);
+            out.writeFloat(spec.dynamicMarginRight);
+            out.writeFloat(spec.dynamicMarginBottom);
+            out.writeFloat(spec.dynamicWidth);
+            out.writeFloat(spec.dynamicHeight);
+            out.writeFloat(spec.dynamicWidthMax);
+            out.writeFloat(spec.dynamicWidthMin);
+            out.writeFloat(spec.dynamicHeightMax);
+            out.writeFloat(spec.dynamicHeightMin);
+            for (int d = 0; d < LayoutSolver.DIRECTION_COUNT; d++) {
+                out.writeInt(baseRefIndex[i * LayoutSolver.DIRECTION_COUNT + d]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeInt(measureOrder[i]);
+        }
+        out.writeInt(maxDependencyDepth);
+    }
+
+    /**
+     * Reads a plan written by {@link #writeTo}.
+     *
+     * @throws IOException if the data is not a plan of this version
+     */
+    public static LayoutPlan readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a layout plan");
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported layout plan version " + version);
+        final int count = in.readInt();
+        final String[] idNames = new String[count];
+        final NodeSpec[] specs = new NodeSpec[count];
+        final int[] baseRefIndex = new int[count * LayoutSolver.DIRECTION_COUNT];
+        for (int i = 0; i < count; i++) {
+            final NodeSpec spec = new NodeSpec();
+            if (in.readBoolean())
+                idNames[i] = in.readUTF();
+            spec.dynamicMarginLeft = in.readFloat();
+            spec.dynamicMarginTop = in.readFloat();
+            spec.dynamicMarginRight = in.readFloat();
+            spec.dynamicMarginBottom = in.readFloat();
+            spec.dynamicWidth = in.readFloat();
+            spec.dynamicHeight = in.readFloat();
+            spec.dynamicWidthMax = in.readFloat();
+            spec.dynamicWidthMin = in.readFloat();
+            spec.dynamicHeightMax = in.readFloat();
+            spec.dynamicHeightMin = in.readFloat();
+            for (int d = 0; d < LayoutSolver.DIRECTION_COUNT; d++) {
+                baseRefIndex[i * LayoutSolver.DIRECTION_COUNT + d] = readIndex(in, count, true);
+            }
+            specs[i] = spec;
+        }
+        final int[] measureOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            measureOrder[i] = readIndex(in, count, false);
+        }
+        return new LayoutPlan(idNames, specs, baseRefIndex, measureOrder, in.readInt());
+    }
+
+    private static int readIndex(DataInputStream in, int count, boolean noRef) throws IOException {
+        final int index = in.readInt();
+        if (index >= count || index < (noRef ? DependencyGraph.NO_REF : 0))
+            throw new IOException("Corrupt layout plan, node index " + index + " of " + count);
+        return index;
+    }
+}
@@ -0,0 +1,1561 @@
+package com.littlemock.engine;
+
+import java.util.Arrays;
+
+/**
+ * Platform independent solver behind DynamicRelativeLayout.
+ * <p/>
+ * Nodes are addressed by their index. Every pass the host hands over the spec and state of each node
+ * with {@link #setNode}, then calls {@link #measure} with a {@link Measurer} that measures the actual
+ * nodes, which also computes the frame of every node, and {@link #layout} to place them. The dependency
+ * graph and the result of the previous pass are kept, so passes where nothing or only a few nodes
+ * changed are cheap.
+ */
+public class LayoutSolver {
+    // directions of a base reference, also the slot of that reference in the per node arrays
+    public static final int LEFT = 0;
+    public static final int TOP = 1;
+    public static final int RIGHT = 2;
+    public static final int BOTTOM = 3;
+    static final int DIRECTION_COUNT = 4;
+
+    // relative margin of a node that is not placed relative to another node in that direction
+    public static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    private static final int NO_REF = DependencyGraph.NO_REF;
+
+    /**
+     * Measures the nodes for the solver, on Android this is a thin wrapper around the child views.
+     */
+    public interface Measurer {
+        void measure(int node, int widthMeasureSpec, int heightMeasureSpec);
+
+        int getMeasuredWidth(int node);
+
+        int getMeasuredHeight(int node);
+    }
+
+    /**
+     * A Measurer of nodes that contain other nodes, e.g. child layouts that are solved by a solver of
+     * their own. Nodes can be based on the descendants declared with {@link #setDescendantIds}.
+     */
+    public interface ContainerMeasurer extends Measurer {
+        /**
+         * Writes the frame of the descendant of node with the given view id into frame: left, top, right
+         * and bottom relative to the left top corner of node. Called after node was measured. Returns
+         * false if the descendant has no frame, e.g. because it is GONE, the edge of node is used then.
+         */
+        boolean getDescendantFrame(int node, int id, int[] frame);
+    }
+
+    /**
+     * Places the nodes for the solver at the frames computed by the measure pass.
+     */
+    public interface Placer {
+        void place(int node, int left, int top, int right, int bottom);
+    }
+
+    /**
+     * Gets the {@link PassStats} of every pass. Without a listener the solver does not read the clock.
+     */
+    public interface PassListener {
+        void onMeasurePass(PassStats stats);
+
+        void onLayoutPass(PassStats stats);
+    }
+
+    private int nodeCount = 0;
+    private NodeSpec[] specs = new NodeSpec[0];
+    private boolean[] gone = new boolean[0];
+    private boolean[] layoutRequested = new boolean[0];
+    private boolean unspecifiedSizeHint = false;
+
+    // dependency graph, only rebuilt when the node count, an id or a base reference changes. It may be
+    // shared with other solvers through a LayoutTemplate, the arrays below are those of graph
+    private DependencyGraph graph = DependencyGraph.EMPTY;
+    private int[] baseRefIndex = graph.baseRefIndex;
+    private int[] dependentsStart = graph.dependentsStart;
+    private int[] dependents = graph.dependents;
+    private int[] horizontalDependentsStart = graph.horizontalDependentsStart;
+    private int[] horizontalDependents = graph.horizontalDependents;
+    private int[] verticalDependentsStart = graph.verticalDependentsStart;
+    private int[] verticalDependents = graph.verticalDependents;
+    private int[] measureOrder = graph.measureOrder;
+    private boolean[] descendantRefs = graph.descendantRefs;
+    private boolean graphInvalid = true;
+    // see setDescendantIds, null until a node has descendants
+    private int[][] descendantIds;
+    // edge of the descendant a base reference resolved to, relative to the left or top of the node that
+    // contains it, or UNRESOLVED to use the edge of that node. Only used with descendantRefs
+    private int[] descendantEdges = new int[0];
+    private final int[] descendantFrame = new int[DIRECTION_COUNT];
+    private int maxDependencyDepth = 0;
+
+    // LayoutParams of every node resolved for the parent size of the last pass, see NodeSpec.writePlan.
+    // measurePositions is resolved for the parent size the nodes are measured against, layoutPositions
+    // for the final size they are laid out in, which differs for a wrap_content parent
+    private int[] plans = new int[0];
+    private int[] measurePositions = new int[0];
+    private int[] layoutPositions = new int[0];
+    private int layoutPositionsWidth;
+    private int layoutPositionsHeight;
+
+    // two phase wrap_content solving, see measurePass. deferredNodes are measured in the second phase
+    private boolean[] dependsOnWidth = new boolean[0];
+    private boolean[] dependsOnHeight = new boolean[0];
+    private boolean[] deferredNodes = new boolean[0];
+    private boolean cachedDeferWidth;
+    private boolean cachedDeferHeight;
+    private int cachedDeferredWidth;
+    private int cachedDeferredHeight;
+
+    // solution of the last pass
+    private int[] relativeMargins = new int[0];
+    private int[] measuredWidths = new int[0];
+    private int[] measuredHeights = new int[0];
+    // child measure specs every node was last measured with
+    private int[] childWidthSpecs = new int[0];
+    private int[] childHeightSpecs = new int[0];
+    private int[] frames = new int[0];
+    // nodes whose frame changed since they were last placed
+    private boolean[] frameChanged = new boolean[0];
+    private boolean skipUnchangedFrames = false;
+    private int measuredWidth = 0;
+    private int measuredHeight = 0;
+
+    // viewport virtualization, see setViewport. offscreenNodes are neither measured nor placed in the
+    // last pass, sizeKnown tells which nodes were measured or had their size fixed by the spec before
+    private boolean viewportSet = false;
+    private boolean viewportChanged = false;
+    private int viewportLeft;
+    private int viewportTop;
+    private int viewportRight;
+    private int viewportBottom;
+    private boolean[] offscreenNodes = new boolean[0];
+    private boolean[] sizeKnown = new boolean[0];
+    private int offscreenCount = 0;
+
+    // the solution is reused while the parent specs stay the same. Nodes that changed since, and every
+    // node based on them, are remeasured, the others keep their result. When only one parent spec
+    // changed the other axis is reused as well, see measureAxis
+    private boolean cacheValid = false;
+    private int cachedWidthMeasureSpec;
+    private int cachedHeightMeasureSpec;
+    private int cachedParentWidth;
+    private int cachedParentHeight;
+    private boolean[] cachedGone = new boolean[0];
+    // specs of the last pass. Interned specs never change, the values of the others are copied into
+    // cachedSpecs, which is only allocated once such a spec is set, see isSpecUnchanged
+    private NodeSpec[] cachedSpecRefs = new NodeSpec[0];
+    private int[] cachedSpecs = new int[0];
+    private boolean[] dirtyNodes = new boolean[0];
+    private int[] dirtyStack = new int[0];
+    // nodes whose position along the axis that kept its size has to be resolved again, see measureAxis
+    private boolean[] stableAxisDirty = new boolean[0];
+    private long cacheHits = 0;
+    private long cachePartialHits = 0;
+    private long cacheMisses = 0;
+
+    // solutions of earlier parent sizes, see setSolutionCacheSize. contentVersion changes whenever a
+    // spec, a GONE state or the graph changes, solutionComplete tells whether the last pass measured
+    // every node against the parent size, so its solution can be saved
+    private SolutionCache solutionCache;
+    private long contentVersion = 0;
+    private boolean solutionComplete = false;
+
+    private PassListener passListener;
+    private final PassStats passStats = new PassStats();
+    private LayoutTracer tracer;
+    private int traceId = NodeSpec.NO_ID;
+    // dependency depth of every node for the tracer, computed once per graph
+    private int[] nodeDepths;
+
+    /**
+     * Resizes the solver for count nodes, the graph is rebuilt and all nodes measured on the next pass
+     * when the count changed.
+     */
+    public void setNodeCount(int count) {
+        if (count == nodeCount)
+            return;
+        nodeCount = count;
+        specs = new NodeSpec[count];
+        gone = new boolean[count];
+        layoutRequested = new boolean[count];
+        plans = new int[count * NodeSpec.PLAN_SIZE];
+        measurePositions = new int[count * NodeSpec.POSITION_SIZE];
+        layoutPositions = new int[count * NodeSpec.POSITION_SIZE];
+        dependsOnWidth = new boolean[count];
+        dependsOnHeight = new boolean[count];
+        deferredNodes = new boolean[count];
+        relativeMargins = new int[count * DIRECTION_COUNT];
+        measuredWidths = new int[count];
+        measuredHeights = new int[count];
+        childWidthSpecs = new int[count];
+        childHeightSpecs = new int[count];
+        frames = new int[count * DIRECTION_COUNT];
+        frameChanged = new boolean[count];
+        Arrays.fill(frameChanged, true);
+        offscreenNodes = new boolean[count];
+        sizeKnown = new boolean[count];
+        offscreenCount = 0;
+        cachedGone = new boolean[count];
+        cachedSpecRefs = new NodeSpec[count];
+        cachedSpecs = new int[0];
+        dirtyNodes = new boolean[count];
+        dirtyStack = new int[count];
+        stableAxisDirty = new boolean[count];
+        descendantIds = null;
+        Arrays.fill(relativeMargins, UNRESOLVED);
+        graphInvalid = true;
+        cacheValid = false;
+        solutionComplete = false;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Hands over the current spec and state of a node. changed tells the solver that the node itself
+     * needs to be measured again even though its spec did not change, e.g. because its content changed.
+     */
+    public void setNode(int node, NodeSpec spec, boolean isGone, boolean changed) {
+        specs[node] = spec;
+        gone[node] = isGone;
+        layoutRequested[node] = changed;
+        if (!graphInvalid && !graph.matches(node, spec)) {
+            graphInvalid = true;
+        }
+    }
+
+    /**
+     * Declares the view ids of the descendants of a node, e.g. the children of a child layout and their
+     * own descendants, so other nodes can be based on them. A base reference to an id that no node has
+     * is resolved to the node containing a descendant with that id, the last one if there are several.
+     * The edge of the descendant is then taken from {@link ContainerMeasurer#getDescendantFrame} after
+     * that node was measured. ids is kept and must not be changed, pass a new array instead. null or an
+     * empty array for none.
+     */
+    public void setDescendantIds(int node, int[] ids) {
+        if (ids != null && ids.length == 0)
+            ids = null;
+        if (descendantIds == null) {
+            if (ids == null)
+                return;
+            descendantIds = new int[nodeCount][];
+        }
+        descendantIds[node] = ids;
+        if (!graphInvalid && !graph.matchesDescendants(node, ids)) {
+            graphInvalid = true;
+        }
+    }
+
+    /**
+     * Uses the graph of template instead of building one, for the next passes of a layout with the same
+     * structure. The node count is set to that of the template, call this before the nodes are set.
+     * A node whose id or base references differ from the template makes the solver build its own graph
+     * again, like any other change of the graph. The descendant ids of the template are used as well.
+     */
+    public void setTemplate(LayoutTemplate template) {
+        setNodeCount(template.getNodeCount());
+        descendantIds = template.graph.descendantIds != null ? template.graph.descendantIds.clone() : null;
+        if (graph != template.graph) {
+            useGraph(template.graph);
+            cacheValid = false;
+        }
+        graphInvalid = false;
+    }
+
+    /**
+     * Creates a template of the current nodes, which shares the graph of this solver and holds a copy
+     * of the node specs. The graph is built first if it is out of date.
+     *
+     * @throws DependencyCycleException if the base references of the nodes form a cycle
+     */
+    public LayoutTemplate createTemplate() {
+        updateGraph();
+        final NodeSpec[] copies = new NodeSpec[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            copies[i] = new NodeSpec(specs[i]);
+        }
+        return new LayoutTemplate(graph, copies);
+    }
+
+    /**
+     * Applies a spec of node where at most the margins changed, without a measure pass. The frames of the
+     * node and of the nodes based on it are updated and the nodes whose frame changed are placed with
+     * placer right away.
+     * <p/>
+     * This only works while no size can change: the last pass measured the nodes, the parent is not
+     * wrap_content, and the node and every node based on it has a fixed or percent width and height, so
+     * their measure specs do not depend on the margins. Otherwise nothing is changed and false is
+     * returned, the host has to run a measure pass instead.
+     */
+    public boolean moveNode(int node, NodeSpec spec, Placer placer) {
+        if (!cacheValid || graphInvalid || offscreenCount > 0 || node < 0 || node >= nodeCount)
+            return false;
+        setNode(node, spec, gone[node], layoutRequested[node]);
+        if (graphInvalid
+                || MeasureSpec.getMode(cachedWidthMeasureSpec) == MeasureSpec.AT_MOST
+                || MeasureSpec.getMode(cachedHeightMeasureSpec) == MeasureSpec.AT_MOST
+                || !isSizeSpecUnchanged(node))
+            return false;
+
+        // collect the node and every node based on it, all of them have to keep their size
+        Arrays.fill(dirtyNodes, false);
+        dirtyNodes[node] = true;
+        dirtyStack[0] = node;
+        int top = 1;
+        while (top > 0) {
+            final int base = dirtyStack[--top];
+            // any other change since the last pass still needs a measure pass
+            if (base != node && !isSpecUnchanged(base))
+                return false;
+            if (!gone[base]) {
+                final int plan = base * NodeSpec.PLAN_SIZE;
+                if (plans[plan + NodeSpec.PLAN_WIDTH] < 0 || plans[plan + NodeSpec.PLAN_HEIGHT] < 0)
+                    return false;
+            }
+            for (int e = dependentsStart[base]; e < dependentsStart[base + 1]; e++) {
+                final int dependent = dependents[e];
+                if (!dirtyNodes[dependent]) {
+                    dirtyNodes[dependent] = true;
+                    dirtyStack[top++] = dependent;
+                }
+            }
+        }
+
+        // neither side is wrap_content, so the nodes are laid out in the size they were measured against
+        final int parentWidth = cachedParentWidth;
+        final int parentHeight = cachedParentHeight;
+        for (int i = 0; i < nodeCount; i++) {
+            final int index = measureOrder[i];
+            if (!dirtyNodes[index])
+                continue;
+            Arrays.fill(relativeMargins, index * DIRECTION_COUNT, (index + 1) * DIRECTION_COUNT, UNRESOLVED);
+            specs[index].writePlan(plans, index * NodeSpec.PLAN_SIZE, parentWidth, parentHeight);
+            specs[index].writePosition(measurePositions, index * NodeSpec.POSITION_SIZE, parentWidth, parentHeight);
+            System.arraycopy(measurePositions, index * NodeSpec.POSITION_SIZE,
+                    layoutPositions, index * NodeSpec.POSITION_SIZE, NodeSpec.POSITION_SIZE);
+            saveSpec(index);
+            if (!gone[index]) {
+                resolveRelativeMargins(index, parentWidth, parentHeight);
+                updateFrame(index);
+            }
+        }
+
+        // the solution stays complete, but only for the moved margins
+        contentVersion++;
+        for (int i = 0; i < nodeCount; i++) {
+            if (dirtyNodes[i] && !gone[i] && frameChanged[i]) {
+                final int offset = i * DIRECTION_COUNT;
+                placer.place(i, frames[offset + LEFT], frames[offset + TOP], frames[offset + RIGHT], frames[offset + BOTTOM]);
+                frameChanged[i] = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds the dependency graph on the next pass.
+     */
+    public void invalidateGraph() {
+        graphInvalid = true;
+    }
+
+    /**
+     * Measures every node on the next pass, even when nothing seems to have changed.
+     */
+    public void invalidate() {
+        cacheValid = false;
+    }
+
+    /**
+     * Whether MATCH_PARENT and WRAP_CONTENT nodes of an UNSPECIFIED parent get the parent size as
+     * a hint, see {@link MeasureSpec#getChildMeasureSpec}.
+     */
+    public void setUnspecifiedSizeHint(boolean unspecifiedSizeHint) {
+        if (this.unspecifiedSizeHint != unspecifiedSizeHint) {
+            this.unspecifiedSizeHint = unspecifiedSizeHint;
+            cacheValid = false;
+            contentVersion++;
+            solutionComplete = false;
+        }
+    }
+
+    /**
+     * Only measures and places the nodes whose frame intersects the given rectangle in parent coordinates,
+     * and the nodes they are based on, e.g. the visible part of a large layout in a scroll container plus
+     * some margin. The frame of a node is estimated without measuring it, from its spec or, where the
+     * spec does not fix the size, from its last measured size as long as its child measure specs stayed
+     * the same. Nodes without such a size are measured anyway. The other nodes keep their last frame and are skipped until the viewport moves
+     * near them. A wrap_content parent measures all nodes, its size depends on every one of them.
+     */
+    public void setViewport(int left, int top, int right, int bottom) {
+        if (viewportSet && viewportLeft == left && viewportTop == top && viewportRight == right
+                && viewportBottom == bottom)
+            return;
+        viewportSet = true;
+        viewportChanged = true;
+        viewportLeft = left;
+        viewportTop = top;
+        viewportRight = right;
+        viewportBottom = bottom;
+    }
+
+    /**
+     * Measures and places all nodes again from the next pass on, see {@link #setViewport}.
+     */
+    public void clearViewport() {
+        if (viewportSet) {
+            viewportSet = false;
+            cacheValid = false;
+        }
+    }
+
+    /**
+     * Number of nodes skipped by the last measure pass because they are outside the viewport.
+     */
+    public int getOffscreenNodeCount() {
+        return offscreenCount;
+    }
+
+    /**
+     * Sets the listener that gets the timings and counters of every pass, null to stop instrumenting.
+     */
+    public void setPassListener(PassListener passListener) {
+        this.passListener = passListener;
+    }
+
+    /**
+     * Records the graph builds, passes and node measures of this solver with tracer, null stops
+     * tracing. id tells the passes of this solver apart from those of other solvers sharing the
+     * tracer, e.g. the view id of the layout.
+     */
+    public void setTracer(LayoutTracer tracer, int id) {
+        this.tracer = tracer;
+        this.traceId = id;
+    }
+
+    /**
+     * Number of passes that reused the result of the previous pass without measuring any node.
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Number of passes that only remeasured the changed nodes and the nodes based on them.
+     */
+    public long getCachePartialHits() {
+        return cachePartialHits;
+    }
+
+    /**
+     * Number of passes that had to measure all nodes.
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public void resetCacheStats() {
+        cacheHits = 0;
+        cachePartialHits = 0;
+        cacheMisses = 0;
+        if (solutionCache != null) {
+            solutionCache.hits = 0;
+            solutionCache.misses = 0;
+            solutionCache.evictions = 0;
+        }
+    }
+
+    /**
+     * Keeps the solutions of up to size earlier parent sizes, e.g. for rotation or resizing a window
+     * back and forth. Going back to one of them restores its frames without resolving the graph: each
+     * node is only measured with the child measure specs it got for that size, which the platform
+     * usually answers from its own measure cache, and the solution is used when every node gets the
+     * size it had. A solution is dropped once a spec, a GONE state or the graph changes. Solutions of
+     * a wrap_content parent, with a viewport or with nodes based on descendants of other nodes are not
+     * kept. 0, the default, turns the cache off.
+     * Every solution holds 22 ints per node.
+     */
+    public void setSolutionCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("size must not be negative, got " + size);
+        if (size == 0) {
+            solutionCache = null;
+        } else if (solutionCache == null || solutionCache.getSize() != size) {
+            solutionCache = new SolutionCache(size);
+        }
+    }
+
+    /**
+     * Number of passes that restored the solution of an earlier parent size.
+     */
+    public long getSolutionCacheHits() {
+        return solutionCache != null ? solutionCache.hits : 0;
+    }
+
+    /**
+     * Number of passes that found no solution to restore for their parent size, or one that no longer
+     * fit the measured sizes of the nodes.
+     */
+    public long getSolutionCacheMisses() {
+        return solutionCache != null ? solutionCache.misses : 0;
+    }
+
+    /**
+     * Number of solutions that were dropped to make room for the solution of another parent size.
+     */
+    public long getSolutionCacheEvictions() {
+        return solutionCache != null ? solutionCache.evictions : 0;
+    }
+
+    /**
+     * Rebuilds the dependency graph right away if it is out of date, otherwise this happens at the
+     * start of the next {@link #measure}. The node specs have to be set.
+     *
+     * @throws DependencyCycleException if the base references of the nodes form a cycle
+     */
+    public void updateGraph() {
+        if (graphInvalid) {
+            buildGraph();
+            cacheValid = false;
+        }
+    }
+
+    private void buildGraph() {
+        // a failed build keeps the graph invalid, so the cycle is reported again on the next pass
+        final LayoutTracer tracer = this.tracer;
+        if (tracer == null) {
+            useGraph(DependencyGraph.build(specs, nodeCount, descendantIds, null, NodeSpec.NO_ID));
+        } else {
+            final long start = System.nanoTime();
+            try {
+                useGraph(DependencyGraph.build(specs, nodeCount, descendantIds, tracer, traceId));
+            } finally {
+                tracer.record(LayoutTracer.GRAPH_BUILD, traceId, maxDependencyDepth, start);
+            }
+        }
+        graphInvalid = false;
+    }
+
+    private void useGraph(DependencyGraph graph) {
+        this.graph = graph;
+        contentVersion++;
+        solutionComplete = false;
+        baseRefIndex = graph.baseRefIndex;
+        dependentsStart = graph.dependentsStart;
+        dependents = graph.dependents;
+        horizontalDependentsStart = graph.horizontalDependentsStart;
+        horizontalDependents = graph.horizontalDependents;
+        verticalDependentsStart = graph.verticalDependentsStart;
+        verticalDependents = graph.verticalDependents;
+        measureOrder = graph.measureOrder;
+        maxDependencyDepth = graph.maxDependencyDepth;
+        nodeDepths = null;
+        descendantRefs = graph.descendantRefs;
+        if (descendantRefs != null) {
+            if (descendantEdges.length != descendantRefs.length)
+                descendantEdges = new int[descendantRefs.length];
+            Arrays.fill(descendantEdges, UNRESOLVED);
+        }
+    }
+
+    private int getLeftMargin(int index) {
+        final int relative = relativeMargins[index * DIRECTION_COUNT + LEFT];
+        return relative != UNRESOLVED ? relative : plans[index * NodeSpec.PLAN_SIZE + LEFT];
+    }
+
+    private int getTopMargin(int index) {
+        final int relative = relativeMargins[index * DIRECTION_COUNT + TOP];
+        return relative != UNRESOLVED ? relative : plans[index * NodeSpec.PLAN_SIZE + TOP];
+    }
+
+    private int getRightMargin(int index) {
+        final int relative = relativeMargins[index * DIRECTION_COUNT + RIGHT];
+        return relative != UNRESOLVED ? relative : plans[index * NodeSpec.PLAN_SIZE + RIGHT];
+    }
+
+    private int getBottomMargin(int index) {
+        final int relative = relativeMargins[index * DIRECTION_COUNT + BOTTOM];
+        return relative != UNRESOLVED ? relative : plans[index * NodeSpec.PLAN_SIZE + BOTTOM];
+    }
+
+    private int getChildLeft(int index, int childWidth, int[] positions) {
+        final int offset = index * DIRECTION_COUNT;
+        if (relativeMargins[offset + LEFT] != UNRESOLVED)
+            return relativeMargins[offset + LEFT];
+        if (relativeMargins[offset + RIGHT] != UNRESOLVED)
+            return relativeMargins[offset + RIGHT] - childWidth;
+        final int position = index * NodeSpec.POSITION_SIZE;
+        return positions[position] - positions[position + 1] * childWidth;
+    }
+
+    private int getChildTop(int index, int childHeight, int[] positions) {
+        final int offset = index * DIRECTION_COUNT;
+        if (relativeMargins[offset + TOP] != UNRESOLVED)
+            return relativeMargins[offset + TOP];
+        if (relativeMargins[offset + BOTTOM] != UNRESOLVED)
+            return relativeMargins[offset + BOTTOM] - childHeight;
+        final int position = index * NodeSpec.POSITION_SIZE;
+        return positions[position + 2] - positions[position + 3] * childHeight;
+    }
+
+    /**
+     * Returns the edge of the node the node at index is based on in the given direction:
+     * the right edge for LEFT, the bottom edge for TOP, the left edge for RIGHT and the top edge for BOTTOM.
+     * GONE nodes pass on their own base reference in the same direction, without one the
+     * edge of the parent is used.
+     */
+    private int getBaseEdge(int index, int direction, int parentWidth, int parentHeight) {
+        // like getEffectiveBase, but keeps the reference that led to the base
+        int ref = index * DIRECTION_COUNT + direction;
+        int base = baseRefIndex[ref];
+        while (base != NO_REF && gone[base]) {
+            ref = base * DIRECTION_COUNT + direction;
+            base = baseRefIndex[ref];
+        }
+        if (base == NO_REF) {
+            if (direction == RIGHT)
+                return parentWidth;
+            else if (direction == BOTTOM)
+                return parentHeight;
+            return 0;
+        }
+
+        if (descendantRefs != null && descendantRefs[ref] && descendantEdges[ref] != UNRESOLVED) {
+            // the edge of a descendant of base, relative to base
+            if (direction == LEFT || direction == RIGHT)
+                return getChildLeft(base, measuredWidths[base], measurePositions) + descendantEdges[ref];
+            return getChildTop(base, measuredHeights[base], measurePositions) + descendantEdges[ref];
+        }
+        switch (direction) {
+            case LEFT:
+                return getChildLeft(base, measuredWidths[base], measurePositions) + measuredWidths[base];
+            case TOP:
+                return getChildTop(base, measuredHeights[base], measurePositions) + measuredHeights[base];
+            case RIGHT:
+                return getChildLeft(base, measuredWidths[base], measurePositions);
+            default:
+                return getChildTop(base, measuredHeights[base], measurePositions);
+        }
+    }
+
+    private void resolveRelativeMargins(int index, int parentWidth, int parentHeight) {
+        // relative margins are resolved against the final position of the base nodes,
+        // which are guaranteed to be measured already by the measure order
+        resolveHorizontalMargins(index, parentWidth, parentHeight);
+        resolveVerticalMargins(index, parentWidth, parentHeight);
+    }
+
+    private void resolveHorizontalMargins(int index, int parentWidth, int parentHeight) {
+        final int plan = index * NodeSpec.PLAN_SIZE;
+        final int offset = index * DIRECTION_COUNT;
+        if (baseRefIndex[offset + LEFT] != NO_REF) {
+            relativeMargins[offset + LEFT] = plans[plan + LEFT] + getBaseEdge(index, LEFT, parentWidth, parentHeight);
+        }
+        if (baseRefIndex[offset + RIGHT] != NO_REF) {
+            relativeMargins[offset + RIGHT] = getBaseEdge(index, RIGHT, parentWidth, parentHeight) - plans[plan + RIGHT];
+        }
+    }
+
+    private void resolveVerticalMargins(int index, int parentWidth, int parentHeight) {
+        final int plan = index * NodeSpec.PLAN_SIZE;
+        final int offset = index * DIRECTION_COUNT;
+        if (baseRefIndex[offset + TOP] != NO_REF) {
+            relativeMargins[offset + TOP] = plans[plan + TOP] + getBaseEdge(index, TOP, parentWidth, parentHeight);
+        }
+        if (baseRefIndex[offset + BOTTOM] != NO_REF) {
+            relativeMargins[offset + BOTTOM] = getBaseEdge(index, BOTTOM, parentWidth, parentHeight) - plans[plan + BOTTOM];
+        }
+    }
+
+    private int getChildWidthMeasureSpec(int index, int widthMeasureSpec) {
+        return MeasureSpec.getChildMeasureSpec(widthMeasureSpec, getLeftMargin(index) + getRightMargin(index),
+                plans[index * NodeSpec.PLAN_SIZE + NodeSpec.PLAN_WIDTH], unspecifiedSizeHint);
+    }
+
+    private int getChildHeightMeasureSpec(int index, int heightMeasureSpec) {
+        return MeasureSpec.getChildMeasureSpec(heightMeasureSpec, getTopMargin(index) + getBottomMargin(index),
+                plans[index * NodeSpec.PLAN_SIZE + NodeSpec.PLAN_HEIGHT], unspecifiedSizeHint);
+    }
+
+    private void measureNode(int index, int widthMeasureSpec, int heightMeasureSpec, int parentWidth, int parentHeight,
+                             Measurer measurer) {
+        resolveRelativeMargins(index, parentWidth, parentHeight);
+        measureChild(index, getChildWidthMeasureSpec(index, widthMeasureSpec),
+                getChildHeightMeasureSpec(index, heightMeasureSpec), measurer);
+    }
+
+    /**
+     * Measures the node at index and returns whether one of its descendants that other nodes are based
+     * on moved within it.
+     */
+    private boolean measureChild(int index, int childWidthMeasureSpec, int childHeightMeasureSpec, Measurer measurer) {
+        callMeasurer(index, childWidthMeasureSpec, childHeightMeasureSpec, measurer);
+        measuredWidths[index] = measurer.getMeasuredWidth(index);
+        measuredHeights[index] = measurer.getMeasuredHeight(index);
+        childWidthSpecs[index] = childWidthMeasureSpec;
+        childHeightSpecs[index] = childHeightMeasureSpec;
+        sizeKnown[index] = true;
+        return descendantRefs != null && updateDescendantEdges(index, measurer);
+    }
+
+    /**
+     * Takes the edges of the descendants of the node at index that other nodes are based on from
+     * measurer, see {@link ContainerMeasurer}. Returns whether one of them changed.
+     */
+    private boolean updateDescendantEdges(int index, Measurer measurer) {
+        final ContainerMeasurer containerMeasurer = measurer instanceof ContainerMeasurer
+                ? (ContainerMeasurer) measurer : null;
+        final int[] frame = descendantFrame;
+        boolean changed = false;
+        for (int e = dependentsStart[index]; e < dependentsStart[index + 1]; e++) {
+            final int offset = dependents[e] * DIRECTION_COUNT;
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                final int ref = offset + d;
+                if (baseRefIndex[ref] != index || !descendantRefs[ref])
+                    continue;
+                int edge = UNRESOLVED;
+                if (containerMeasurer != null && containerMeasurer.getDescendantFrame(index, graph.baseRefIds[ref], frame)) {
+                    // the opposite edge, like getBaseEdge
+                    edge = frame[(d + 2) % DIRECTION_COUNT];
+                }
+                if (descendantEdges[ref] != edge) {
+                    descendantEdges[ref] = edge;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Measures the node at index with measurer, recording the measure with the tracer if there is one.
+     */
+    private void callMeasurer(int index, int childWidthMeasureSpec, int childHeightMeasureSpec, Measurer measurer) {
+        final LayoutTracer tracer = this.tracer;
+        if (tracer == null) {
+            measurer.measure(index, childWidthMeasureSpec, childHeightMeasureSpec);
+            return;
+        }
+        if (nodeDepths == null)
+            nodeDepths = graph.computeDepths();
+        final long start = System.nanoTime();
+        measurer.measure(index, childWidthMeasureSpec, childHeightMeasureSpec);
+        tracer.record(LayoutTracer.NODE_MEASURE, specs[index].id, nodeDepths[index], start);
+    }
+
+    private boolean isBasedOnUnknown(int index) {
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            final int base = getEffectiveBase(index, d);
+            if (base != NO_REF && !sizeKnown[base])
+                return true;
+        }
+        return false;
+    }
+
+    private boolean intersectsViewport(int left, int top, int right, int bottom) {
+        return left < viewportRight && right > viewportLeft && top < viewportBottom && bottom > viewportTop;
+    }
+
+    /**
+     * Whether the estimated frame of the node at index, or the frame it was last placed at, intersects
+     * the viewport. The node has to be resolved against the parent size it is measured in.
+     */
+    private boolean isNearViewport(int index) {
+        final int left = getChildLeft(index, measuredWidths[index], measurePositions);
+        final int top = getChildTop(index, measuredHeights[index], measurePositions);
+        final int offset = index * DIRECTION_COUNT;
+        return intersectsViewport(left, top, left + measuredWidths[index], top + measuredHeights[index])
+                || intersectsViewport(frames[offset + LEFT], frames[offset + TOP], frames[offset + RIGHT], frames[offset + BOTTOM]);
+    }
+
+    /**
+     * Marks the nodes that are not measured in a pass with a viewport and returns their number. The size
+     * of every node is estimated from its child measure specs, or its last size where they do not fix it,
+     * and its frame from that. A node is needed when that frame, or the frame it was last placed at,
+     * intersects the viewport, when its size is unknown or outdated, when it is based on such a node,
+     * or when a needed node is based on it. Without all only the dirty nodes are estimated again, the
+     * others keep their estimate or measured size and are only checked against the viewport.
+     */
+    private int markOffscreenNodes(boolean all, int widthMeasureSpec, int heightMeasureSpec,
+                                   int parentWidth, int parentHeight) {
+        final int count = nodeCount;
+        for (int i = 0; i < count; i++) {
+            final int index = measureOrder[i];
+            if (!all && !dirtyNodes[index]) {
+                if (offscreenNodes[index]) {
+                    // measured if it is needed now, its size is the estimate as long as it did not change
+                    dirtyNodes[index] = true;
+                }
+                offscreenNodes[index] = !gone[index] && !isNearViewport(index);
+                continue;
+            }
+            Arrays.fill(relativeMargins, index * DIRECTION_COUNT, (index + 1) * DIRECTION_COUNT, UNRESOLVED);
+            specs[index].writePlan(plans, index * NodeSpec.PLAN_SIZE, parentWidth, parentHeight);
+            specs[index].writePosition(measurePositions, index * NodeSpec.POSITION_SIZE, parentWidth, parentHeight);
+            offscreenNodes[index] = false;
+            if (gone[index])
+                continue;
+            resolveRelativeMargins(index, parentWidth, parentHeight);
+
+            final int childWidthMeasureSpec = getChildWidthMeasureSpec(index, widthMeasureSpec);
+            final int childHeightMeasureSpec = getChildHeightMeasureSpec(index, heightMeasureSpec);
+            final boolean widthFixed = MeasureSpec.getMode(childWidthMeasureSpec) == MeasureSpec.EXACTLY;
+            final boolean heightFixed = MeasureSpec.getMode(childHeightMeasureSpec) == MeasureSpec.EXACTLY;
+            if (widthFixed)
+                measuredWidths[index] = MeasureSpec.getSize(childWidthMeasureSpec);
+            if (heightFixed)
+                measuredHeights[index] = MeasureSpec.getSize(childHeightMeasureSpec);
+            // the last size is outdated once the node would be measured with other child specs, e.g. when
+            // its base went GONE. A node placed next to a node that still has to be measured can not be
+            // estimated either, it stays unknown until it is measured
+            if (((!widthFixed || !heightFixed) && (!sizeKnown[index] || layoutRequested[index]
+                    || childWidthMeasureSpec != childWidthSpecs[index]
+                    || childHeightMeasureSpec != childHeightSpecs[index]))
+                    || isBasedOnUnknown(index)) {
+                sizeKnown[index] = false;
+                continue;
+            }
+            sizeKnown[index] = true;
+            offscreenNodes[index] = !isNearViewport(index);
+        }
+
+        // the nodes a needed node is based on are needed as well. They come before it in measure order,
+        // so walking backwards every node is final once it is reached
+        int offscreen = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            final int index = measureOrder[i];
+            if (offscreenNodes[index]) {
+                offscreen++;
+            } else if (!gone[index]) {
+                for (int d = 0; d < DIRECTION_COUNT; d++) {
+                    final int base = getEffectiveBase(index, d);
+                    if (base != NO_REF)
+                        offscreenNodes[base] = false;
+                }
+            }
+        }
+        return offscreen;
+    }
+
+    private boolean isNodeChanged(int index, Measurer measurer) {
+        if (gone[index] != cachedGone[index])
+            return true;
+        // GONE nodes are never measured or laid out, so their layout request never gets cleared.
+        // Offscreen nodes were not measured, their size is an estimate
+        return (!gone[index] && layoutRequested[index])
+                || (!offscreenNodes[index] && (measurer.getMeasuredWidth(index) != measuredWidths[index]
+                || measurer.getMeasuredHeight(index) != measuredHeights[index]))
+                || !isSpecUnchanged(index);
+    }
+
+    /**
+     * Marks every node that changed since the last pass and, following the reverse edges,
+     * every node based on one of them. Returns the number of marked nodes.
+     */
+    private int markDirtyNodes(Measurer measurer) {
+        final int count = nodeCount;
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            dirtyNodes[i] = isNodeChanged(i, measurer);
+            if (dirtyNodes[i])
+                dirtyStack[top++] = i;
+        }
+        int dirtyCount = top;
+        while (top > 0) {
+            final int base = dirtyStack[--top];
+            for (int e = dependentsStart[base]; e < dependentsStart[base + 1]; e++) {
+                final int dependent = dependents[e];
+                if (!dirtyNodes[dependent]) {
+                    dirtyNodes[dependent] = true;
+                    dirtyStack[top++] = dependent;
+                    dirtyCount++;
+                }
+            }
+        }
+        return dirtyCount;
+    }
+
+    /**
+     * Measures the nodes for the given parent specs. minWidth and minHeight are the sizes used for an
+     * UNSPECIFIED spec, like the suggested minimum size of a view.
+     *
+     * @throws DependencyCycleException if the base references of the nodes form a cycle
+     */
+    public void measure(int widthMeasureSpec, int heightMeasureSpec, int minWidth, int minHeight, Measurer measurer) {
+        final LayoutTracer tracer = this.tracer;
+        if (tracer == null) {
+            measureAndReport(widthMeasureSpec, heightMeasureSpec, minWidth, minHeight, measurer);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            measureAndReport(widthMeasureSpec, heightMeasureSpec, minWidth, minHeight, measurer);
+        } finally {
+            tracer.record(LayoutTracer.MEASURE_PASS, traceId, maxDependencyDepth, start);
+        }
+    }
+
+    private void measureAndReport(int widthMeasureSpec, int heightMeasureSpec, int minWidth, int minHeight,
+                                  Measurer measurer) {
+        final PassListener listener = passListener;
+        if (listener == null) {
+            measurePass(widthMeasureSpec, heightMeasureSpec, minWidth, minHeight, measurer, null);
+            return;
+        }
+        final PassStats stats = passStats;
+        stats.start(nodeCount);
+        final long start = System.nanoTime();
+        measurePass(widthMeasureSpec, heightMeasureSpec, minWidth, minHeight, measurer, stats);
+        stats.totalNanos = System.nanoTime() - start;
+        stats.maxDependencyDepth = maxDependencyDepth;
+        listener.onMeasurePass(stats);
+    }
+
+    private void measurePass(int widthMeasureSpec, int heightMeasureSpec, int minWidth, int minHeight, Measurer measurer,
+                             PassStats stats) {
+        final boolean graphRebuilt = graphInvalid;
+        if (stats != null)
+            stats.graphRebuilt = graphRebuilt;
+        updateGraph();
+        if (graphRebuilt) {
+            // the nodes may have moved to other indexes
+            Arrays.fill(sizeKnown, false);
+        }
+        if (stats != null)
+            stats.graphBuildNanos = stats.lap();
+
+        final int parentWidth = MeasureSpec.getDefaultSize(minWidth, widthMeasureSpec);
+        final int parentHeight = MeasureSpec.getDefaultSize(minHeight, heightMeasureSpec);
+        final int count = nodeCount;
+
+        final boolean incremental = cacheValid
+                && widthMeasureSpec == cachedWidthMeasureSpec && heightMeasureSpec == cachedHeightMeasureSpec
+                && parentWidth == cachedParentWidth && parentHeight == cachedParentHeight;
+        if (!incremental && solutionCache != null
+                && restoreSolution(widthMeasureSpec, heightMeasureSpec, parentWidth, parentHeight, measurer, stats))
+            return;
+        // a parent that only changed its size along one axis is solved again along that axis
+        final boolean widthChanged = widthMeasureSpec != cachedWidthMeasureSpec || parentWidth != cachedParentWidth;
+        final boolean heightChanged = heightMeasureSpec != cachedHeightMeasureSpec || parentHeight != cachedParentHeight;
+        if (cacheValid && widthChanged != heightChanged && isAxisPassPossible(widthMeasureSpec, heightMeasureSpec)) {
+            measureAxis(widthChanged, widthMeasureSpec, heightMeasureSpec, parentWidth, parentHeight, measurer, stats);
+            return;
+        }
+        final boolean virtualize = viewportSet && MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.AT_MOST
+                && MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.AT_MOST;
+        final boolean viewportMoved = virtualize && viewportChanged;
+        viewportChanged = false;
+        if (incremental) {
+            final int dirtyCount = markDirtyNodes(measurer);
+            if (stats != null)
+                stats.dirtyCheckNanos = stats.lap();
+            if (dirtyCount == 0 && !viewportMoved) {
+                cacheHits++;
+                if (stats != null)
+                    stats.cacheResult = PassStats.CACHE_HIT;
+                return;
+            }
+            cachePartialHits++;
+            if (stats != null)
+                stats.cacheResult = PassStats.CACHE_PARTIAL_HIT;
+        } else {
+            cacheMisses++;
+        }
+
+        // A wrap_content parent is solved in two phases so every node is measured once. The nodes that do
+        // not depend on the size of the parent are measured first and define its size, then the nodes
+        // that do are measured against that size instead of the spec maximum
+        final boolean isWidthWrapContent = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.AT_MOST;
+        final boolean isHeightWrapContent = MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.AT_MOST;
+        boolean deferWidth = false;
+        boolean deferHeight = false;
+        if (isWidthWrapContent || isHeightWrapContent) {
+            classifyNodes();
+            for (int i = 0; i < count; i++) {
+                if (!gone[i]) {
+                    deferWidth |= isWidthWrapContent && !dependsOnWidth[i];
+                    deferHeight |= isHeightWrapContent && !dependsOnHeight[i];
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                final int index = measureOrder[i];
+                deferredNodes[index] = !gone[index] && ((deferWidth && dependsOnWidth[index])
+                        || (deferHeight && dependsOnHeight[index]) || isBasedOnDeferred(index));
+            }
+        } else {
+            Arrays.fill(deferredNodes, false);
+        }
+        if (stats != null)
+            stats.wrapContentNanos = stats.lap();
+
+        if (virtualize) {
+            offscreenCount = markOffscreenNodes(!incremental, widthMeasureSpec, heightMeasureSpec,
+                    parentWidth, parentHeight);
+            if (stats != null) {
+                stats.offscreenNodes = offscreenCount;
+                stats.dirtyCheckNanos += stats.lap();
+            }
+        } else if (offscreenCount > 0) {
+            Arrays.fill(offscreenNodes, false);
+            offscreenCount = 0;
+        }
+
+        // nodes switch phases when a size stops or starts being deferred, so all of them are measured again
+        final boolean measureAll = !incremental || deferWidth != cachedDeferWidth || deferHeight != cachedDeferHeight;
+        measureNodes(false, measureAll, widthMeasureSpec, heightMeasureSpec, parentWidth, parentHeight, measurer, stats);
+        if (stats != null)
+            stats.childMeasureNanos = stats.lap();
+
+        int maxWidth = 0;
+        int maxHeight = 0;
+        if (isWidthWrapContent || isHeightWrapContent) {
+            for (int i = 0; i < count; i++) {
+                if (gone[i] || deferredNodes[i])
+                    continue;
+                if (isWidthWrapContent)
+                    maxWidth = Math.max(maxWidth, getWrapWidth(i, measurer));
+                if (isHeightWrapContent)
+                    maxHeight = Math.max(maxHeight, getWrapHeight(i, measurer));
+            }
+        }
+        if (stats != null)
+            stats.wrapContentNanos += stats.lap();
+
+        boolean deferredChanged = false;
+        if (deferWidth || deferHeight) {
+            // the deferred nodes only need to be measured again when the size they depend on changed
+            deferredChanged = measureAll
+                    || (deferWidth && maxWidth != cachedDeferredWidth) || (deferHeight && maxHeight != cachedDeferredHeight);
+            final int deferredWidth = deferWidth ? maxWidth : parentWidth;
+            final int deferredHeight = deferHeight ? maxHeight : parentHeight;
+            measureNodes(true, deferredChanged,
+                    deferWidth ? MeasureSpec.makeMeasureSpec(deferredWidth, MeasureSpec.EXACTLY) : widthMeasureSpec,
+                    deferHeight ? MeasureSpec.makeMeasureSpec(deferredHeight, MeasureSpec.EXACTLY) : heightMeasureSpec,
+                    deferredWidth, deferredHeight, measurer, stats);
+            if (stats != null)
+                stats.childMeasureNanos += stats.lap();
+        }
+        cachedDeferWidth = deferWidth;
+        cachedDeferHeight = deferHeight;
+        cachedDeferredWidth = maxWidth;
+        cachedDeferredHeight = maxHeight;
+
+        // deferred nodes that do not depend on the size of a wrap_content axis still count towards it.
+        // Without any node independent of that axis it was not deferred, all nodes were measured against
+        // the spec maximum and all of them count
+        if (isWidthWrapContent || isHeightWrapContent) {
+            for (int i = 0; i < count; i++) {
+                if (gone[i] || !deferredNodes[i])
+                    continue;
+                if (isWidthWrapContent && !(deferWidth && dependsOnWidth[i]))
+                    maxWidth = Math.max(maxWidth, getWrapWidth(i, measurer));
+                if (isHeightWrapContent && !(deferHeight && dependsOnHeight[i]))
+                    maxHeight = Math.max(maxHeight, getWrapHeight(i, measurer));
+            }
+        }
+        measuredWidth = isWidthWrapContent ? maxWidth : parentWidth;
+        measuredHeight = isHeightWrapContent ? maxHeight : parentHeight;
+        if (stats != null)
+            stats.wrapContentNanos += stats.lap();
+
+        for (int i = 0; i < count; i++) {
+            // nodes that are not dirty still match their snapshot and measured size
+            if (incremental && !dirtyNodes[i])
+                continue;
+            if (!offscreenNodes[i]) {
+                measuredWidths[i] = measurer.getMeasuredWidth(i);
+                measuredHeights[i] = measurer.getMeasuredHeight(i);
+            }
+            updateSnapshot(i);
+        }
+
+        // nodes are laid out in the final size, which only differs from the parent size for wrap_content.
+        // The frames are computed right away, so layout only has to place the nodes. Nodes that were not
+        // measured again keep their position and frame as long as that size stays the same
+        final boolean layoutPositionsValid = incremental
+                && measuredWidth == layoutPositionsWidth && measuredHeight == layoutPositionsHeight;
+        final boolean framesValid = layoutPositionsValid && !measureAll && !deferredChanged;
+        for (int i = 0; i < count; i++) {
+            if (!layoutPositionsValid || dirtyNodes[i]) {
+                if (!deferWidth && !deferHeight && measuredWidth == parentWidth && measuredHeight == parentHeight) {
+                    System.arraycopy(measurePositions, i * NodeSpec.POSITION_SIZE,
+                            layoutPositions, i * NodeSpec.POSITION_SIZE, NodeSpec.POSITION_SIZE);
+                } else {
+                    specs[i].writePosition(layoutPositions, i * NodeSpec.POSITION_SIZE, measuredWidth, measuredHeight);
+                }
+            }
+            if (!gone[i] && !offscreenNodes[i] && (!framesValid || dirtyNodes[i])) {
+                updateFrame(i);
+            }
+        }
+        layoutPositionsWidth = measuredWidth;
+        layoutPositionsHeight = measuredHeight;
+        cachedWidthMeasureSpec = widthMeasureSpec;
+        cachedHeightMeasureSpec = heightMeasureSpec;
+        cachedParentWidth = parentWidth;
+        cachedParentHeight = parentHeight;
+        cacheValid = true;
+        solutionComplete = offscreenCount == 0 && !isWidthWrapContent && !isHeightWrapContent;
+    }
+
+    /**
+     * Takes over the spec and GONE state of the node at index into the snapshot of the last pass. The
+     * content version changes when either differs from the snapshot.
+     */
+    private void updateSnapshot(int index) {
+        if (cachedGone[index] != gone[index]) {
+            frameChanged[index] = true;
+            contentVersion++;
+        } else if (!isSpecUnchanged(index)) {
+            contentVersion++;
+        }
+        cachedGone[index] = gone[index];
+        saveSpec(index);
+    }
+
+    /**
+     * Whether the spec of the node at index still has the values of the last pass. An interned spec
+     * never changes, so a node that had one only needs a spec with the same values, the values of
+     * other specs are compared with their snapshot.
+     */
+    private boolean isSpecUnchanged(int index) {
+        final NodeSpec cached = cachedSpecRefs[index];
+        if (cached == null)
+            return false;
+        final NodeSpec spec = specs[index];
+        if (cached.interned)
+            return spec == cached || spec.hasSameValues(cached);
+        return spec.matchesSnapshot(cachedSpecs, index * NodeSpec.SNAPSHOT_SIZE);
+    }
+
+    /**
+     * Like {@link #isSpecUnchanged}, but ignores the margins.
+     */
+    private boolean isSizeSpecUnchanged(int index) {
+        final NodeSpec cached = cachedSpecRefs[index];
+        if (cached == null)
+            return false;
+        final NodeSpec spec = specs[index];
+        if (cached.interned)
+            return spec.hasSameValuesExceptMargins(cached);
+        return spec.matchesSnapshotExceptMargins(cachedSpecs, index * NodeSpec.SNAPSHOT_SIZE);
+    }
+
+    private void saveSpec(int index) {
+        final NodeSpec spec = specs[index];
+        cachedSpecRefs[index] = spec;
+        if (!spec.interned) {
+            if (cachedSpecs.length == 0)
+                cachedSpecs = new int[nodeCount * NodeSpec.SNAPSHOT_SIZE];
+            spec.writeSnapshot(cachedSpecs, index * NodeSpec.SNAPSHOT_SIZE);
+        }
+    }
+
+    private boolean isSpecChanged() {
+        for (int i = 0; i < nodeCount; i++) {
+            if (cachedGone[i] != gone[i] || !isSpecUnchanged(i))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Saves the solution of the last pass when it is complete and restores the one saved for the given
+     * parent specs, see {@link #setSolutionCacheSize}. Returns whether it was restored, the pass is
+     * done then. Otherwise the nodes may have been measured with other specs and all of them have to
+     * be measured again.
+     */
+    private boolean restoreSolution(int widthMeasureSpec, int heightMeasureSpec, int parentWidth, int parentHeight,
+                                    Measurer measurer, PassStats stats) {
+        final SolutionCache cache = solutionCache;
+        final int count = nodeCount;
+        // the frames of nodes based on descendants also depend on the layout inside other nodes
+        if (descendantRefs != null)
+            return false;
+        // a spec that changed since the last pass invalidates every saved solution, including its own
+        if (isSpecChanged()) {
+            contentVersion++;
+            solutionComplete = false;
+        }
+        if (solutionComplete) {
+            final SolutionCache.Solution saved = cache.obtain(cachedWidthMeasureSpec, cachedHeightMeasureSpec,
+                    cachedParentWidth, cachedParentHeight, contentVersion);
+            saved.resize(count);
+            System.arraycopy(plans, 0, saved.plans, 0, plans.length);
+            System.arraycopy(measurePositions, 0, saved.measurePositions, 0, measurePositions.length);
+            System.arraycopy(relativeMargins, 0, saved.relativeMargins, 0, relativeMargins.length);
+            System.arraycopy(measuredWidths, 0, saved.measuredWidths, 0, count);
+            System.arraycopy(measuredHeights, 0, saved.measuredHeights, 0, count);
+            System.arraycopy(childWidthSpecs, 0, saved.childWidthSpecs, 0, count);
+            System.arraycopy(childHeightSpecs, 0, saved.childHeightSpecs, 0, count);
+            System.arraycopy(frames, 0, saved.frames, 0, frames.length);
+        }
+
+        if (viewportSet || MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.AT_MOST
+                || MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.AT_MOST)
+            return false;
+        final SolutionCache.Solution solution = cache.find(widthMeasureSpec, heightMeasureSpec,
+                parentWidth, parentHeight, contentVersion);
+        if (solution == null) {
+            cache.misses++;
+            return false;
+        }
+        // the nodes are measured anyway, their content may have changed without their spec
+        boolean sizesMatch = true;
+        for (int i = 0; i < count; i++) {
+            if (gone[i])
+                continue;
+            callMeasurer(i, solution.childWidthSpecs[i], solution.childHeightSpecs[i], measurer);
+            if (stats != null)
+                stats.measureCalls++;
+            if (measurer.getMeasuredWidth(i) != solution.measuredWidths[i]
+                    || measurer.getMeasuredHeight(i) != solution.measuredHeights[i]) {
+                sizesMatch = false;
+                break;
+            }
+        }
+        if (stats != null)
+            stats.childMeasureNanos = stats.lap();
+        if (!sizesMatch) {
+            cache.remove(solution);
+            cache.misses++;
+            cacheValid = false;
+            return false;
+        }
+
+        cache.hits++;
+        if (stats != null)
+            stats.cacheResult = PassStats.CACHE_RESTORED;
+        System.arraycopy(solution.plans, 0, plans, 0, plans.length);
+        System.arraycopy(solution.measurePositions, 0, measurePositions, 0, measurePositions.length);
+        System.arraycopy(solution.measurePositions, 0, layoutPositions, 0, layoutPositions.length);
+        System.arraycopy(solution.relativeMargins, 0, relativeMargins, 0, relativeMargins.length);
+        System.arraycopy(solution.measuredWidths, 0, measuredWidths, 0, count);
+        System.arraycopy(solution.measuredHeights, 0, measuredHeights, 0, count);
+        System.arraycopy(solution.childWidthSpecs, 0, childWidthSpecs, 0, count);
+        System.arraycopy(solution.childHeightSpecs, 0, childHeightSpecs, 0, count);
+        final int[] savedFrames = solution.frames;
+        for (int i = 0; i < count; i++) {
+            final int offset = i * DIRECTION_COUNT;
+            if (gone[i])
+                continue;
+            sizeKnown[i] = true;
+            if (frames[offset + LEFT] != savedFrames[offset + LEFT] || frames[offset + TOP] != savedFrames[offset + TOP]
+                    || frames[offset + RIGHT] != savedFrames[offset + RIGHT]
+                    || frames[offset + BOTTOM] != savedFrames[offset + BOTTOM]) {
+                System.arraycopy(savedFrames, offset, frames, offset, DIRECTION_COUNT);
+                frameChanged[i] = true;
+            }
+        }
+        Arrays.fill(deferredNodes, false);
+        cachedDeferWidth = false;
+        cachedDeferHeight = false;
+        measuredWidth = parentWidth;
+        measuredHeight = parentHeight;
+        layoutPositionsWidth = parentWidth;
+        layoutPositionsHeight = parentHeight;
+        cachedWidthMeasureSpec = widthMeasureSpec;
+        cachedHeightMeasureSpec = heightMeasureSpec;
+        cachedParentWidth = parentWidth;
+        cachedParentHeight = parentHeight;
+        cacheValid = true;
+        solutionComplete = true;
+        return true;
+    }
+
+    /**
+     * Whether a pass where the parent size changed along one axis can reuse the other axis of the last
+     * pass, see {@link #measureAxis}. wrap_content parents are solved in phases that mix both axes and
+     * a viewport leaves nodes unmeasured, so neither is solved per axis.
+     */
+    private boolean isAxisPassPossible(int widthMeasureSpec, int heightMeasureSpec) {
+        return !viewportSet
+                && MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.AT_MOST
+                && MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.AT_MOST
+                && MeasureSpec.getMode(cachedWidthMeasureSpec) != MeasureSpec.AT_MOST
+                && MeasureSpec.getMode(cachedHeightMeasureSpec) != MeasureSpec.AT_MOST;
+    }
+
+    /**
+     * Measure pass for a parent whose size only changed along one axis, the x axis when horizontal.
+     * Left and right references only move nodes along x and top and bottom references only along y, so
+     * the changed axis is resolved again for every node while the other, stable axis keeps the result
+     * of the last pass. A node is only measured again when one of its child measure specs changed, or
+     * when it changed itself. When that changes its size along the stable axis, or moves it there, the
+     * nodes based on it along that axis are resolved again as well.
+     */
+    private void measureAxis(boolean horizontal, int widthMeasureSpec, int heightMeasureSpec,
+                             int parentWidth, int parentHeight, Measurer measurer, PassStats stats) {
+        markDirtyNodes(measurer);
+        cachePartialHits++;
+        if (stats != null) {
+            stats.dirtyCheckNanos = stats.lap();
+            stats.cacheResult = PassStats.CACHE_PARTIAL_HIT;
+        }
+
+        final int[] stableDependentsStart = horizontal ? verticalDependentsStart : horizontalDependentsStart;
+        final int[] stableDependents = horizontal ? verticalDependents : horizontalDependents;
+        // slots of the changed and the stable axis in relativeMargins and frames
+        final int changedStart = horizontal ? LEFT : TOP;
+        final int stableStart = horizontal ? TOP : LEFT;
+        Arrays.fill(stableAxisDirty, false);
+        final int count = nodeCount;
+        for (int i = 0; i < count; i++) {
+            final int index = measureOrder[i];
+            final int offset = index * DIRECTION_COUNT;
+            final boolean resolveStable = dirtyNodes[index] || stableAxisDirty[index];
+            specs[index].writePlan(plans, index * NodeSpec.PLAN_SIZE, parentWidth, parentHeight);
+            specs[index].writePosition(measurePositions, index * NodeSpec.POSITION_SIZE, parentWidth, parentHeight);
+            System.arraycopy(measurePositions, index * NodeSpec.POSITION_SIZE,
+                    layoutPositions, index * NodeSpec.POSITION_SIZE, NodeSpec.POSITION_SIZE);
+            relativeMargins[offset + changedStart] = UNRESOLVED;
+            relativeMargins[offset + changedStart + 2] = UNRESOLVED;
+            if (resolveStable) {
+                relativeMargins[offset + stableStart] = UNRESOLVED;
+                relativeMargins[offset + stableStart + 2] = UNRESOLVED;
+            }
+            if (gone[index]) {
+                // nodes based on a GONE node use its base, see getBaseEdge
+                if (resolveStable)
+                    markStableDependents(index, stableDependentsStart, stableDependents);
+                continue;
+            }
+            if (horizontal || resolveStable)
+                resolveHorizontalMargins(index, parentWidth, parentHeight);
+            if (!horizontal || resolveStable)
+                resolveVerticalMargins(index, parentWidth, parentHeight);
+
+            final int childWidthMeasureSpec = getChildWidthMeasureSpec(index, widthMeasureSpec);
+            final int childHeightMeasureSpec = getChildHeightMeasureSpec(index, heightMeasureSpec);
+            boolean descendantsMoved = false;
+            if (dirtyNodes[index] || childWidthMeasureSpec != childWidthSpecs[index]
+                    || childHeightMeasureSpec != childHeightSpecs[index]) {
+                descendantsMoved = measureChild(index, childWidthMeasureSpec, childHeightMeasureSpec, measurer);
+                if (stats != null)
+                    stats.measureCalls++;
+            }
+            final int stableFrom = frames[offset + stableStart];
+            final int stableTo = frames[offset + stableStart + 2];
+            updateFrame(index);
+            if (resolveStable || descendantsMoved
+                    || frames[offset + stableStart] != stableFrom || frames[offset + stableStart + 2] != stableTo)
+                markStableDependents(index, stableDependentsStart, stableDependents);
+        }
+        if (stats != null)
+            stats.childMeasureNanos = stats.lap();
+
+        for (int i = 0; i < count; i++) {
+            if (!dirtyNodes[i])
+                continue;
+            measuredWidths[i] = measurer.getMeasuredWidth(i);
+            measuredHeights[i] = measurer.getMeasuredHeight(i);
+            updateSnapshot(i);
+        }
+        measuredWidth = parentWidth;
+        measuredHeight = parentHeight;
+        layoutPositionsWidth = parentWidth;
+        layoutPositionsHeight = parentHeight;
+        cachedWidthMeasureSpec = widthMeasureSpec;
+        cachedHeightMeasureSpec = heightMeasureSpec;
+        cachedParentWidth = parentWidth;
+        cachedParentHeight = parentHeight;
+        solutionComplete = true;
+    }
+
+    private void markStableDependents(int index, int[] stableDependentsStart, int[] stableDependents) {
+        for (int e = stableDependentsStart[index]; e < stableDependentsStart[index + 1]; e++) {
+            stableAxisDirty[stableDependents[e]] = true;
+        }
+    }
+
+    /**
+     * Measures the nodes of one phase in measure order. Without all only the dirty nodes are measured,
+     * the others keep the result of the previous pass.
+     */
+    private void measureNodes(boolean deferred, boolean all, int widthMeasureSpec, int heightMeasureSpec,
+                              int parentWidth, int parentHeight, Measurer measurer, PassStats stats) {
+        final int count = nodeCount;
+        for (int i = 0; i < count; i++) {
+            final int index = measureOrder[i];
+            if (deferredNodes[index] != deferred || (!all && !dirtyNodes[index]) || offscreenNodes[index])
+                continue;
+            Arrays.fill(relativeMargins, index * DIRECTION_COUNT, (index + 1) * DIRECTION_COUNT, UNRESOLVED);
+            // the parent size is the same in an incremental pass, so only changed nodes need a new plan
+            specs[index].writePlan(plans, index * NodeSpec.PLAN_SIZE, parentWidth, parentHeight);
+            specs[index].writePosition(measurePositions, index * NodeSpec.POSITION_SIZE, parentWidth, parentHeight);
+            if (!gone[index]) {
+                measureNode(index, widthMeasureSpec, heightMeasureSpec, parentWidth, parentHeight, measurer);
+                if (stats != null)
+                    stats.measureCalls++;
+            }
+        }
+    }
+
+    private int getWrapWidth(int index, Measurer measurer) {
+        return measurer.getMeasuredWidth(index) + getLeftMargin(index) + getRightMargin(index);
+    }
+
+    private int getWrapHeight(int index, Measurer measurer) {
+        return measurer.getMeasuredHeight(index) + getTopMargin(index) + getBottomMargin(index);
+    }
+
+    /**
+     * Returns the node whose edge is used for the base reference of the node at index in the given
+     * direction, skipping GONE nodes like {@link #getBaseEdge}. NO_REF means the edge of the parent.
+     */
+    private int getEffectiveBase(int index, int direction) {
+        int base = baseRefIndex[index * DIRECTION_COUNT + direction];
+        while (base != NO_REF && gone[base]) {
+            base = baseRefIndex[base * DIRECTION_COUNT + direction];
+        }
+        return base;
+    }
+
+    /**
+     * Whether the edge the node at index is based on in the given direction moves with the parent size,
+     * only the right and bottom edge of the parent do.
+     */
+    private boolean isBaseEdgeParentRelative(int index, int direction, boolean[] dependsOnAxis) {
+        if (baseRefIndex[index * DIRECTION_COUNT + direction] == NO_REF)
+            return false;
+        final int base = getEffectiveBase(index, direction);
+        if (base == NO_REF)
+            return direction == RIGHT || direction == BOTTOM;
+        return dependsOnAxis[base];
+    }
+
+    /**
+     * Finds out for every node whether its size or position depends on the width or height of the parent,
+     * either through its own spec or through the nodes it is based on.
+     */
+    private void classifyNodes() {
+        final int count = nodeCount;
+        for (int i = 0; i < count; i++) {
+            final int index = measureOrder[i];
+            if (gone[index]) {
+                dependsOnWidth[index] = false;
+                dependsOnHeight[index] = false;
+                continue;
+            }
+            final NodeSpec spec = specs[index];
+            final int offset = index * DIRECTION_COUNT;
+            final boolean horizontalRefs = baseRefIndex[offset + LEFT] != NO_REF || baseRefIndex[offset + RIGHT] != NO_REF;
+            final boolean verticalRefs = baseRefIndex[offset + TOP] != NO_REF || baseRefIndex[offset + BOTTOM] != NO_REF;
+            dependsOnWidth[index] = spec.isWidthParentRelative(horizontalRefs)
+                    || isBaseEdgeParentRelative(index, LEFT, dependsOnWidth)
+                    || isBaseEdgeParentRelative(index, RIGHT, dependsOnWidth);
+            dependsOnHeight[index] = spec.isHeightParentRelative(verticalRefs)
+                    || isBaseEdgeParentRelative(index, TOP, dependsOnHeight)
+                    || isBaseEdgeParentRelative(index, BOTTOM, dependsOnHeight);
+        }
+    }
+
+    /**
+     * Whether the node at index is based on a deferred node, it has to be measured after it then.
+     * Only valid while deferredNodes is filled in measure order.
+     */
+    private boolean isBasedOnDeferred(int index) {
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            final int base = getEffectiveBase(index, d);
+            if (base != NO_REF && deferredNodes[base])
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Measured width of the parent after the last pass.
+     */
+    public int getMeasuredWidth() {
+        return measuredWidth;
+    }
+
+    /**
+     * Measured height of the parent after the last pass.
+     */
+    public int getMeasuredHeight() {
+        return measuredHeight;
+    }
+
+    private void updateFrame(int index) {
+        final int offset = index * DIRECTION_COUNT;
+        final int left = getChildLeft(index, measuredWidths[index], layoutPositions);
+        final int top = getChildTop(index, measuredHeights[index], layoutPositions);
+        final int right = left + measuredWidths[index];
+        final int bottom = top + measuredHeights[index];
+        if (frames[offset + LEFT] != left || frames[offset + TOP] != top
+                || frames[offset + RIGHT] != right || frames[offset + BOTTOM] != bottom) {
+            frames[offset + LEFT] = left;
+            frames[offset + TOP] = top;
+            frames[offset + RIGHT] = right;
+            frames[offset + BOTTOM] = bottom;
+            frameChanged[index] = true;
+        }
+    }
+
+    /**
+     * Whether {@link #layout} only places the nodes whose frame changed since they were last placed,
+     * or that asked to be measured again in the last measure pass. Off by default.
+     */
+    public void setSkipUnchangedFrames(boolean skipUnchangedFrames) {
+        this.skipUnchangedFrames = skipUnchangedFrames;
+    }
+
+    /**
+     * Places the measured nodes with placer at the frames computed by the last measure pass,
+     * GONE nodes are skipped and keep their previous frame.
+     */
+    public void layout(Placer placer) {
+        final LayoutTracer tracer = this.tracer;
+        if (tracer == null) {
+            layoutAndReport(placer);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            layoutAndReport(placer);
+        } finally {
+            tracer.record(LayoutTracer.LAYOUT_PASS, traceId, maxDependencyDepth, start);
+        }
+    }
+
+    private void layoutAndReport(Placer placer) {
+        final PassListener listener = passListener;
+        if (listener == null) {
+            placeNodes(placer);
+            return;
+        }
+        final PassStats stats = passStats;
+        stats.start(nodeCount);
+        placeNodes(placer);
+        stats.layoutNanos = stats.lap();
+        stats.totalNanos = stats.layoutNanos;
+        stats.maxDependencyDepth = maxDependencyDepth;
+        listener.onLayoutPass(stats);
+    }
+
+    private void placeNodes(Placer placer) {
+        final int[] frames = this.frames;
+        for (int i = 0; i < nodeCount; i++) {
+            // offscreen nodes keep frameChanged, so they are placed once they are in the viewport again
+            if (gone[i] || offscreenNodes[i] || (skipUnchangedFrames && !frameChanged[i] && !layoutRequested[i]))
+                continue;
+            final int offset = i * DIRECTION_COUNT;
+            placer.place(i, frames[offset + LEFT], frames[offset + TOP], frames[offset + RIGHT], frames[offset + BOTTOM]);
+            frameChanged[i] = false;
+        }
+    }
+
+    /**
+     * Frames computed by the last measure pass, four ints per node: left, top, right and bottom. Nodes
+     * outside the viewport keep the frame of the pass they were last measured in.
+     * The array is owned by the solver and reused between passes.
+     */
+    public int[] getFrames() {
+        return frames;
+    }
+}
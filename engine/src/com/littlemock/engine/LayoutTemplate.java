@@ -0,0 +1,36 @@
+package com.littlemock.engine;
+
+/**
+ * Compiled structure of a layout: the dependency graph with its measure order, already checked for
+ * cycles, and the specs of the nodes it was created from, see {@link LayoutSolver#createTemplate}.
+ * A template never changes, so one instance can be shared by every instance of the same layout,
+ * e.g. the rows of a list, while each {@link LayoutSolver} keeps its own measured state.
+ */
+public final class LayoutTemplate {
+    final DependencyGraph graph;
+    private final NodeSpec[] specs;
+
+    LayoutTemplate(DependencyGraph graph, NodeSpec[] specs) {
+        this.graph = graph;
+        this.specs = specs;
+    }
+
+    public int getNodeCount() {
+        return specs.length;
+    }
+
+    /**
+     * Spec of node at the time the template was created. It is shared by every user of the template
+     * and must not be changed.
+     */
+    public NodeSpec getSpec(int node) {
+        return specs[node];
+    }
+
+    /**
+     * Length of the longest chain of base references, 0 when no node is based on another one.
+     */
+    public int getMaxDependencyDepth() {
+        return graph.maxDependencyDepth;
+    }
+}
@@ -0,0 +1,148 @@
+package com.littlemock.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Records where the solvers of a screen spend their time, see {@link LayoutSolver#setTracer}: the
+ * graph build with its cycle check, every measure and layout pass and every node measure. One tracer
+ * can be shared by the solvers of nested layouts, a node measure then contains the passes of the
+ * layout it measures.
+ * <p/>
+ * Events are kept in a ring buffer allocated up front, once it is full the oldest events are
+ * overwritten, so recording never allocates. Each event is recorded when it ends, with its start, so
+ * the buffer never holds half of an event. {@link #writeChromeTrace} writes the events in the Chrome
+ * trace event format, which chrome://tracing and Perfetto open. A tracer is not thread safe.
+ */
+public final class LayoutTracer {
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    // kinds of events
+    public static final int GRAPH_BUILD = 0;
+    public static final int CYCLE_CHECK = 1;
+    public static final int MEASURE_PASS = 2;
+    public static final int NODE_MEASURE = 3;
+    public static final int LAYOUT_PASS = 4;
+
+    private static final String[] NAMES = {"graph build", "cycle check", "measure pass", "measure", "layout pass"};
+
+    private final int[] kinds;
+    private final int[] ids;
+    private final int[] depths;
+    private final long[] starts;
+    private final long[] ends;
+    private int next = 0;
+    private long recorded = 0;
+
+    public LayoutTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of events kept, 33 bytes each
+     */
+    public LayoutTracer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        kinds = new int[capacity];
+        ids = new int[capacity];
+        depths = new int[capacity];
+        starts = new long[capacity];
+        ends = new long[capacity];
+    }
+
+    /**
+     * Records an event that started at start, a {@link System#nanoTime} value, and ends now.
+     *
+     * @param id   view id of the node of a NODE_MEASURE event, otherwise the id the solver was traced with
+     * @param depth dependency depth of the node, or the deepest one of the layout for a pass
+     */
+    void record(int kind, int id, int depth, long start) {
+        final long end = System.nanoTime();
+        final int slot = next;
+        kinds[slot] = kind;
+        ids[slot] = id;
+        depths[slot] = depth;
+        starts[slot] = start;
+        ends[slot] = end;
+        next = slot + 1 == kinds.length ? 0 : slot + 1;
+        recorded++;
+    }
+
+    /**
+     * Number of events kept, at most the capacity.
+     */
+    public int size() {
+        return (int) Math.min(recorded, kinds.length);
+    }
+
+    /**
+     * Number of events that were overwritten because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return recorded - size();
+    }
+
+    public void clear() {
+        next = 0;
+        recorded = 0;
+    }
+
+    /**
+     * Writes the kept events, oldest first, to file in the Chrome trace event format.
+     */
+    public void writeChromeTrace(File file) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writeChromeTrace(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the kept events, oldest first, as a JSON object in the Chrome trace event format. Every
+     * event is a complete event with the id and the dependency depth as arguments, times are in
+     * microseconds since the oldest event.
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        final int size = size();
+        final int first = recorded > kinds.length ? next : 0;
+        long origin = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            origin = Math.min(origin, starts[i]);
+        }
+        writer.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        for (int n = 0; n < size; n++) {
+            final int slot = (first + n) % kinds.length;
+            if (n > 0)
+                writer.write(',');
+            writer.write("\n{\"name\":\"");
+            writer.write(NAMES[kinds[slot]]);
+            writer.write("\",\"cat\":\"layout\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":");
+            writer.write(toMicros(starts[slot] - origin));
+            writer.write(",\"dur\":");
+            writer.write(toMicros(ends[slot] - starts[slot]));
+            writer.write(",\"args\":{\"id\":");
+            writer.write(Integer.toString(ids[slot]));
+            writer.write(",\"depth\":");
+            writer.write(Integer.toString(depths[slot]));
+            writer.write("}}");
+        }
+        writer.write("\n]}\n");
+    }
+
+    private static String toMicros(long nanos) {
+        final StringBuilder micros = new StringBuilder().append(nanos / 1000).append('.');
+        final long fraction = nanos % 1000;
+        if (fraction < 100)
+            micros.append('0');
+        if (fraction < 10)
+            micros.append('0');
+        return micros.append(fraction).toString();
+    }
+}
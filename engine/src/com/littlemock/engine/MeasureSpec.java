@@ -0,0 +1,66 @@
+package com.littlemock.engine;
+
+/**
+ * Same packing as android.view.View.MeasureSpec, so specs can be passed between the engine and the
+ * platform unchanged: the mode lives in the two high bits and the size in the rest.
+ */
+public final class MeasureSpec {
+    private static final int MODE_SHIFT = 30;
+    private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+
+    public static final int UNSPECIFIED = 0;
+    public static final int EXACTLY = 1 << MODE_SHIFT;
+    public static final int AT_MOST = 2 << MODE_SHIFT;
+
+    private MeasureSpec() {
+    }
+
+    public static int makeMeasureSpec(int size, int mode) {
+        return (size & ~MODE_MASK) | (mode & MODE_MASK);
+    }
+
+    public static int getMode(int measureSpec) {
+        return measureSpec & MODE_MASK;
+    }
+
+    public static int getSize(int measureSpec) {
+        return measureSpec & ~MODE_MASK;
+    }
+
+    /**
+     * Same as View.getDefaultSize: the spec size, or size when the spec is UNSPECIFIED.
+     */
+    public static int getDefaultSize(int size, int measureSpec) {
+        return getMode(measureSpec) == UNSPECIFIED ? size : getSize(measureSpec);
+    }
+
+    /**
+     * Same as ViewGroup.getChildMeasureSpec. Before API 23 an UNSPECIFIED parent passed a size of 0
+     * to MATCH_PARENT and WRAP_CONTENT children, later versions pass the available size as a hint.
+     */
+    public static int getChildMeasureSpec(int spec, int padding, int childDimension, boolean unspecifiedSizeHint) {
+        final int specMode = getMode(spec);
+        final int size = Math.max(0, getSize(spec) - padding);
+
+        if (childDimension >= 0)
+            return makeMeasureSpec(childDimension, EXACTLY);
+
+        switch (specMode) {
+            case EXACTLY:
+                if (childDimension == NodeSpec.MATCH_PARENT)
+                    return makeMeasureSpec(size, EXACTLY);
+                if (childDimension == NodeSpec.WRAP_CONTENT)
+                    return makeMeasureSpec(size, AT_MOST);
+                break;
+            case AT_MOST:
+                if (childDimension == NodeSpec.MATCH_PARENT || childDimension == NodeSpec.WRAP_CONTENT)
+                    return makeMeasureSpec(size, AT_MOST);
+                break;
+            case UNSPECIFIED:
+                if (childDimension == NodeSpec.MATCH_PARENT || childDimension == NodeSpec.WRAP_CONTENT)
+                    return makeMeasureSpec(unspecifiedSizeHint ? size : 0, UNSPECIFIED);
+                break;
+        }
+        return makeMeasureSpec(0, UNSPECIFIED);
+    }
+}
@@ -0,0 +1,416 @@
+package com.littlemock.engine;
+
+/**
+ * Layout values of a single node, the platform independent counterpart of
+ * DynamicRelativeLayout.LayoutParams. Dynamic values are fractions of the parent size.
+ */
+public class NodeSpec {
+    public static final int NO_ID = -1;
+    public static final int MATCH_PARENT = -1;
+    public static final int WRAP_CONTENT = -2;
+
+    public int id = NO_ID;
+
+    // same meaning as ViewGroup.MarginLayoutParams
+    public int width = WRAP_CONTENT;
+    public int height = WRAP_CONTENT;
+    public int leftMargin = 0;
+    public int topMargin = 0;
+    public int rightMargin = 0;
+    public int bottomMargin = 0;
+
+    // All margin should be within -1 to 1
+    public float dynamicMarginLeft = 0;
+    public float dynamicMarginTop = 0;
+    public float dynamicMarginRight = 0;
+    public float dynamicMarginBottom = 0;
+    public float dynamicWidth = -1;
+    public float dynamicHeight = -1;
+    public float dynamicWidthMax = -1;
+    public float dynamicWidthMin = -1;
+    public float dynamicHeightMax = -1;
+    public float dynamicHeightMin = -1;
+
+    // ids of the nodes this node is placed next to
+    public int dynamicBaseRefLeft = NO_ID;
+    public int dynamicBaseRefTop = NO_ID;
+    public int dynamicBaseRefRight = NO_ID;
+    public int dynamicBaseRefBottom = NO_ID;
+
+    // shared by several nodes through a NodeSpecInterner, the values never change any more
+    boolean interned = false;
+
+    public NodeSpec() {
+    }
+
+    public NodeSpec(NodeSpec source) {
+        id = source.id;
+        width = source.width;
+        height = source.height;
+        leftMargin = source.leftMargin;
+        topMargin = source.topMargin;
+        rightMargin = source.rightMargin;
+        bottomMargin = source.bottomMargin;
+        dynamicMarginLeft = source.dynamicMarginLeft;
+        dynamicMarginTop = source.dynamicMarginTop;
+        dynamicMarginRight = source.dynamicMarginRight;
+        dynamicMarginBottom = source.dynamicMarginBottom;
+        dynamicWidth = source.dynamicWidth;
+        dynamicHeight = source.dynamicHeight;
+        dynamicWidthMax = source.dynamicWidthMax;
+        dynamicWidthMin = source.dynamicWidthMin;
+        dynamicHeightMax = source.dynamicHeightMax;
+        dynamicHeightMin = source.dynamicHeightMin;
+        dynamicBaseRefLeft = source.dynamicBaseRefLeft;
+        dynamicBaseRefTop = source.dynamicBaseRefTop;
+        dynamicBaseRefRight = source.dynamicBaseRefRight;
+        dynamicBaseRefBottom = source.dynamicBaseRefBottom;
+    }
+
+    /**
+     * Whether other has the same id and values as this spec.
+     */
+    public boolean hasSameValues(NodeSpec other) {
+        return id == other.id && hasSameValuesExceptMargins(other)
+                && leftMargin == other.leftMargin
+                && topMargin == other.topMargin
+                && rightMargin == other.rightMargin
+                && bottomMargin == other.bottomMargin
+                && Float.floatToRawIntBits(dynamicMarginLeft) == Float.floatToRawIntBits(other.dynamicMarginLeft)
+                && Float.floatToRawIntBits(dynamicMarginTop) == Float.floatToRawIntBits(other.dynamicMarginTop)
+                && Float.floatToRawIntBits(dynamicMarginRight) == Float.floatToRawIntBits(other.dynamicMarginRight)
+                && Float.floatToRawIntBits(dynamicMarginBottom) == Float.floatToRawIntBits(other.dynamicMarginBottom);
+    }
+
+    /**
+     * Like {@link #hasSameValues}, but ignores the fixed and dynamic margins. The base references count.
+     */
+    boolean hasSameValuesExceptMargins(NodeSpec other) {
+        return width == other.width
+                && height == other.height
+                && Float.floatToRawIntBits(dynamicWidth) == Float.floatToRawIntBits(other.dynamicWidth)
+                && Float.floatToRawIntBits(dynamicHeight) == Float.floatToRawIntBits(other.dynamicHeight)
+                && Float.floatToRawIntBits(dynamicWidthMax) == Float.floatToRawIntBits(other.dynamicWidthMax)
+                && Float.floatToRawIntBits(dynamicWidthMin) == Float.floatToRawIntBits(other.dynamicWidthMin)
+                && Float.floatToRawIntBits(dynamicHeightMax) == Float.floatToRawIntBits(other.dynamicHeightMax)
+                && Float.floatToRawIntBits(dynamicHeightMin) == Float.floatToRawIntBits(other.dynamicHeightMin)
+                && dynamicBaseRefLeft == other.dynamicBaseRefLeft
+                && dynamicBaseRefTop == other.dynamicBaseRefTop
+                && dynamicBaseRefRight == other.dynamicBaseRefRight
+                && dynamicBaseRefBottom == other.dynamicBaseRefBottom;
+    }
+
+    /**
+     * Hash of the values compared by {@link #hasSameValues}.
+     */
+    int hashValues() {
+        int hash = id;
+        hash = 31 * hash + width;
+        hash = 31 * hash + height;
+        hash = 31 * hash + leftMargin;
+        hash = 31 * hash + topMargin;
+        hash = 31 * hash + rightMargin;
+        hash = 31 * hash + bottomMargin;
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicMarginLeft);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicMarginTop);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicMarginRight);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicMarginBottom);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicWidth);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicHeight);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicWidthMax);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicWidthMin);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicHeightMax);
+        hash = 31 * hash + Float.floatToRawIntBits(dynamicHeightMin);
+        hash = 31 * hash + dynamicBaseRefLeft;
+        hash = 31 * hash + dynamicBaseRefTop;
+        hash = 31 * hash + dynamicBaseRefRight;
+        hash = 31 * hash + dynamicBaseRefBottom;
+        return hash;
+    }
+
+    /**
+     * Whether this spec was interned by a {@link NodeSpecInterner} and must not be modified.
+     */
+    public boolean isInterned() {
+        return interned;
+    }
+
+    public int getBaseRef(int direction) {
+        switch (direction) {
+            case LayoutSolver.LEFT:
+                return dynamicBaseRefLeft;
+            case LayoutSolver.TOP:
+                return dynamicBaseRefTop;
+            case LayoutSolver.RIGHT:
+                return dynamicBaseRefRight;
+            default:
+                return dynamicBaseRefBottom;
+        }
+    }
+
+    public void setBaseRef(int direction, int id) {
+        switch (direction) {
+            case LayoutSolver.LEFT:
+                dynamicBaseRefLeft = id;
+                break;
+            case LayoutSolver.TOP:
+                dynamicBaseRefTop = id;
+                break;
+            case LayoutSolver.RIGHT:
+                dynamicBaseRefRight = id;
+                break;
+            default:
+                dynamicBaseRefBottom = id;
+                break;
+        }
+    }
+
+    public int checkHeightMinMax(int height, int parentHeight) {
+        if (dynamicHeightMin > 0 && height < Math.round(dynamicHeightMin * parentHeight)) {
+            return Math.round(dynamicHeightMin * parentHeight);
+        } else if (dynamicHeightMax > 0 && height > Math.round(dynamicHeightMax * parentHeight)) {
+            return Math.round(dynamicHeightMax * parentHeight);
+        }
+
+        return height;
+    }
+
+    public int checkWidthMinMax(int width, int parentWidth) {
+        if (dynamicWidthMin > 0 && width < Math.round(dynamicWidthMin * parentWidth)) {
+            return Math.round(dynamicWidthMin * parentWidth);
+        } else if (dynamicWidthMax > 0 && width > Math.round(dynamicWidthMax * parentWidth)) {
+            return Math.round(dynamicWidthMax * parentWidth);
+        }
+        return width;
+    }
+
+    private static boolean isValidPercentRange(float percentage) {
+        return (percentage >= 0 && percentage <= 1);
+    }
+
+    /**
+     * Whether the measured width or the horizontal position of the node depends on the parent width.
+     * Nodes with a horizontal base reference are placed by it instead of their margins.
+     */
+    boolean isWidthParentRelative(boolean hasHorizontalBaseRef) {
+        if (width == MATCH_PARENT || dynamicMarginLeft != 0 || dynamicMarginRight != 0)
+            return true;
+        if (width > 0 ? dynamicWidthMin > 0 || dynamicWidthMax > 0 : isValidPercentRange(dynamicWidth))
+            return true;
+        // placed from the right edge, see getChildMarginLeft
+        return !hasHorizontalBaseRef && leftMargin == 0 && rightMargin != 0;
+    }
+
+    /**
+     * Whether the measured height or the vertical position of the node depends on the parent height.
+     */
+    boolean isHeightParentRelative(boolean hasVerticalBaseRef) {
+        if (height == MATCH_PARENT || dynamicMarginTop != 0 || dynamicMarginBottom != 0)
+            return true;
+        if (height > 0 ? dynamicHeightMin > 0 || dynamicHeightMax > 0 : isValidPercentRange(dynamicHeight))
+            return true;
+        return !hasVerticalBaseRef && topMargin == 0 && bottomMargin != 0;
+    }
+
+    public int getDynamicWidth(int parentWidth) {
+        if (width > 0)
+            return checkWidthMinMax(width, parentWidth);
+        else if (isValidPercentRange(dynamicWidth))
+            return checkWidthMinMax(Math.round(parentWidth * dynamicWidth), parentWidth);
+        else
+            return width;
+    }
+
+    public int getDynamicHeight(int parentHeight) {
+        if (height > 0)
+            return checkHeightMinMax(height, parentHeight);
+        else if (isValidPercentRange(dynamicHeight))
+            return checkHeightMinMax(Math.round(parentHeight * dynamicHeight), parentHeight);
+        else
+            return height;
+    }
+
+    /**
+     * Left position of the node when it is not placed relative to another node.
+     */
+    public int getChildMarginLeft(int childWidth, int parentWidth) {
+        if (dynamicMarginLeft != 0) {
+            return Math.round(parentWidth * dynamicMarginLeft);
+        }
+
+        if (dynamicMarginRight != 0) {
+            return parentWidth - childWidth - Math.round(parentWidth * dynamicMarginRight);
+        }
+
+        if (leftMargin != 0)
+            return leftMargin;
+
+        if (rightMargin != 0)
+            return parentWidth - childWidth - rightMargin;
+
+        return 0;
+    }
+
+    /**
+     * Top position of the node when it is not placed relative to another node.
+     */
+    public int getChildMarginTop(int childHeight, int parentHeight) {
+        if (dynamicMarginTop != 0) {
+            return Math.round(parentHeight * dynamicMarginTop);
+        }
+
+        if (dynamicMarginBottom != 0) {
+            return parentHeight - childHeight - Math.round(parentHeight * dynamicMarginBottom);
+        }
+        if (topMargin != 0)
+            return topMargin;
+
+        if (bottomMargin != 0)
+            return parentHeight - childHeight - bottomMargin;
+        return 0;
+    }
+
+    public int getLeftMargin(int parentWidth) {
+        if (dynamicMarginLeft != 0)
+            return Math.round(parentWidth * dynamicMarginLeft);
+        return leftMargin;
+    }
+
+    public int getTopMargin(int parentHeight) {
+        if (dynamicMarginTop != 0)
+            return Math.round(parentHeight * dynamicMarginTop);
+        return topMargin;
+    }
+
+    public int getRightMargin(int parentWidth) {
+        if (dynamicMarginRight != 0)
+            return Math.round(parentWidth * dynamicMarginRight);
+        return rightMargin;
+    }
+
+    public int getBottomMargin(int parentHeight) {
+        if (dynamicMarginBottom != 0)
+            return Math.round(parentHeight * dynamicMarginBottom);
+        return bottomMargin;
+    }
+
+    // number of ints written by writePlan: the four margins in direction order, then width and height
+    static final int PLAN_SIZE = 6;
+    static final int PLAN_WIDTH = 4;
+    static final int PLAN_HEIGHT = 5;
+
+    /**
+     * Resolves the margins and size of the node for the given parent size into out, so a pass reads
+     * plain ints instead of redoing the float math for every use.
+     */
+    void writePlan(int[] out, int offset, int parentWidth, int parentHeight) {
+        out[offset + LayoutSolver.LEFT] = getLeftMargin(parentWidth);
+        out[offset + LayoutSolver.TOP] = getTopMargin(parentHeight);
+        out[offset + LayoutSolver.RIGHT] = getRightMargin(parentWidth);
+        out[offset + LayoutSolver.BOTTOM] = getBottomMargin(parentHeight);
+        out[offset + PLAN_WIDTH] = getDynamicWidth(parentWidth);
+        out[offset + PLAN_HEIGHT] = getDynamicHeight(parentHeight);
+    }
+
+    // number of ints written by writePosition
+    static final int POSITION_SIZE = 4;
+
+    /**
+     * Resolves {@link #getChildMarginLeft} and {@link #getChildMarginTop} for the given parent size into
+     * out. Both are an offset minus the size of the node when it is placed from the right or bottom edge,
+     * so left is out[offset] - out[offset + 1] * childWidth and top is out[offset + 2] - out[offset + 3] * childHeight.
+     */
+    void writePosition(int[] out, int offset, int parentWidth, int parentHeight) {
+        if (dynamicMarginLeft != 0) {
+            out[offset] = Math.round(parentWidth * dynamicMarginLeft);
+            out[offset + 1] = 0;
+        } else if (dynamicMarginRight != 0) {
+            out[offset] = parentWidth - Math.round(parentWidth * dynamicMarginRight);
+            out[offset + 1] = 1;
+        } else if (leftMargin != 0) {
+            out[offset] = leftMargin;
+            out[offset + 1] = 0;
+        } else if (rightMargin != 0) {
+            out[offset] = parentWidth - rightMargin;
+            out[offset + 1] = 1;
+        } else {
+            out[offset] = 0;
+            out[offset + 1] = 0;
+        }
+
+        if (dynamicMarginTop != 0) {
+            out[offset + 2] = Math.round(parentHeight * dynamicMarginTop);
+            out[offset + 3] = 0;
+        } else if (dynamicMarginBottom != 0) {
+            out[offset + 2] = parentHeight - Math.round(parentHeight * dynamicMarginBottom);
+            out[offset + 3] = 1;
+        } else if (topMargin != 0) {
+            out[offset + 2] = topMargin;
+            out[offset + 3] = 0;
+        } else if (bottomMargin != 0) {
+            out[offset + 2] = parentHeight - bottomMargin;
+            out[offset + 3] = 1;
+        } else {
+            out[offset + 2] = 0;
+            out[offset + 3] = 0;
+        }
+    }
+
+    // number of ints written by writeSnapshot
+    static final int SNAPSHOT_SIZE = 16;
+
+    /**
+     * Copies every value that affects measurement into out, so a later pass can tell if it changed.
+     */
+    void writeSnapshot(int[] out, int offset) {
+        out[offset] = width;
+        out[offset + 1] = height;
+        out[offset + 2] = leftMargin;
+        out[offset + 3] = topMargin;
+        out[offset + 4] = rightMargin;
+        out[offset + 5] = bottomMargin;
+        out[offset + 6] = Float.floatToRawIntBits(dynamicMarginLeft);
+        out[offset + 7] = Float.floatToRawIntBits(dynamicMarginTop);
+        out[offset + 8] = Float.floatToRawIntBits(dynamicMarginRight);
+        out[offset + 9] = Float.floatToRawIntBits(dynamicMarginBottom);
+        out[offset + 10] = Float.floatToRawIntBits(dynamicWidth);
+        out[offset + 11] = Float.floatToRawIntBits(dynamicHeight);
+        out[offset + 12] = Float.floatToRawIntBits(dynamicWidthMax);
+        out[offset + 13] = Float.floatToRawIntBits(dynamicWidthMin);
+        out[offset + 14] = Float.floatToRawIntBits(dynamicHeightMax);
+        out[offset + 15] = Float.floatToRawIntBits(dynamicHeightMin);
+    }
+
+    /**
+     * Like {@link #matchesSnapshot}, but ignores the fixed and dynamic margins.
+     */
+    boolean matchesSnapshotExceptMargins(int[] snapshot, int offset) {
+        return snapshot[offset] == width
+                && snapshot[offset + 1] == height
+                && snapshot[offset + 10] == Float.floatToRawIntBits(dynamicWidth)
+                && snapshot[offset + 11] == Float.floatToRawIntBits(dynamicHeight)
+                && snapshot[offset + 12] == Float.floatToRawIntBits(dynamicWidthMax)
+                && snapshot[offset + 13] == Float.floatToRawIntBits(dynamicWidthMin)
+                && snapshot[offset + 14] == Float.floatToRawIntBits(dynamicHeightMax)
+                && snapshot[offset + 15] == Float.floatToRawIntBits(dynamicHeightMin);
+    }
+
+    boolean matchesSnapshot(int[] snapshot, int offset) {
+        return snapshot[offset] == width
+                && snapshot[offset + 1] == height
+                && snapshot[offset + 2] == leftMargin
+                && snapshot[offset + 3] == topMargin
+                && snapshot[offset + 4] == rightMargin
+                && snapshot[offset + 5] == bottomMargin
+                && snapshot[offset + 6] == Float.floatToRawIntBits(dynamicMarginLeft)
+                && snapshot[offset + 7] == Float.floatToRawIntBits(dynamicMarginTop)
+                && snapshot[offset + 8] == Float.floatToRawIntBits(dynamicMarginRight)
+                && snapshot[offset + 9] == Float.floatToRawIntBits(dynamicMarginBottom)
+                && snapshot[offset + 10] == Float.floatToRawIntBits(dynamicWidth)
+                && snapshot[offset + 11] == Float.floatToRawIntBits(dynamicHeight)
+                && snapshot[offset + 12] == Float.floatToRawIntBits(dynamicWidthMax)
+                && snapshot[offset + 13] == Float.floatToRawIntBits(dynamicWidthMin)
+                && snapshot[offset + 14] == Float.floatToRawIntBits(dynamicHeightMax)
+                && snapshot[offset + 15] == Float.floatToRawIntBits(dynamicHeightMin);
+    }
+}
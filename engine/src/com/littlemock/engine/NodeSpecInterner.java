@@ -0,0 +1,100 @@
+package com.littlemock.engine;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Shares one {@link NodeSpec} between all nodes with the same values, e.g. the children of the rows
+ * of a list, which all have the same layout params. A solver compares an interned spec by reference
+ * and does not need to keep a copy of its values between passes.
+ * <p/>
+ * Interned specs are held weakly and must not be modified. An interner is not thread safe.
+ */
+public final class NodeSpecInterner {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final class Entry extends WeakReference<NodeSpec> {
+        final int hash;
+        Entry next;
+
+        Entry(NodeSpec spec, int hash, Entry next, ReferenceQueue<NodeSpec> queue) {
+            super(spec, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private final ReferenceQueue<NodeSpec> queue = new ReferenceQueue<NodeSpec>();
+    private Entry[] table = new Entry[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Returns the interned spec with the values of spec. spec itself is not interned, the first spec
+     * with its values is interned as a copy, so the caller can reuse spec for the next node.
+     */
+    public NodeSpec intern(NodeSpec spec) {
+        if (spec.interned)
+            return spec;
+        purge();
+        final int hash = spec.hashValues();
+        final int bucket = hash & (table.length - 1);
+        for (Entry entry = table[bucket]; entry != null; entry = entry.next) {
+            final NodeSpec interned = entry.get();
+            if (entry.hash == hash && interned != null && interned.hasSameValues(spec))
+                return interned;
+        }
+
+        final NodeSpec interned = new NodeSpec(spec);
+        interned.interned = true;
+        table[bucket] = new Entry(interned, hash, table[bucket], queue);
+        if (++size > table.length * 3 / 4) {
+            resize();
+        }
+        return interned;
+    }
+
+    /**
+     * Number of interned specs, including ones that are no longer used but not collected yet.
+     */
+    public int size() {
+        purge();
+        return size;
+    }
+
+    /**
+     * Removes the entries of collected specs.
+     */
+    private void purge() {
+        Entry collected;
+        while ((collected = (Entry) queue.poll()) != null) {
+            final int bucket = collected.hash & (table.length - 1);
+            Entry previous = null;
+            for (Entry entry = table[bucket]; entry != null; previous = entry, entry = entry.next) {
+                if (entry == collected) {
+                    if (previous == null) {
+                        table[bucket] = entry.next;
+                    } else {
+                        previous.next = entry.next;
+                    }
+                    size--;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void resize() {
+        final Entry[] newTable = new Entry[table.length * 2];
+        for (Entry head : table) {
+            Entry entry = head;
+            while (entry != null) {
+                final Entry next = entry.next;
+                final int bucket = entry.hash & (newTable.length - 1);
+                entry.next = newTable[bucket];
+                newTable[bucket] = entry;
+                entry = next;
+            }
+        }
+        table = newTable;
+    }
+}
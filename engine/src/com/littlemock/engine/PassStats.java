@@ -0,0 +1,125 @@
+package com.littlemock.engine;
+
+/**
+ * Timings and counters of a single measure or layout pass, handed to a {@link LayoutSolver.PassListener}.
+ * The instance is owned by the solver and reused for every pass, so it is only valid during the callback.
+ */
+public class PassStats {
+    // how a measure pass used the result of the previous pass
+    public static final int CACHE_MISS = 0;
+    public static final int CACHE_PARTIAL_HIT = 1;
+    public static final int CACHE_HIT = 2;
+    // the solution of an earlier parent size was restored, see LayoutSolver.setSolutionCacheSize
+    public static final int CACHE_RESTORED = 3;
+
+    int nodeCount;
+    int maxDependencyDepth;
+    boolean graphRebuilt;
+    int cacheResult;
+    int measureCalls;
+    int offscreenNodes;
+    long graphBuildNanos;
+    long dirtyCheckNanos;
+    long childMeasureNanos;
+    long wrapContentNanos;
+    long layoutNanos;
+    long totalNanos;
+    private long lapStart;
+
+    void start(int nodeCount) {
+        this.nodeCount = nodeCount;
+        maxDependencyDepth = 0;
+        graphRebuilt = false;
+        cacheResult = CACHE_MISS;
+        measureCalls = 0;
+        offscreenNodes = 0;
+        graphBuildNanos = 0;
+        dirtyCheckNanos = 0;
+        childMeasureNanos = 0;
+        wrapContentNanos = 0;
+        layoutNanos = 0;
+        totalNanos = 0;
+        lapStart = System.nanoTime();
+    }
+
+    /**
+     * Returns the time since the last lap, or since the start of the pass.
+     */
+    long lap() {
+        final long now = System.nanoTime();
+        final long elapsed = now - lapStart;
+        lapStart = now;
+        return elapsed;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Length of the longest chain of base references, 0 when no node is based on another one.
+     */
+    public int getMaxDependencyDepth() {
+        return maxDependencyDepth;
+    }
+
+    /**
+     * Whether the dependency graph was rebuilt, and checked for cycles, in this measure pass.
+     */
+    public boolean isGraphRebuilt() {
+        return graphRebuilt;
+    }
+
+    /**
+     * One of {@link #CACHE_MISS}, {@link #CACHE_PARTIAL_HIT}, {@link #CACHE_HIT} or {@link #CACHE_RESTORED}
+     * for a measure pass.
+     */
+    public int getCacheResult() {
+        return cacheResult;
+    }
+
+    /**
+     * Number of nodes measured through the {@link LayoutSolver.Measurer} in this measure pass.
+     */
+    public int getMeasureCalls() {
+        return measureCalls;
+    }
+
+    /**
+     * Number of nodes skipped by this measure pass because they are outside the viewport, see
+     * {@link LayoutSolver#setViewport}.
+     */
+    public int getOffscreenNodes() {
+        return offscreenNodes;
+    }
+
+    public long getGraphBuildNanos() {
+        return graphBuildNanos;
+    }
+
+    /**
+     * Time spent finding the nodes that changed since the previous pass.
+     */
+    public long getDirtyCheckNanos() {
+        return dirtyCheckNanos;
+    }
+
+    public long getChildMeasureNanos() {
+        return childMeasureNanos;
+    }
+
+    /**
+     * Time spent computing the size of a wrap_content parent from its measured nodes.
+     */
+    public long getWrapContentNanos() {
+        return wrapContentNanos;
+    }
+
+    public long getLayoutNanos() {
+        return layoutNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+}
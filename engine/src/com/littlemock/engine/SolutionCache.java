@@ -0,0 +1,126 @@
+package com.littlemock.engine;
+
+/**
+ * Least recently used solutions of a {@link LayoutSolver} for a few parent sizes, see
+ * {@link LayoutSolver#setSolutionCacheSize}. A solution is only valid for the content version of the
+ * solver it was saved with. Evicted solutions keep their arrays for the next one that is saved.
+ */
+final class SolutionCache {
+    // order in which solutions are replaced
+    private static final int RANK_UNUSED = 0;
+    private static final int RANK_OUTDATED = 1;
+    private static final int RANK_CURRENT = 2;
+
+    static final class Solution {
+        int widthMeasureSpec;
+        int heightMeasureSpec;
+        int parentWidth;
+        int parentHeight;
+        long contentVersion;
+        long lastUsed;
+        boolean used;
+
+        int[] plans = new int[0];
+        int[] measurePositions = new int[0];
+        int[] relativeMargins = new int[0];
+        int[] measuredWidths = new int[0];
+        int[] measuredHeights = new int[0];
+        int[] childWidthSpecs = new int[0];
+        int[] childHeightSpecs = new int[0];
+        int[] frames = new int[0];
+
+        boolean matches(int widthMeasureSpec, int heightMeasureSpec, int parentWidth, int parentHeight,
+                        long contentVersion) {
+            return used && this.widthMeasureSpec == widthMeasureSpec && this.heightMeasureSpec == heightMeasureSpec
+                    && this.parentWidth == parentWidth && this.parentHeight == parentHeight
+                    && this.contentVersion == contentVersion;
+        }
+
+        /**
+         * Makes sure the arrays hold count nodes.
+         */
+        void resize(int count) {
+            if (measuredWidths.length == count)
+                return;
+            plans = new int[count * NodeSpec.PLAN_SIZE];
+            measurePositions = new int[count * NodeSpec.POSITION_SIZE];
+            relativeMargins = new int[count * LayoutSolver.DIRECTION_COUNT];
+            measuredWidths = new int[count];
+            measuredHeights = new int[count];
+            childWidthSpecs = new int[count];
+            childHeightSpecs = new int[count];
+            frames = new int[count * LayoutSolver.DIRECTION_COUNT];
+        }
+    }
+
+    private final Solution[] solutions;
+    private long clock = 0;
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+
+    SolutionCache(int size) {
+        solutions = new Solution[size];
+        for (int i = 0; i < size; i++) {
+            solutions[i] = new Solution();
+        }
+    }
+
+    int getSize() {
+        return solutions.length;
+    }
+
+    /**
+     * Returns the solution for the given parent specs and content version and marks it as used, null
+     * when there is none.
+     */
+    Solution find(int widthMeasureSpec, int heightMeasureSpec, int parentWidth, int parentHeight,
+                  long contentVersion) {
+        for (Solution solution : solutions) {
+            if (solution.matches(widthMeasureSpec, heightMeasureSpec, parentWidth, parentHeight, contentVersion)) {
+                solution.lastUsed = ++clock;
+                return solution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the solution to save the given parent specs in, the one saved for them before, an
+     * unused one or the least recently used one, which is evicted. Solutions of an older content
+     * version are never found again, so they are replaced before any current one is evicted.
+     */
+    Solution obtain(int widthMeasureSpec, int heightMeasureSpec, int parentWidth, int parentHeight,
+                    long contentVersion) {
+        Solution victim = find(widthMeasureSpec, heightMeasureSpec, parentWidth, parentHeight, contentVersion);
+        if (victim == null) {
+            for (Solution solution : solutions) {
+                if (victim == null || getRank(solution, contentVersion) < getRank(victim, contentVersion)
+                        || (getRank(solution, contentVersion) == getRank(victim, contentVersion)
+                        && solution.lastUsed < victim.lastUsed)) {
+                    victim = solution;
+                }
+            }
+            if (getRank(victim, contentVersion) == RANK_CURRENT)
+                evictions++;
+        }
+        victim.used = true;
+        victim.widthMeasureSpec = widthMeasureSpec;
+        victim.heightMeasureSpec = heightMeasureSpec;
+        victim.parentWidth = parentWidth;
+        victim.parentHeight = parentHeight;
+        victim.contentVersion = contentVersion;
+        victim.lastUsed = ++clock;
+        return victim;
+    }
+
+    private static int getRank(Solution solution, long contentVersion) {
+        if (!solution.used)
+            return RANK_UNUSED;
+        return solution.contentVersion == contentVersion ? RANK_CURRENT : RANK_OUTDATED;
+    }
+
+    void remove(Solution solution) {
+        solution.used = false;
+    }
+}
@@ -0,0 +1,252 @@
+package com.littlemock.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Passes of a solver whose nodes did not change structure must not allocate, so layouts can be measured
+ * every frame without garbage. Allocations are counted per thread, any allocation costs at least 16
+ * bytes, so less than a byte per pass means none of the passes allocated.
+ */
+public class AllocationTest {
+    private static final int NODE_COUNT = 60;
+    private static final int WARMUP_PASSES = 50;
+    private static final int PASSES = 2000;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private final int[] measuredWidths = new int[NODE_COUNT];
+    private final int[] measuredHeights = new int[NODE_COUNT];
+    private final LayoutSolver.Measurer measurer = new LayoutSolver.Measurer() {
+        @Override
+        public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+            measuredWidths[node] = resolve(40 + node % 7 * 10, widthMeasureSpec);
+            measuredHeights[node] = resolve(20 + node % 5 * 10, heightMeasureSpec);
+        }
+
+        @Override
+        public int getMeasuredWidth(int node) {
+            return measuredWidths[node];
+        }
+
+        @Override
+        public int getMeasuredHeight(int node) {
+            return measuredHeights[node];
+        }
+    };
+    private final LayoutSolver.Placer placer = new LayoutSolver.Placer() {
+        @Override
+        public void place(int node, int left, int top, int right, int bottom) {
+        }
+    };
+
+    private com.sun.management.ThreadMXBean threads;
+    private LayoutSolver solver;
+    private NodeSpec[] specs;
+
+    private static int resolve(int size, int measureSpec) {
+        switch (MeasureSpec.getMode(measureSpec)) {
+            case MeasureSpec.EXACTLY:
+                return MeasureSpec.getSize(measureSpec);
+            case MeasureSpec.AT_MOST:
+                return Math.min(size, MeasureSpec.getSize(measureSpec));
+            default:
+                return size;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        // rows of children placed below each other, each row right of its first child, with percent
+        // margins and sizes, match_parent, clamps and a GONE child in every row
+        specs = new NodeSpec[NODE_COUNT];
+        for (int i = 0; i < NODE_COUNT; i++) {
+            final NodeSpec spec = new NodeSpec();
+            spec.id = 100 + i;
+            if (i % 6 == 0) {
+                spec.width = NodeSpec.MATCH_PARENT;
+                spec.dynamicMarginTop = 0.01f;
+                if (i > 0)
+                    spec.dynamicBaseRefTop = 100 + i - 6;
+            } else {
+                spec.dynamicBaseRefLeft = 100 + i - 1;
+                spec.dynamicBaseRefTop = 100 + i - i % 6 - 6;
+                spec.dynamicMarginLeft = 0.02f;
+                spec.dynamicWidth = i % 3 == 0 ? 0.1f : -1;
+                spec.dynamicWidthMax = 0.2f;
+                spec.dynamicHeightMin = 0.01f;
+            }
+            if (i == NODE_COUNT - 1) {
+                // nothing is based on the last child, with a fixed size it can be moved without a pass
+                spec.width = 50;
+                spec.height = 30;
+            }
+            specs[i] = spec;
+        }
+        solver = new LayoutSolver();
+        solver.setNodeCount(NODE_COUNT);
+        setNodes(false);
+    }
+
+    private void setNodes(boolean changed) {
+        for (int i = 0; i < NODE_COUNT; i++) {
+            solver.setNode(i, specs[i], i % 6 == 4, changed && i == 7);
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int exactly(int size) {
+        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+    }
+
+    private static int atMost(int size) {
+        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.AT_MOST);
+    }
+
+    /**
+     * Runs pass WARMUP_PASSES times, so every lazily allocated buffer exists, then returns the bytes
+     * allocated by PASSES more passes.
+     */
+    private long measureAllocation(Runnable pass) {
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            pass.run();
+        }
+        final long overhead = allocatedBytes();
+        final long start = allocatedBytes();
+        for (int i = 0; i < PASSES; i++) {
+            pass.run();
+        }
+        final long end = allocatedBytes();
+        return end - start - (start - overhead);
+    }
+
+    private void assertNoAllocation(String name, Runnable pass) {
+        final long bytes = measureAllocation(pass);
+        assertTrue(name + " allocated " + bytes + " bytes in " + PASSES + " passes", bytes < PASSES);
+    }
+
+    @Test
+    public void fullPass() {
+        assertNoAllocation("full pass", new Runnable() {
+            @Override
+            public void run() {
+                setNodes(false);
+                solver.invalidate();
+                solver.measure(exactly(WIDTH), exactly(HEIGHT), 0, 0, measurer);
+                solver.layout(placer);
+            }
+        });
+    }
+
+    @Test
+    public void cachedPass() {
+        assertNoAllocation("cached pass", new Runnable() {
+            @Override
+            public void run() {
+                setNodes(false);
+                solver.measure(exactly(WIDTH), exactly(HEIGHT), 0, 0, measurer);
+                solver.layout(placer);
+            }
+        });
+    }
+
+    @Test
+    public void incrementalPass() {
+        assertNoAllocation("incremental pass", new Runnable() {
+            @Override
+            public void run() {
+                setNodes(true);
+                solver.measure(exactly(WIDTH), exactly(HEIGHT), 0, 0, measurer);
+                solver.layout(placer);
+            }
+        });
+    }
+
+    @Test
+    public void wrapContentPass() {
+        assertNoAllocation("wrap_content pass", new Runnable() {
+            @Override
+            public void run() {
+                setNodes(false);
+                solver.invalidate();
+                solver.measure(atMost(WIDTH), atMost(HEIGHT), 0, 0, measurer);
+                solver.layout(placer);
+            }
+        });
+    }
+
+    @Test
+    public void resizePass() {
+        final boolean[] narrow = new boolean[1];
+        assertNoAllocation("resize pass", new Runnable() {
+            @Override
+            public void run() {
+                narrow[0] = !narrow[0];
+                setNodes(false);
+                solver.measure(exactly(narrow[0] ? WIDTH / 2 : WIDTH), exactly(HEIGHT), 0, 0, measurer);
+                solver.layout(placer);
+            }
+        });
+    }
+
+    @Test
+    public void moveNode() {
+        solver.measure(exactly(WIDTH), exactly(HEIGHT), 0, 0, measurer);
+        final NodeSpec moved = specs[NODE_COUNT - 1];
+        assertTrue(solver.moveNode(NODE_COUNT - 1, moved, placer));
+        final int[] frame = new int[1];
+        assertNoAllocation("moveNode", new Runnable() {
+            @Override
+            public void run() {
+                moved.dynamicMarginLeft = (frame[0]++ % 100) / 1000f;
+                if (!solver.moveNode(NODE_COUNT - 1, moved, placer))
+                    throw new AssertionError("moveNode fell back to a measure pass");
+            }
+        });
+    }
+
+    @Test
+    public void tracedPass() {
+        solver.setTracer(new LayoutTracer(256), 1);
+        solver.setPassListener(new LayoutSolver.PassListener() {
+            @Override
+            public void onMeasurePass(PassStats stats) {
+            }
+
+            @Override
+            public void onLayoutPass(PassStats stats) {
+            }
+        });
+        fullPass();
+    }
+
+    @Test
+    public void graphRebuildAllocates() {
+        // the check itself has to see allocations: a rebuilt graph allocates its arrays
+        final long bytes = measureAllocation(new Runnable() {
+            @Override
+            public void run() {
+                solver.invalidateGraph();
+                solver.measure(exactly(WIDTH), exactly(HEIGHT), 0, 0, measurer);
+            }
+        });
+        assertTrue(bytes >= PASSES);
+        assertEquals(NODE_COUNT, solver.getNodeCount());
+    }
+}
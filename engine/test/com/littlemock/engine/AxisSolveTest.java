@@ -0,0 +1,122 @@
+package com.littlemock.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A parent that only changed its size along one axis is solved again along that axis. The frames must
+ * be those of a new solver, and nodes whose child measure specs did not change are not measured.
+ */
+public class AxisSolveTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private final TestNodes nodes = new TestNodes();
+    private final TestNodes.ContentMeasurer measurer = nodes.new ContentMeasurer();
+    private final LayoutSolver solver = new LayoutSolver();
+    private int cacheResult = -1;
+    private int measureCalls = -1;
+
+    @Before
+    public void setUp() {
+        solver.setPassListener(new LayoutSolver.PassListener() {
+            @Override
+            public void onMeasurePass(PassStats stats) {
+                cacheResult = stats.getCacheResult();
+                measureCalls = stats.getMeasureCalls();
+            }
+
+            @Override
+            public void onLayoutPass(PassStats stats) {
+            }
+        });
+        solve(WIDTH, HEIGHT);
+        solver.resetCacheStats();
+    }
+
+    private void solve(int width, int height) {
+        nodes.solve(solver, TestNodes.exactly(width), TestNodes.exactly(height), measurer);
+    }
+
+    private void assertSameFrames(int width, int height) {
+        assertEquals(Arrays.toString(nodes.solveFresh(TestNodes.exactly(width), TestNodes.exactly(height))),
+                Arrays.toString(nodes.framesOf(solver)));
+    }
+
+    @Test
+    public void widthChangeKeepsNodesOfFixedWidth() {
+        final int[] before = measurer.measureCounts.clone();
+        solve(720, HEIGHT);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertEquals(1, solver.getCachePartialHits());
+        assertEquals(0, solver.getCacheMisses());
+        assertSameFrames(720, HEIGHT);
+
+        // fixed widths get the same child specs at any parent width, the header matches the parent
+        assertEquals(before[TestNodes.AVATAR], measurer.measureCounts[TestNodes.AVATAR]);
+        assertEquals(before[TestNodes.BADGE], measurer.measureCounts[TestNodes.BADGE]);
+        assertEquals(before[TestNodes.SIDE], measurer.measureCounts[TestNodes.SIDE]);
+        assertEquals(before[TestNodes.HEADER] + 1, measurer.measureCounts[TestNodes.HEADER]);
+        assertTrue(measureCalls < TestNodes.COUNT);
+    }
+
+    @Test
+    public void heightChangeKeepsNodesOfFixedHeight() {
+        final int[] before = measurer.measureCounts.clone();
+        solve(WIDTH, 1600);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertSameFrames(WIDTH, 1600);
+
+        // wrap_content nodes get another AT_MOST spec, the node with a height in percent of the parent
+        // another EXACTLY one
+        assertEquals(before[TestNodes.AVATAR], measurer.measureCounts[TestNodes.AVATAR]);
+        assertEquals(before[TestNodes.BADGE], measurer.measureCounts[TestNodes.BADGE]);
+        assertEquals(before[TestNodes.SIDE] + 1, measurer.measureCounts[TestNodes.SIDE]);
+        assertEquals(TestNodes.COUNT - 2, measureCalls);
+    }
+
+    @Test
+    public void stableAxisFollowsWrappedText() {
+        // the title gets more lines at the narrower width, the subtitle below it moves down
+        solve(400, HEIGHT);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertSameFrames(400, HEIGHT);
+        final int[] frames = nodes.framesOf(solver);
+        assertEquals(frames[TestNodes.TITLE * 4 + LayoutSolver.BOTTOM], frames[TestNodes.SUBTITLE * 4 + LayoutSolver.TOP]);
+    }
+
+    @Test
+    public void resizeSequenceMatchesNewSolvers() {
+        final int[][] sizes = {{720, HEIGHT}, {720, 1280}, {1080, 1280}, {1080, HEIGHT}, {360, HEIGHT},
+                {360, 640}, {2000, 640}, {2000, 2000}, {WIDTH, 2000}};
+        for (int[] size : sizes) {
+            solve(size[0], size[1]);
+            assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+            assertSameFrames(size[0], size[1]);
+        }
+        assertEquals(sizes.length, solver.getCachePartialHits());
+    }
+
+    @Test
+    public void changedNodeIsMeasuredInAnAxisPass() {
+        nodes.contentWidths[TestNodes.STATUS] = 400;
+        nodes.changed[TestNodes.STATUS] = true;
+        nodes.specs[TestNodes.BADGE].topMargin = 20;
+        solve(720, HEIGHT);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertSameFrames(720, HEIGHT);
+    }
+
+    @Test
+    public void changeOfBothAxesIsSolvedFully() {
+        solve(HEIGHT, WIDTH);
+        assertEquals(1, solver.getCacheMisses());
+        assertEquals(TestNodes.COUNT, measureCalls);
+        assertSameFrames(HEIGHT, WIDTH);
+    }
+}
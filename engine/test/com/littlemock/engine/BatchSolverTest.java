@@ -0,0 +1,94 @@
+package com.littlemock.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class BatchSolverTest {
+    private static final int NODE_COUNT = 40;
+
+    private final LayoutSolver.Measurer measurer = new LayoutSolver.Measurer() {
+        @Override
+        public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+        }
+
+        @Override
+        public int getMeasuredWidth(int node) {
+            return 10;
+        }
+
+        @Override
+        public int getMeasuredHeight(int node) {
+            return 10;
+        }
+    };
+
+    private BatchSolver batchSolver;
+
+    @Before
+    public void setUp() {
+        batchSolver = new BatchSolver(2);
+        batchSolver.setSplitThreshold(1);
+    }
+
+    @After
+    public void tearDown() {
+        batchSolver.shutdown();
+    }
+
+    /**
+     * Pairs of nodes, the second one right of the first, so the template splits into many parts.
+     */
+    private static LayoutTemplate createTemplate() {
+        final LayoutSolver solver = new LayoutSolver();
+        solver.setNodeCount(NODE_COUNT);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            final NodeSpec spec = new NodeSpec();
+            spec.id = 100 + i;
+            spec.width = 50;
+            spec.height = 30;
+            if (i % 2 == 1)
+                spec.dynamicBaseRefLeft = 100 + i - 1;
+            solver.setNode(i, spec, false, false);
+        }
+        return solver.createTemplate();
+    }
+
+    private BatchSolver.Job solve(LayoutTemplate template) throws InterruptedException {
+        final BatchSolver.Job job = new BatchSolver.Job(template, null,
+                MeasureSpec.makeMeasureSpec(1000, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(1000, MeasureSpec.EXACTLY), measurer);
+        batchSolver.solve(Collections.singletonList(job));
+        return job;
+    }
+
+    @Test
+    public void splitJobIsPlacedLikeOneSolver() throws InterruptedException {
+        final LayoutTemplate template = createTemplate();
+        final LayoutSolver solver = new LayoutSolver();
+        solver.setTemplate(template);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            solver.setNode(i, template.getSpec(i), false, false);
+        }
+        solver.measure(MeasureSpec.makeMeasureSpec(1000, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(1000, MeasureSpec.EXACTLY), 0, 0, measurer);
+        assertArrayEquals(solver.getFrames(), solve(template).getFrames());
+    }
+
+    @Test
+    public void partsDoNotKeepTheirTemplate() throws InterruptedException {
+        final WeakReference<LayoutTemplate> template = new WeakReference<LayoutTemplate>(createTemplate());
+        solve(template.get());
+        for (int i = 0; i < 20 && template.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("the parts of a template that is no longer used are still cached", template.get());
+    }
+}
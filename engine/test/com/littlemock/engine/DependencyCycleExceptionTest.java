@@ -0,0 +1,52 @@
+package com.littlemock.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DependencyCycleExceptionTest {
+    private static final DependencyCycleException.IdNames NAMES = new DependencyCycleException.IdNames() {
+        @Override
+        public String getName(int id) {
+            return "view" + id;
+        }
+    };
+
+    private static NodeSpec node(int id, int leftBase) {
+        final NodeSpec spec = new NodeSpec();
+        spec.id = id;
+        spec.dynamicBaseRefLeft = leftBase;
+        return spec;
+    }
+
+    @Test
+    public void reportsTheCycleInReferenceOrder() {
+        final LayoutSolver solver = new LayoutSolver();
+        solver.setNodeCount(4);
+        solver.setNode(0, node(1, 3), false, false);
+        solver.setNode(1, node(2, 1), false, false);
+        solver.setNode(2, node(3, 2), false, false);
+        solver.setNode(3, node(4, 3), false, false);
+        try {
+            solver.updateGraph();
+            fail("the cycle was not detected");
+        } catch (DependencyCycleException e) {
+            final int[] ids = e.getCycleIds();
+            assertEquals(ids[0], ids[ids.length - 1]);
+            assertEquals(4, ids.length);
+            assertEquals(NAMES.getName(ids[0]) + " -> " + NAMES.getName(ids[1]) + " -> " + NAMES.getName(ids[2])
+                    + " -> " + NAMES.getName(ids[0]), e.describeCycle(NAMES));
+        }
+    }
+
+    @Test
+    public void messageNamesIdsInHex() {
+        final DependencyCycleException e = new DependencyCycleException(new int[]{0x7f010001, 0x7f010002, 0x7f010001});
+        assertArrayEquals(new int[]{0x7f010001, 0x7f010002, 0x7f010001}, e.getCycleIds());
+        assertEquals("A CYCLE IS DETECTED BETWEEN VIEWS! PLEASE CHECK YOUR VIEW DEPENDENCY! "
+                + "0x7f010001 -> 0x7f010002 -> 0x7f010001", e.getMessage());
+        assertEquals("view2130771969 -> view2130771970 -> view2130771969", e.describeCycle(NAMES));
+    }
+}
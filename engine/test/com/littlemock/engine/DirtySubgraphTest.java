@@ -0,0 +1,123 @@
+package com.littlemock.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A pass after nodes changed only measures them and the nodes based on them, directly or through
+ * other nodes, and places every node where a full pass of a new solver does.
+ */
+public class DirtySubgraphTest {
+    private static final int WIDTH = TestNodes.exactly(1080);
+    private static final int HEIGHT = TestNodes.exactly(1920);
+
+    private final TestNodes nodes = new TestNodes();
+    private final TestNodes.ContentMeasurer measurer = nodes.new ContentMeasurer();
+    private final LayoutSolver solver = new LayoutSolver();
+    private int cacheResult = -1;
+    private int measureCalls = -1;
+
+    @Before
+    public void setUp() {
+        solver.setPassListener(new LayoutSolver.PassListener() {
+            @Override
+            public void onMeasurePass(PassStats stats) {
+                cacheResult = stats.getCacheResult();
+                measureCalls = stats.getMeasureCalls();
+            }
+
+            @Override
+            public void onLayoutPass(PassStats stats) {
+            }
+        });
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        solver.resetCacheStats();
+    }
+
+    /**
+     * Solves the nodes again and checks that exactly the expected nodes were measured, once each, and
+     * that the frames are those of a full pass.
+     */
+    private void assertRemeasured(int... expected) {
+        final int[] before = measurer.measureCounts.clone();
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        final List<Integer> remeasured = new ArrayList<Integer>();
+        for (int i = 0; i < TestNodes.COUNT; i++) {
+            for (int n = before[i]; n < measurer.measureCounts[i]; n++) {
+                remeasured.add(i);
+            }
+        }
+        final List<Integer> expectedNodes = new ArrayList<Integer>();
+        for (int node : expected) {
+            expectedNodes.add(node);
+        }
+        assertEquals(expectedNodes, remeasured);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertEquals(expected.length, measureCalls);
+        assertEquals(Arrays.toString(nodes.solveFresh(WIDTH, HEIGHT)), Arrays.toString(nodes.framesOf(solver)));
+    }
+
+    @Test
+    public void changedContentRemeasuresItsDependents() {
+        nodes.contentWidths[TestNodes.TITLE] = 900;
+        nodes.changed[TestNodes.TITLE] = true;
+        assertRemeasured(TestNodes.TITLE, TestNodes.SUBTITLE, TestNodes.BADGE);
+        assertEquals(1, solver.getCachePartialHits());
+    }
+
+    @Test
+    public void changedContentRemeasuresTransitiveDependents() {
+        nodes.contentWidths[TestNodes.BODY] = 6000;
+        nodes.changed[TestNodes.BODY] = true;
+        assertRemeasured(TestNodes.BODY, TestNodes.DETAILS, TestNodes.LINK);
+    }
+
+    @Test
+    public void unrelatedNodeIsRemeasuredAlone() {
+        nodes.contentWidths[TestNodes.STATUS] = 400;
+        nodes.changed[TestNodes.STATUS] = true;
+        assertRemeasured(TestNodes.STATUS);
+    }
+
+    @Test
+    public void changedSpecRemeasuresItsDependents() {
+        nodes.specs[TestNodes.AVATAR].leftMargin = 30;
+        assertRemeasured(TestNodes.AVATAR, TestNodes.TITLE, TestNodes.SUBTITLE, TestNodes.BADGE,
+                TestNodes.BODY, TestNodes.DETAILS, TestNodes.LINK);
+    }
+
+    @Test
+    public void sizeChangedWithoutRequestRemeasuresDependents() {
+        // e.g. a child measured by someone else in between, the solver compares the measured sizes
+        nodes.contentWidths[TestNodes.SIDE_LABEL] = 120;
+        measurer.measure(TestNodes.SIDE_LABEL, MeasureSpec.makeMeasureSpec(1000, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(1000, MeasureSpec.AT_MOST));
+        assertRemeasured(TestNodes.SIDE_LABEL);
+    }
+
+    @Test
+    public void goneNodeRemeasuresItsDependents() {
+        nodes.gone[TestNodes.BODY] = true;
+        assertRemeasured(TestNodes.DETAILS, TestNodes.LINK);
+
+        nodes.gone[TestNodes.BODY] = false;
+        assertRemeasured(TestNodes.BODY, TestNodes.DETAILS, TestNodes.LINK);
+    }
+
+    @Test
+    public void unchangedPassAfterwardsIsAHit() {
+        nodes.contentWidths[TestNodes.TITLE] = 900;
+        nodes.changed[TestNodes.TITLE] = true;
+        assertRemeasured(TestNodes.TITLE, TestNodes.SUBTITLE, TestNodes.BADGE);
+
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        assertEquals(PassStats.CACHE_HIT, cacheResult);
+        assertEquals(0, measureCalls);
+    }
+}
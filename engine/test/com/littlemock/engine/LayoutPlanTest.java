@@ -0,0 +1,184 @@
+package com.littlemock.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LayoutPlanTest {
+    private static final int[] IDS = {0x7f080000, 0x7f080001, NodeSpec.NO_ID};
+
+    /**
+     * Nodes as the compiler numbers them, the ids are the indexes of their names.
+     */
+    private static LayoutPlan compile() {
+        final NodeSpec icon = new NodeSpec();
+        icon.id = 0;
+        icon.width = 48;
+        icon.dynamicMarginLeft = 0.03f;
+        final NodeSpec title = new NodeSpec();
+        title.id = 1;
+        title.dynamicWidthMax = 0.5f;
+        title.dynamicBaseRefLeft = 0;
+        final NodeSpec body = new NodeSpec();
+        body.dynamicWidth = 0.9f;
+        body.dynamicHeightMin = 0.1f;
+        body.dynamicBaseRefTop = 0;
+        body.dynamicBaseRefRight = 1;
+        return LayoutPlan.compile(new String[]{"icon", "title", null}, new NodeSpec[]{icon, title, body});
+    }
+
+    private static byte[] write(LayoutPlan plan) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        plan.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static LayoutPlan read(byte[] bytes) throws IOException {
+        return LayoutPlan.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static void assertSameSpecs(LayoutTemplate expected, LayoutTemplate actual) {
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            assertTrue("node " + i, expected.getSpec(i).hasSameValues(actual.getSpec(i)));
+        }
+        assertEquals(expected.getMaxDependencyDepth(), actual.getMaxDependencyDepth());
+    }
+
+    @Test
+    public void planIsReadAsWritten() throws IOException {
+        final LayoutPlan plan = compile();
+        final LayoutPlan copy = read(write(plan));
+        assertEquals(3, copy.getNodeCount());
+        assertEquals("icon", copy.getIdName(0));
+        assertEquals("title", copy.getIdName(1));
+        assertNull(copy.getIdName(2));
+        assertSameSpecs(plan.toTemplate(IDS, true), copy.toTemplate(IDS, true));
+        assertEquals(Arrays.toString(write(plan)), Arrays.toString(write(copy)));
+    }
+
+    @Test
+    public void templateHasTheResolvedIds() {
+        final LayoutTemplate template = compile().toTemplate(IDS, false);
+        final NodeSpec body = template.getSpec(2);
+        assertEquals(NodeSpec.NO_ID, body.id);
+        assertEquals(IDS[0], body.dynamicBaseRefTop);
+        assertEquals(IDS[1], body.dynamicBaseRefRight);
+        assertEquals(NodeSpec.NO_ID, body.dynamicBaseRefLeft);
+        assertEquals(0.9f, body.dynamicWidth, 0);
+        assertEquals(0.1f, body.dynamicHeightMin, 0);
+        assertEquals(IDS[0], template.getSpec(1).dynamicBaseRefLeft);
+        // sizes in pixels are left to the layout
+        assertEquals(NodeSpec.WRAP_CONTENT, template.getSpec(0).width);
+    }
+
+    @Test
+    public void trustedTemplateSolvesLikeValidatedOne() {
+        final LayoutPlan plan = compile();
+        final LayoutTemplate validated = plan.toTemplate(IDS, true);
+        final LayoutTemplate trusted = plan.toTemplate(IDS, false);
+        assertSameSpecs(validated, trusted);
+        assertEquals(Arrays.toString(solve(validated)), Arrays.toString(solve(trusted)));
+    }
+
+    private static int[] solve(LayoutTemplate template) {
+        final LayoutSolver solver = new LayoutSolver();
+        solver.setTemplate(template);
+        for (int i = 0; i < template.getNodeCount(); i++) {
+            solver.setNode(i, template.getSpec(i), false, false);
+        }
+        final int[] sizes = {48, 200, 0};
+        solver.measure(MeasureSpec.makeMeasureSpec(1080, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(1920, MeasureSpec.EXACTLY), 0, 0, new LayoutSolver.Measurer() {
+                    private final int[] widths = new int[3];
+
+                    @Override
+                    public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+                        widths[node] = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.EXACTLY
+                                ? MeasureSpec.getSize(widthMeasureSpec) : sizes[node];
+                    }
+
+                    @Override
+                    public int getMeasuredWidth(int node) {
+                        return widths[node];
+                    }
+
+                    @Override
+                    public int getMeasuredHeight(int node) {
+                        return 48;
+                    }
+                });
+        return solver.getFrames().clone();
+    }
+
+    @Test
+    public void onlyValidatedTemplateChecksForCycles() throws IOException {
+        // a plan can not be compiled with a cycle, it can only get one when it is changed after the build.
+        // Here the icon is based on the title, which is based on the icon
+        final byte[] bytes = write(compile());
+        // magic, version and node count, then the id name and the ten dynamic values of the icon
+        final int iconLeftBase = 3 * 4 + 1 + 2 + "icon".length() + 10 * 4;
+        bytes[iconLeftBase] = 0;
+        bytes[iconLeftBase + 1] = 0;
+        bytes[iconLeftBase + 2] = 0;
+        bytes[iconLeftBase + 3] = 1;
+        final LayoutPlan plan = read(bytes);
+        // the stored measure order is trusted
+        assertEquals(IDS[1], plan.toTemplate(IDS, false).getSpec(0).dynamicBaseRefLeft);
+        try {
+            plan.toTemplate(IDS, true);
+            fail("the cycle was not detected");
+        } catch (DependencyCycleException e) {
+            assertEquals(3, e.getCycleIds().length);
+        }
+    }
+
+    @Test
+    public void otherDataIsNotAPlan() throws IOException {
+        final byte[] bytes = write(compile());
+        bytes[0] ^= 1;
+        assertUnreadable(bytes, "Not a layout plan");
+    }
+
+    @Test
+    public void otherVersionIsNotRead() throws IOException {
+        final byte[] bytes = write(compile());
+        // the version follows the magic number
+        bytes[7]++;
+        assertUnreadable(bytes, "Unsupported layout plan version");
+    }
+
+    @Test
+    public void indexOutOfRangeIsNotRead() throws IOException {
+        final byte[] bytes = write(compile());
+        // the last node index of the measure order, before the maximum dependency depth
+        bytes[bytes.length - 5] = 3;
+        assertUnreadable(bytes, "Corrupt layout plan");
+    }
+
+    private static void assertUnreadable(byte[] bytes, String message) {
+        try {
+            read(bytes);
+            fail("read a broken plan");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void templateNeedsAnIdPerNode() {
+        compile().toTemplate(new int[2], false);
+    }
+}
@@ -0,0 +1,110 @@
+package com.littlemock.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A measure pass with the parent specs of the previous one and no changed node reuses its result
+ * without measuring any node.
+ */
+public class MeasureCacheTest {
+    private static final int WIDTH = TestNodes.exactly(1080);
+    private static final int HEIGHT = TestNodes.exactly(1920);
+
+    private final TestNodes nodes = new TestNodes();
+    private final TestNodes.ContentMeasurer measurer = nodes.new ContentMeasurer();
+    private final LayoutSolver solver = new LayoutSolver();
+    private int cacheResult = -1;
+    private int measureCalls = -1;
+
+    @Before
+    public void setUp() {
+        solver.setPassListener(new LayoutSolver.PassListener() {
+            @Override
+            public void onMeasurePass(PassStats stats) {
+                cacheResult = stats.getCacheResult();
+                measureCalls = stats.getMeasureCalls();
+            }
+
+            @Override
+            public void onLayoutPass(PassStats stats) {
+            }
+        });
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertEquals(TestNodes.COUNT, measureCalls);
+        solver.resetCacheStats();
+    }
+
+    private void assertSameFrames(int widthMeasureSpec, int heightMeasureSpec) {
+        assertEquals(Arrays.toString(nodes.solveFresh(widthMeasureSpec, heightMeasureSpec)),
+                Arrays.toString(nodes.framesOf(solver)));
+    }
+
+    @Test
+    public void identicalSpecsMeasureNothing() {
+        for (int i = 0; i < 3; i++) {
+            nodes.solve(solver, WIDTH, HEIGHT, measurer);
+            assertEquals(PassStats.CACHE_HIT, cacheResult);
+            assertEquals(0, measureCalls);
+        }
+        assertEquals(TestNodes.COUNT, measurer.getMeasureCount());
+        assertEquals(3, solver.getCacheHits());
+        assertEquals(0, solver.getCachePartialHits());
+        assertEquals(0, solver.getCacheMisses());
+        assertSameFrames(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void equalSpecOfAnotherInstanceIsAHit() {
+        // a layout hands over a new spec with the same values, e.g. after its params were replaced
+        nodes.specs[TestNodes.TITLE] = new NodeSpec(nodes.specs[TestNodes.TITLE]);
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        assertEquals(PassStats.CACHE_HIT, cacheResult);
+        assertEquals(1, solver.getCacheHits());
+    }
+
+    @Test
+    public void layoutRequestIsNotAHit() {
+        nodes.changed[TestNodes.STATUS] = true;
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertEquals(0, solver.getCacheHits());
+        assertSameFrames(WIDTH, HEIGHT);
+
+        nodes.solve(solver, WIDTH, HEIGHT, measurer);
+        assertEquals(PassStats.CACHE_HIT, cacheResult);
+    }
+
+    @Test
+    public void otherParentSpecsAreAMiss() {
+        final int width = TestNodes.exactly(1920);
+        final int height = TestNodes.exactly(1080);
+        nodes.solve(solver, width, height, measurer);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertEquals(TestNodes.COUNT, measureCalls);
+        assertEquals(1, solver.getCacheMisses());
+        assertSameFrames(width, height);
+
+        nodes.solve(solver, width, height, measurer);
+        assertEquals(PassStats.CACHE_HIT, cacheResult);
+        assertEquals(1, solver.getCacheHits());
+    }
+
+    @Test
+    public void otherParentModeIsAMiss() {
+        final int width = MeasureSpec.makeMeasureSpec(1080, MeasureSpec.AT_MOST);
+        final int height = MeasureSpec.makeMeasureSpec(1920, MeasureSpec.AT_MOST);
+        nodes.solve(solver, width, height, measurer);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertSameFrames(width, height);
+
+        nodes.solve(solver, width, height, measurer);
+        assertEquals(PassStats.CACHE_HIT, cacheResult);
+        assertEquals(0, measureCalls);
+    }
+}
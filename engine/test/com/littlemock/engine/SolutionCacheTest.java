@@ -0,0 +1,169 @@
+package com.littlemock.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Going back to an earlier parent size restores its solution as long as it is still cached and the
+ * nodes did not change since, the frames are those of a new solver either way.
+ */
+public class SolutionCacheTest {
+    private static final int CACHE_SIZE = 3;
+    private static final int[] PORTRAIT = {1080, 1920};
+    private static final int[] LANDSCAPE = {1920, 1080};
+    private static final int[] SPLIT = {1080, 940};
+    private static final int[] FREEFORM = {800, 600};
+
+    private final TestNodes nodes = new TestNodes();
+    private final TestNodes.ContentMeasurer measurer = nodes.new ContentMeasurer();
+    private final LayoutSolver solver = new LayoutSolver();
+    private int cacheResult = -1;
+    private int measureCalls = -1;
+
+    @Before
+    public void setUp() {
+        solver.setSolutionCacheSize(CACHE_SIZE);
+        solver.setPassListener(new LayoutSolver.PassListener() {
+            @Override
+            public void onMeasurePass(PassStats stats) {
+                cacheResult = stats.getCacheResult();
+                measureCalls = stats.getMeasureCalls();
+            }
+
+            @Override
+            public void onLayoutPass(PassStats stats) {
+            }
+        });
+    }
+
+    private void solve(int[] size) {
+        nodes.solve(solver, TestNodes.exactly(size[0]), TestNodes.exactly(size[1]), measurer);
+        assertEquals(Arrays.toString(nodes.solveFresh(TestNodes.exactly(size[0]), TestNodes.exactly(size[1]))),
+                Arrays.toString(nodes.framesOf(solver)));
+    }
+
+    private void assertCacheStats(long hits, long misses, long evictions) {
+        assertEquals("hits", hits, solver.getSolutionCacheHits());
+        assertEquals("misses", misses, solver.getSolutionCacheMisses());
+        assertEquals("evictions", evictions, solver.getSolutionCacheEvictions());
+    }
+
+    @Test
+    public void rotatingBackRestoresTheSolution() {
+        solve(PORTRAIT);
+        solve(LANDSCAPE);
+        assertCacheStats(0, 2, 0);
+
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+        // every node is measured with the specs it had, and had the same size
+        assertEquals(TestNodes.COUNT, measureCalls);
+        solve(LANDSCAPE);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+        assertCacheStats(2, 2, 0);
+    }
+
+    @Test
+    public void leastRecentlyUsedSolutionIsEvicted() {
+        // a pass saves the solution of the pass before it
+        solve(PORTRAIT);
+        solve(LANDSCAPE);
+        solve(SPLIT);
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+        assertCacheStats(1, 3, 0);
+
+        // the portrait solution is saved again in its own slot
+        solve(FREEFORM);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertCacheStats(1, 4, 0);
+        // saving the freeform solution evicts the landscape one, used longest ago
+        solve(LANDSCAPE);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertCacheStats(1, 5, 1);
+        // saving the landscape solution evicts the split one, portrait was restored after it
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+        assertCacheStats(2, 5, 2);
+        // not restored, only its height differs from portrait so it is solved again along that axis
+        solve(SPLIT);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+        assertCacheStats(2, 6, 2);
+        solve(LANDSCAPE);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+        assertCacheStats(3, 6, 3);
+    }
+
+    @Test
+    public void changedSpecInvalidatesSolutions() {
+        solve(PORTRAIT);
+        solve(LANDSCAPE);
+        nodes.specs[TestNodes.AVATAR].width = 140;
+        solve(LANDSCAPE);
+        assertEquals(PassStats.CACHE_PARTIAL_HIT, cacheResult);
+
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertCacheStats(0, 3, 0);
+        // the landscape solution was saved again with the new spec
+        solve(LANDSCAPE);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+        assertCacheStats(1, 3, 0);
+    }
+
+    @Test
+    public void goneNodeInvalidatesSolutions() {
+        solve(PORTRAIT);
+        solve(LANDSCAPE);
+        nodes.gone[TestNodes.BODY] = true;
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertCacheStats(0, 3, 0);
+
+        nodes.gone[TestNodes.BODY] = false;
+        solve(LANDSCAPE);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+    }
+
+    @Test
+    public void changedContentIsNotRestored() {
+        solve(PORTRAIT);
+        solve(LANDSCAPE);
+        // text changed while the specs stayed the same, the measured size no longer fits the solution
+        nodes.contentWidths[TestNodes.TITLE] = 1200;
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertCacheStats(0, 3, 0);
+
+        solve(LANDSCAPE);
+        solve(PORTRAIT);
+        assertEquals(PassStats.CACHE_RESTORED, cacheResult);
+    }
+
+    @Test
+    public void wrapContentIsNotCached() {
+        final int width = MeasureSpec.makeMeasureSpec(1080, MeasureSpec.AT_MOST);
+        final int height = MeasureSpec.makeMeasureSpec(1920, MeasureSpec.AT_MOST);
+        nodes.solve(solver, width, height, measurer);
+        solve(LANDSCAPE);
+        nodes.solve(solver, width, height, measurer);
+        assertEquals(PassStats.CACHE_MISS, cacheResult);
+        assertEquals(Arrays.toString(nodes.solveFresh(width, height)), Arrays.toString(nodes.framesOf(solver)));
+        assertCacheStats(0, 1, 0);
+    }
+
+    @Test
+    public void cacheOffByDefault() {
+        final LayoutSolver uncached = new LayoutSolver();
+        final TestNodes.ContentMeasurer uncachedMeasurer = nodes.new ContentMeasurer();
+        for (int[] size : new int[][]{PORTRAIT, LANDSCAPE, PORTRAIT}) {
+            nodes.solve(uncached, TestNodes.exactly(size[0]), TestNodes.exactly(size[1]), uncachedMeasurer);
+        }
+        assertEquals(0, uncached.getSolutionCacheHits());
+        assertEquals(0, uncached.getSolutionCacheMisses());
+    }
+}
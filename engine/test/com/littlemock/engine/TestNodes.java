@@ -0,0 +1,185 @@
+package com.littlemock.engine;
+
+import java.util.Arrays;
+
+/**
+ * Nodes of a list item like layout for the cache tests: a header, an avatar with a title, subtitle and
+ * badge next to it, a body below them and a few nodes that are not based on any other. wrap_content
+ * nodes wrap their content like text, in more lines when they get narrower.
+ */
+final class TestNodes {
+    static final int COUNT = 12;
+    static final int LINE_HEIGHT = 40;
+
+    static final int HEADER = 0;
+    static final int AVATAR = 1;
+    static final int TITLE = 2;
+    static final int SUBTITLE = 3;
+    static final int BADGE = 4;
+    static final int BODY = 5;
+    static final int FOOTER = 6;
+    static final int SIDE = 7;
+    static final int SIDE_LABEL = 8;
+    static final int DETAILS = 9;
+    static final int LINK = 10;
+    static final int STATUS = 11;
+
+    final NodeSpec[] specs = new NodeSpec[COUNT];
+    final int[] contentWidths = {2000, 0, 600, 300, 0, 3000, 200, 0, 150, 500, 250, 150};
+    final boolean[] gone = new boolean[COUNT];
+    final boolean[] changed = new boolean[COUNT];
+
+    /**
+     * Measures the nodes from their content and counts how often each of them was measured. Every
+     * solver needs a measurer of its own, the measured sizes are those of its last pass.
+     */
+    final class ContentMeasurer implements LayoutSolver.Measurer {
+        final int[] measureCounts = new int[COUNT];
+        private final int[] measuredWidths = new int[COUNT];
+        private final int[] measuredHeights = new int[COUNT];
+
+        @Override
+        public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+            final int width = resolve(contentWidths[node], widthMeasureSpec);
+            final int lines = width > 0 ? (contentWidths[node] + width - 1) / width : 1;
+            measuredWidths[node] = width;
+            measuredHeights[node] = resolve(lines * LINE_HEIGHT, heightMeasureSpec);
+            measureCounts[node]++;
+        }
+
+        @Override
+        public int getMeasuredWidth(int node) {
+            return measuredWidths[node];
+        }
+
+        @Override
+        public int getMeasuredHeight(int node) {
+            return measuredHeights[node];
+        }
+
+        int getMeasureCount() {
+            int total = 0;
+            for (int count : measureCounts) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    private static final LayoutSolver.Placer PLACER = new LayoutSolver.Placer() {
+        @Override
+        public void place(int node, int left, int top, int right, int bottom) {
+        }
+    };
+
+    TestNodes() {
+        for (int i = 0; i < COUNT; i++) {
+            specs[i] = new NodeSpec();
+            specs[i].id = 100 + i;
+        }
+        specs[HEADER].width = NodeSpec.MATCH_PARENT;
+        specs[HEADER].dynamicMarginTop = 0.02f;
+
+        specs[AVATAR].width = 100;
+        specs[AVATAR].height = 100;
+        specs[AVATAR].dynamicMarginLeft = 0.03f;
+        specs[AVATAR].dynamicBaseRefTop = specs[HEADER].id;
+
+        specs[TITLE].topMargin = 8;
+        specs[TITLE].dynamicMarginLeft = 0.02f;
+        specs[TITLE].dynamicWidthMax = 0.5f;
+        specs[TITLE].dynamicBaseRefLeft = specs[AVATAR].id;
+        specs[TITLE].dynamicBaseRefTop = specs[HEADER].id;
+
+        specs[SUBTITLE].dynamicMarginLeft = 0.02f;
+        specs[SUBTITLE].dynamicBaseRefLeft = specs[AVATAR].id;
+        specs[SUBTITLE].dynamicBaseRefTop = specs[TITLE].id;
+
+        specs[BADGE].width = 40;
+        specs[BADGE].height = 40;
+        specs[BADGE].leftMargin = 12;
+        specs[BADGE].dynamicBaseRefLeft = specs[TITLE].id;
+        specs[BADGE].dynamicBaseRefTop = specs[HEADER].id;
+
+        specs[BODY].dynamicWidth = 0.9f;
+        specs[BODY].dynamicMarginLeft = 0.05f;
+        specs[BODY].dynamicMarginTop = 0.01f;
+        specs[BODY].dynamicBaseRefTop = specs[AVATAR].id;
+
+        specs[FOOTER].dynamicMarginTop = 0.9f;
+        specs[FOOTER].dynamicMarginLeft = 0.1f;
+
+        specs[SIDE].width = 80;
+        specs[SIDE].dynamicHeight = 0.3f;
+        specs[SIDE].dynamicMarginLeft = 0.75f;
+        specs[SIDE].dynamicMarginTop = 0.4f;
+
+        specs[SIDE_LABEL].leftMargin = 4;
+        specs[SIDE_LABEL].dynamicMarginTop = 0.4f;
+        specs[SIDE_LABEL].dynamicBaseRefLeft = specs[SIDE].id;
+
+        specs[DETAILS].dynamicMarginLeft = 0.05f;
+        specs[DETAILS].dynamicBaseRefTop = specs[BODY].id;
+
+        specs[LINK].dynamicBaseRefLeft = specs[FOOTER].id;
+        specs[LINK].dynamicBaseRefTop = specs[DETAILS].id;
+
+        specs[STATUS].dynamicMarginLeft = 0.6f;
+        specs[STATUS].dynamicMarginTop = 0.7f;
+    }
+
+    private static int resolve(int size, int measureSpec) {
+        switch (MeasureSpec.getMode(measureSpec)) {
+            case MeasureSpec.EXACTLY:
+                return MeasureSpec.getSize(measureSpec);
+            case MeasureSpec.AT_MOST:
+                return Math.min(size, MeasureSpec.getSize(measureSpec));
+            default:
+                return size;
+        }
+    }
+
+    static int exactly(int size) {
+        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+    }
+
+    /**
+     * Runs a measure and a layout pass of solver over the nodes, like a layout does in onMeasure and
+     * onLayout. The layout requests of the nodes are handled by it.
+     */
+    void solve(LayoutSolver solver, int widthMeasureSpec, int heightMeasureSpec, ContentMeasurer measurer) {
+        solver.setNodeCount(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            solver.setNode(i, specs[i], gone[i], changed[i]);
+        }
+        solver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, measurer);
+        solver.layout(PLACER);
+        Arrays.fill(changed, false);
+    }
+
+    /**
+     * Frames of the nodes solved by a new solver, the result every cached pass has to match.
+     */
+    int[] solveFresh(int widthMeasureSpec, int heightMeasureSpec) {
+        final LayoutSolver solver = new LayoutSolver();
+        solver.setNodeCount(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            solver.setNode(i, specs[i], gone[i], false);
+        }
+        solver.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, new ContentMeasurer());
+        solver.layout(PLACER);
+        return framesOf(solver);
+    }
+
+    /**
+     * Frames of the nodes that are not GONE, those of GONE nodes are left over from earlier passes.
+     */
+    int[] framesOf(LayoutSolver solver) {
+        final int[] frames = Arrays.copyOf(solver.getFrames(), COUNT * 4);
+        for (int i = 0; i < COUNT; i++) {
+            if (gone[i])
+                Arrays.fill(frames, i * 4, i * 4 + 4, 0);
+        }
+        return frames;
+    }
+}
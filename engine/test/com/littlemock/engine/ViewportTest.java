@@ -0,0 +1,142 @@
+package com.littlemock.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A solver with a viewport must place every node inside the viewport where a solver without one does.
+ * Nodes whose last size is outdated can not be estimated from it.
+ */
+public class ViewportTest {
+    private static final int PARENT_HEIGHT = 3000;
+    private static final int CONTENT_HEIGHT = 49;
+
+    // a wrap_content node wraps its content like text, in more lines of CONTENT_HEIGHT when it gets narrower
+    private static final class ContentMeasurer implements LayoutSolver.Measurer {
+        private final int[] contentWidths;
+        private final int[] measuredWidths = new int[2];
+        private final int[] measuredHeights = new int[2];
+
+        ContentMeasurer(int[] contentWidths) {
+            this.contentWidths = contentWidths;
+        }
+
+        @Override
+        public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+            final int width = resolve(contentWidths[node], widthMeasureSpec);
+            final int lines = width > 0 ? (contentWidths[node] + width - 1) / width : 1;
+            measuredWidths[node] = width;
+            measuredHeights[node] = resolve(lines * CONTENT_HEIGHT, heightMeasureSpec);
+        }
+
+        @Override
+        public int getMeasuredWidth(int node) {
+            return measuredWidths[node];
+        }
+
+        @Override
+        public int getMeasuredHeight(int node) {
+            return measuredHeights[node];
+        }
+    }
+
+    private final LayoutSolver.Placer placer = new LayoutSolver.Placer() {
+        @Override
+        public void place(int node, int left, int top, int right, int bottom) {
+        }
+    };
+
+    private final NodeSpec base = new NodeSpec();
+    private final NodeSpec node = new NodeSpec();
+    private final LayoutSolver full = new LayoutSolver();
+    private final LayoutSolver virtualized = new LayoutSolver();
+    private final int[] contentWidths = {0, 78};
+    private final ContentMeasurer fullMeasurer = new ContentMeasurer(contentWidths);
+    private final ContentMeasurer virtualizedMeasurer = new ContentMeasurer(contentWidths);
+    private int parentWidth = 1000;
+    private int viewportTop = 51;
+    private int viewportBottom = 451;
+    private boolean baseGone = false;
+
+    private static int resolve(int size, int measureSpec) {
+        switch (MeasureSpec.getMode(measureSpec)) {
+            case MeasureSpec.EXACTLY:
+                return MeasureSpec.getSize(measureSpec);
+            case MeasureSpec.AT_MOST:
+                return Math.min(size, MeasureSpec.getSize(measureSpec));
+            default:
+                return size;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        base.id = 100;
+        node.id = 101;
+        node.leftMargin = 24;
+        node.topMargin = 10;
+        full.setNodeCount(2);
+        virtualized.setNodeCount(2);
+    }
+
+    private void solve() {
+        final int widthMeasureSpec = MeasureSpec.makeMeasureSpec(parentWidth, MeasureSpec.EXACTLY);
+        final int heightMeasureSpec = MeasureSpec.makeMeasureSpec(PARENT_HEIGHT, MeasureSpec.EXACTLY);
+        full.setNode(0, base, baseGone, false);
+        full.setNode(1, node, false, false);
+        full.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, fullMeasurer);
+        full.layout(placer);
+        virtualized.setViewport(0, viewportTop, parentWidth, viewportBottom);
+        virtualized.setNode(0, base, baseGone, false);
+        virtualized.setNode(1, node, false, false);
+        virtualized.measure(widthMeasureSpec, heightMeasureSpec, 0, 0, virtualizedMeasurer);
+        virtualized.layout(placer);
+    }
+
+    private static int[] getFrame(LayoutSolver solver, int node) {
+        return Arrays.copyOfRange(solver.getFrames(), node * 4, node * 4 + 4);
+    }
+
+    private void assertNodeVisibleAndSame() {
+        final int[] frame = getFrame(full, 1);
+        assertTrue("node is not in the viewport " + Arrays.toString(frame),
+                frame[LayoutSolver.TOP] < viewportBottom && frame[LayoutSolver.BOTTOM] > viewportTop
+                        && frame[LayoutSolver.LEFT] < parentWidth && frame[LayoutSolver.RIGHT] > 0);
+        assertEquals(Arrays.toString(frame), Arrays.toString(getFrame(virtualized, 1)));
+    }
+
+    @Test
+    public void nodeIsMeasuredAgainWhenItsBaseIsGone() {
+        // the base fills the parent, so the node below it is measured with no height left
+        base.width = NodeSpec.MATCH_PARENT;
+        base.height = PARENT_HEIGHT;
+        node.dynamicBaseRefTop = base.id;
+        solve();
+        assertEquals(0, getFrame(virtualized, 1)[LayoutSolver.BOTTOM] - getFrame(virtualized, 1)[LayoutSolver.TOP]);
+
+        baseGone = true;
+        solve();
+        assertNodeVisibleAndSame();
+    }
+
+    @Test
+    public void nodeIsMeasuredAgainWhenTheParentIsResized() {
+        // the base above the viewport gets more lines when the parent gets narrower and moves the node
+        // below it into the viewport
+        contentWidths[0] = 1200;
+        node.dynamicBaseRefTop = base.id;
+        viewportTop = 200;
+        viewportBottom = 600;
+        solve();
+        assertEquals(2 * CONTENT_HEIGHT, getFrame(virtualized, 0)[LayoutSolver.BOTTOM]);
+
+        parentWidth = 500;
+        solve();
+        assertNodeVisibleAndSame();
+    }
+}
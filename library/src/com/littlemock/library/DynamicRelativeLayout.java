@@ -1,19 +1,116 @@
 package com.littlemock.library;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Rect;
+import android.os.Build;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.view.View;
 import android.view.ViewGroup;
-
-import java.util.ArrayList;
-import java.util.HashMap;
+import android.view.ViewTreeObserver;
+
+import com.littlemock.engine.DependencyCycleException;
+import com.littlemock.engine.LayoutPlan;
+import com.littlemock.engine.LayoutSolver;
+import com.littlemock.engine.LayoutTemplate;
+import com.littlemock.engine.LayoutTracer;
+import com.littlemock.engine.NodeSpec;
+import com.littlemock.engine.NodeSpecInterner;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class DynamicRelativeLayout extends ViewGroup {
-    protected HashMap<String, ChildGraphViewNode> childViewMap = new HashMap<String, ChildGraphViewNode>();
+    // configurations whose templates are kept, the least recently used ones are dropped. Two keep both
+    // orientations of an app that is rotated back and forth, other changes like a new font scale or
+    // locale leave templates behind that are never used again
+    private static final int MAX_TEMPLATE_CONFIGURATIONS = 2;
+    // templates by configuration and layout resource, compiled from the first instance inflated from it.
+    // The same resource can be a different file in another configuration, e.g. layout-land. Guarded by
+    // itself, AsyncLayoutInflater inflates layouts off the main thread
+    private static final LinkedHashMap<Configuration, SparseArray<LayoutTemplate>> templates =
+            new LinkedHashMap<Configuration, SparseArray<LayoutTemplate>>(4, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Configuration, SparseArray<LayoutTemplate>> eldest) {
+                    return size() > MAX_TEMPLATE_CONFIGURATIONS;
+                }
+            };
+    // assets folder the compiler module writes the layout plans to, one <layout name>.plan per template
+    private static final String PLAN_DIRECTORY = "dynamic_layouts/";
+
+    // all the solving happens in the engine, the children are its nodes in child order
+    private final LayoutSolver solver = new LayoutSolver();
+    private final LayoutSolver.ContainerMeasurer childMeasurer = new LayoutSolver.ContainerMeasurer() {
+        @Override
+        public void measure(int node, int widthMeasureSpec, int heightMeasureSpec) {
+            getChildAt(node).measure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        public int getMeasuredWidth(int node) {
+            return getChildAt(node).getMeasuredWidth();
+        }
+
+        @Override
+        public int getMeasuredHeight(int node) {
+            return getChildAt(node).getMeasuredHeight();
+        }
+
+        @Override
+        public boolean getDescendantFrame(int node, int id, int[] frame) {
+            final View child = getChildAt(node);
+            return child instanceof DynamicRelativeLayout && ((DynamicRelativeLayout) child).getDescendantFrame(id, frame);
+        }
+    };
+    private final LayoutSolver.Placer childPlacer = new LayoutSolver.Placer() {
+        @Override
+        public void place(int node, int left, int top, int right, int bottom) {
+            getChildAt(node).layout(left, top, right, bottom);
+        }
+    };
+    // ids of the children and of their descendants in nested layouts, see getDescendantIds
+    private int[] descendantIds;
+    // nesting of begin/commitLayoutParamsUpdate, layout requests are held back while it is above 0
+    private int updateDepth = 0;
+    // layout resource this layout is inflated from, 0 without a template
+    private int templateId = 0;
+    // template the inflated children copy their dynamic values from, only set until onFinishInflate and
+    // dropped at the first child that does not match it
+    private LayoutTemplate inflatingTemplate;
+    // filled from the LayoutParams of a child to compare them with its spec. One per layout, layouts
+    // inflated on other threads do not share it
+    private final NodeSpec nodeSpecProbe = new NodeSpec();
+    // see setVirtualized. viewport is the part of this layout whose children are measured and laid out
+    private boolean virtualized = false;
+    private final Rect viewport = new Rect();
+    private final Rect visibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            updateViewport();
+        }
+    };
+    private final Runnable viewportUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateViewport();
+        }
+    };
 
     public DynamicRelativeLayout(Context context) {
         super(context);
+        init(context);
     }
 
     public DynamicRelativeLayout(Context context, AttributeSet attributeSet) {
@@ -22,297 +119,489 @@ public class DynamicRelativeLayout extends ViewGroup {
 
     public DynamicRelativeLayout(Context context, AttributeSet attributeSet, int defStyle) {
         super(context, attributeSet, defStyle);
+        init(context);
+        TypedArray a = context.obtainStyledAttributes(attributeSet, R.styleable.DynamicRelativeLayout);
+        templateId = a.getResourceId(R.styleable.DynamicRelativeLayout_dynamic_template, 0);
+        a.recycle();
+        if (templateId != 0) {
+            if (getTemplate() == null)
+                loadTemplatePlan(context);
+            inflatingTemplate = getTemplate();
+        }
     }
 
-
-    /*
-    DEFINITION FOR STATES:
-    UNEXPLORED - node has not been visited
-    DISCOVERED - node has been visited but waiting for child to finish
-    EXPLORED - node's child has finished and the node has been explored
-    DONE - node has been measured
-     */
-    public enum State {
-        UNEXPLORED, DISCOVERED, EXPLORED, DONE
-    }
-
-    public enum Direction {
-        LEFT, TOP, RIGHT, BOTTOM, NONE
+    private LayoutTemplate getTemplate() {
+        synchronized (templates) {
+            final SparseArray<LayoutTemplate> configurationTemplates =
+                    templates.get(getResources().getConfiguration());
+            return configurationTemplates != null ? configurationTemplates.get(templateId) : null;
+        }
     }
 
-    protected static class ChildGraphViewNode {
-        State state = State.UNEXPLORED;
-        View childView;
-
-        public ChildGraphViewNode(View childView) {
-            this.childView = childView;
+    private void putTemplate(LayoutTemplate template) {
+        synchronized (templates) {
+            final Configuration configuration = getResources().getConfiguration();
+            SparseArray<LayoutTemplate> configurationTemplates = templates.get(configuration);
+            if (configurationTemplates == null) {
+                configurationTemplates = new SparseArray<LayoutTemplate>();
+                // a copy, the configuration of the resources changes in place
+                templates.put(new Configuration(configuration), configurationTemplates);
+            }
+            configurationTemplates.put(templateId, template);
         }
     }
 
-    protected static class ChildGraphViewNodeWrapper {
-        ChildGraphViewNode childGraphViewNode;
-        Direction direction;
-
-        public ChildGraphViewNodeWrapper(ChildGraphViewNode childGraphViewNode, Direction direction) {
-            this.childGraphViewNode = childGraphViewNode;
-            this.direction = direction;
-        }
+    private void init(Context context) {
+        // from M on ViewGroup.getChildMeasureSpec passes the parent size to children of an UNSPECIFIED
+        // parent, but only for apps targeting M or later
+        solver.setUnspecifiedSizeHint(Build.VERSION.SDK_INT >= 23
+                && context.getApplicationInfo().targetSdkVersion >= 23);
     }
 
-    public ArrayList<ChildGraphViewNodeWrapper> getNeighborViews(ChildGraphViewNode currentChild) {
-        ChildGraphViewNode childMapObject = childViewMap.get(String.valueOf(currentChild.childView.getId()));
-        LayoutParams lp = (LayoutParams) childMapObject.childView.getLayoutParams();
-        ArrayList<ChildGraphViewNodeWrapper> childList = new ArrayList<ChildGraphViewNodeWrapper>();
-        if (lp.dynamicBaseRefLeft != -1) {
-            childList.add(new ChildGraphViewNodeWrapper(childViewMap.get(String.valueOf(lp.dynamicBaseRefLeft)), Direction.LEFT));
+    /**
+     * Creates the template from the plan the compiler module wrote for the layout at build time, if there
+     * is one, so even the first instance does not parse its children. The plan was checked for cycles
+     * when it was compiled, only debuggable apps build and check the graph again.
+     */
+    private void loadTemplatePlan(Context context) {
+        final Resources resources = context.getResources();
+        final LayoutPlan plan;
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    context.getAssets().open(PLAN_DIRECTORY + resources.getResourceEntryName(templateId) + ".plan")));
+            try {
+                plan = LayoutPlan.readFrom(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // no plan, the first instance compiles the template
+            return;
         }
-        if (lp.dynamicBaseRefTop != -1) {
-            childList.add(new ChildGraphViewNodeWrapper(childViewMap.get(String.valueOf(lp.dynamicBaseRefTop)), Direction.TOP));
+
+        final int[] ids = new int[plan.getNodeCount()];
+        for (int i = 0; i < ids.length; i++) {
+            final String name = plan.getIdName(i);
+            ids[i] = name == null ? NO_ID : resources.getIdentifier(name, "id", context.getPackageName());
+            if (ids[i] == 0)
+                return;
         }
-        if (lp.dynamicBaseRefRight != -1) {
-            childList.add(new ChildGraphViewNodeWrapper(childViewMap.get(String.valueOf(lp.dynamicBaseRefRight)), Direction.RIGHT));
+        final boolean validate = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        try {
+            putTemplate(plan.toTemplate(ids, validate));
+        } catch (DependencyCycleException e) {
+            // reported by the first measure pass
         }
-        if (lp.dynamicBaseRefBottom != -1) {
-            childList.add(new ChildGraphViewNodeWrapper(childViewMap.get(String.valueOf(lp.dynamicBaseRefBottom)), Direction.BOTTOM));
+    }
+
+    /**
+     * With the dynamic_template attribute set to the layout resource this layout is inflated from, the
+     * first instance compiles the child graph and the dynamic LayoutParams values of its children into
+     * a template for the current configuration, unless it was loaded from a plan. Every later instance
+     * shares that template: its children copy the dynamic values instead of parsing them, and the graph
+     * is neither built nor checked for cycles again. Changes made to the children after inflation are
+     * picked up as usual.
+     */
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        inflatingTemplate = null;
+        if (templateId == 0)
+            return;
+        final LayoutTemplate template = getTemplate();
+        if (template == null) {
+            updateNodes();
+            try {
+                putTemplate(solver.createTemplate());
+            } catch (DependencyCycleException e) {
+                // not shared, the cycle is reported by the first measure pass
+            }
+        } else if (matchesTemplate(template)) {
+            solver.setTemplate(template);
         }
-        return childList;
     }
 
-    public boolean detectCycleInGraph(ChildGraphViewNode node) {
-        if (node.state.equals(State.EXPLORED))
+    private boolean matchesTemplate(LayoutTemplate template) {
+        final int count = getChildCount();
+        if (template.getNodeCount() != count)
             return false;
-        node.state = State.DISCOVERED;
-
-        for (ChildGraphViewNodeWrapper obj : getNeighborViews(node)) {
-            if (obj.childGraphViewNode.state.equals(State.UNEXPLORED)) {
-                final boolean result = detectCycleInGraph(obj.childGraphViewNode);
-                if (result)
-                    return result;
-            } else if (obj.childGraphViewNode.state.equals(State.EXPLORED)) {
+        for (int i = 0; i < count; i++) {
+            if (template.getSpec(i).id != getChildAt(i).getId())
                 return false;
-            } else {
-                return true;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the cached child graph so it is rebuilt and checked for cycles on the next measure pass.
+     * Adding or removing children, replacing a child's LayoutParams or changing one of its
+     * dynamicBaseRef values is picked up automatically. Changing the id of a child of a nested
+     * DynamicRelativeLayout that children of this one may be based on is not, call this on the nested one.
+     */
+    public void invalidateChildGraph() {
+        solver.invalidateGraph();
+        invalidateDescendantIds();
+    }
+
+    // onViewAdded and onViewRemoved are only public API from 23 on, but are called by the
+    // framework on earlier versions as well. On top of that every pass compares the ids and
+    // base references with the graph, so older platforms still rebuild it when they need to.
+    protected void onViewAdded(View child) {
+        solver.invalidateGraph();
+        invalidateDescendantIds();
+    }
+
+    protected void onViewRemoved(View child) {
+        solver.invalidateGraph();
+        invalidateDescendantIds();
+    }
+
+    /**
+     * Ids of the children and of the descendants of nested DynamicRelativeLayouts. The children of the
+     * parent of this layout can be based on them, like on siblings, so a layout does not have to be
+     * nested in another one only to line up with its children.
+     */
+    private int[] getDescendantIds() {
+        if (descendantIds == null) {
+            int[] ids = new int[getChildCount()];
+            int count = 0;
+            for (int i = 0; i < getChildCount(); i++) {
+                final View child = getChildAt(i);
+                final int[] nested = child instanceof DynamicRelativeLayout
+                        ? ((DynamicRelativeLayout) child).getDescendantIds() : null;
+                final int nestedCount = nested != null ? nested.length : 0;
+                if (count + nestedCount + 1 > ids.length)
+                    ids = Arrays.copyOf(ids, Math.max(ids.length * 2, count + nestedCount + 1));
+                if (child.getId() != NO_ID)
+                    ids[count++] = child.getId();
+                if (nested != null)
+                    System.arraycopy(nested, 0, ids, count, nestedCount);
+                count += nestedCount;
             }
+            descendantIds = Arrays.copyOf(ids, count);
         }
-        node.state = State.EXPLORED;
-        return false;
+        return descendantIds;
+    }
+
+    private void invalidateDescendantIds() {
+        descendantIds = null;
+        if (getParent() instanceof DynamicRelativeLayout)
+            ((DynamicRelativeLayout) getParent()).invalidateDescendantIds();
     }
 
-    public ChildGraphViewNodeWrapper getChildByDirection(ArrayList<ChildGraphViewNodeWrapper> relativeViews, Direction direction) {
-        for (ChildGraphViewNodeWrapper nodeWrapper : relativeViews) {
-            if (nodeWrapper.direction.equals(direction)) {
-                return nodeWrapper;
+    /**
+     * Writes the frame of the descendant with id relative to this layout, from the last measure pass.
+     * Children come before the descendants of nested layouts and the last one with the id wins, like
+     * for base references. Returns false if there is none or it is GONE.
+     */
+    private boolean getDescendantFrame(int id, int[] frame) {
+        final int count = getChildCount();
+        if (solver.getNodeCount() != count)
+            return false;
+        // four ints per child, see LayoutSolver.getFrames
+        final int[] frames = solver.getFrames();
+        for (int i = count - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            if (child.getId() == id) {
+                if (child.getVisibility() == GONE)
+                    return false;
+                System.arraycopy(frames, i * 4, frame, 0, 4);
+                return true;
             }
         }
-        return null;
-    }
-
-    public int recursiveOnMeasure(int widthMeasureSpec, int heightMeasureSpec, ChildGraphViewNode node, Direction direction) {
-        LayoutParams lp = (LayoutParams) node.childView.getLayoutParams();
-        final ArrayList<ChildGraphViewNodeWrapper> relativeViews = getNeighborViews(node);
-        if (node.state.equals(State.DONE)) {
-            if (Direction.LEFT.equals(direction)) {
-                return lp.getChildMarginLeft(node.childView.getMeasuredWidth(), getMeasuredWidth()) + node.childView.getMeasuredWidth();
-            } else if (Direction.TOP.equals(direction)) {
-                return lp.getChildMarginTop(node.childView.getMeasuredHeight(), getMeasuredHeight()) + node.childView.getMeasuredHeight();
-            } else if (Direction.RIGHT.equals(direction)) {
-                return lp.getChildMarginLeft(node.childView.getMeasuredWidth(), getMeasuredWidth());
-            } else if (Direction.BOTTOM.equals(direction)) {
-                return lp.getChildMarginTop(node.childView.getMeasuredHeight(), getMeasuredHeight());
-            } else {
-                return 0;
+        for (int i = count - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            if (child instanceof DynamicRelativeLayout && child.getVisibility() != GONE
+                    && ((DynamicRelativeLayout) child).getDescendantFrame(id, frame)) {
+                final int left = frames[i * 4 + LayoutSolver.LEFT];
+                final int top = frames[i * 4 + LayoutSolver.TOP];
+                frame[LayoutSolver.LEFT] += left;
+                frame[LayoutSolver.TOP] += top;
+                frame[LayoutSolver.RIGHT] += left;
+                frame[LayoutSolver.BOTTOM] += top;
+                return true;
             }
         }
+        return false;
+    }
 
-        // IF we are here then the current view has not been measured
-        // we will measure the current child view if it doesnt have any reference to
-        // other child views
-        if (relativeViews.size() == 0) {
-            if (node.childView.getVisibility() == View.GONE) {
-                if (Direction.LEFT.equals(direction)) {
-                    return 0;
-                } else if (Direction.TOP.equals(direction)) {
-                    return 0;
-                } else if (Direction.RIGHT.equals(direction)) {
-                    return this.getMeasuredWidth();
-                } else if (Direction.BOTTOM.equals(direction)) {
-                    return this.getMeasuredHeight();
-                } else {
-                    return 0;
-                }
-            } else {
-                // This view is not relative to any other child, it will measure itself
-                int childWidthMeasureSpec = getChildMeasureSpec(widthMeasureSpec,
-                        lp.getLeftMargin(getMeasuredWidth()) + lp.getRightMargin(getMeasuredWidth()),
-                        lp.getDynamicWidth(getMeasuredWidth()));
-                int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
-                        lp.getTopMargin(getMeasuredHeight()) + lp.getBottomMargin(getMeasuredHeight()),
-                        lp.getDynamicHeight(getMeasuredHeight()));
-                node.childView.measure(childWidthMeasureSpec, childHeightMeasureSpec);
-                node.state = State.DONE;
-                if (Direction.LEFT.equals(direction)) {
-                    return lp.getLeftMargin(getMeasuredWidth()) + node.childView.getMeasuredWidth();
-                } else if (Direction.TOP.equals(direction)) {
-                    return lp.getTopMargin(getMeasuredHeight()) + node.childView.getMeasuredHeight();
-                } else if (Direction.RIGHT.equals(direction)) {
-                    return lp.getLeftMargin(getMeasuredWidth());
-                } else if (Direction.BOTTOM.equals(direction)) {
-                    return lp.getTopMargin(getMeasuredHeight());
-                } else {
-                    return 0;
-                }
-            }
-        } else {
-            // if we get here we are relative to other childs
-            if (node.childView.getVisibility() == View.GONE) {
-                ChildGraphViewNodeWrapper nodeWrapper = getChildByDirection(relativeViews, direction);
-                if (nodeWrapper != null) {
-                    return recursiveOnMeasure(widthMeasureSpec, heightMeasureSpec, nodeWrapper.childGraphViewNode, direction);
-                } else {
-                    if (Direction.LEFT.equals(direction)) {
-                        return 0;
-                    } else if (Direction.TOP.equals(direction)) {
-                        return 0;
-                    } else if (Direction.RIGHT.equals(direction)) {
-                        return this.getMeasuredWidth();
-                    } else if (Direction.BOTTOM.equals(direction)) {
-                        return this.getMeasuredHeight();
-                    } else {
-                        return 0;
-                    }
-                }
-            } else {
-                HashMap<Direction, Integer> marginMapping = new HashMap<Direction, Integer>();
-                // we need to measure ourselves based on the child we depend on
-                for (ChildGraphViewNodeWrapper nodeWrapper : relativeViews) {
-                    marginMapping.put(nodeWrapper.direction, new Integer(
-                            recursiveOnMeasure(widthMeasureSpec, heightMeasureSpec, nodeWrapper.childGraphViewNode, nodeWrapper.direction)
-                    ));
-                }
+    @Override
+    public void forceLayout() {
+        solver.invalidate();
+        super.forceLayout();
+    }
 
-                if (marginMapping.containsKey(Direction.LEFT)) {
-                    lp.dynamicRelativeMarginLeft = new Integer(lp.getLeftMargin(getMeasuredWidth()) + marginMapping.get(Direction.LEFT).intValue());
-                }
-                if (marginMapping.containsKey(Direction.TOP)) {
-                    lp.dynamicRelativeMarginTop = new Integer(lp.getTopMargin(getMeasuredHeight()) + marginMapping.get(Direction.TOP).intValue());
-                }
-                if (marginMapping.containsKey(Direction.RIGHT)) {
-                    lp.dynamicRelativeMarginRight = new Integer(marginMapping.get(Direction.RIGHT).intValue() - lp.getRightMargin(getMeasuredWidth()));
-                }
-                if (marginMapping.containsKey(Direction.BOTTOM)) {
-                    lp.dynamicRelativeMarginBottom = new Integer(marginMapping.get(Direction.BOTTOM).intValue() - lp.getBottomMargin(getMeasuredHeight()));
-                }
+    /**
+     * Number of measure passes that reused the result of the previous pass without measuring any child.
+     */
+    public long getMeasureCacheHits() {
+        return solver.getCacheHits();
+    }
 
-                int childWidthMeasureSpec = getChildMeasureSpec(widthMeasureSpec,
-                        lp.getLeftMargin(getMeasuredWidth()) + lp.getRightMargin(getMeasuredWidth()),
-                        lp.getDynamicWidth(getMeasuredWidth()));
-                int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
-                        lp.getTopMargin(getMeasuredHeight()) + lp.getBottomMargin(getMeasuredHeight()),
-                        lp.getDynamicHeight(getMeasuredHeight()));
-                node.childView.measure(childWidthMeasureSpec, childHeightMeasureSpec);
-                node.state = State.DONE;
-                if (Direction.LEFT.equals(direction)) {
-                    return lp.getLeftMargin(getMeasuredWidth()) + node.childView.getMeasuredWidth();
-                } else if (Direction.TOP.equals(direction)) {
-                    return lp.getTopMargin(getMeasuredHeight()) + node.childView.getMeasuredHeight();
-                } else if (Direction.RIGHT.equals(direction)) {
-                    return lp.getLeftMargin(getMeasuredWidth());
-                } else if (Direction.BOTTOM.equals(direction)) {
-                    return lp.getTopMargin(getMeasuredHeight());
-                } else {
-                    return 0;
-                }
-            }
+    /**
+     * Number of measure passes that only remeasured the changed children and the children based on them.
+     */
+    public long getMeasureCachePartialHits() {
+        return solver.getCachePartialHits();
+    }
+
+    /**
+     * Number of measure passes that had to measure all children.
+     */
+    public long getMeasureCacheMisses() {
+        return solver.getCacheMisses();
+    }
+
+    public void resetMeasureCacheStats() {
+        solver.resetCacheStats();
+    }
+
+    /**
+     * Keeps the child frames of up to size earlier sizes of this layout, e.g. for rotation or resizing
+     * in multi-window mode. Going back to one of them only measures each child again with the spec it
+     * got for that size, which the child usually answers from its own measure cache, instead of
+     * resolving all margins and base references. 0, the default, turns it off.
+     */
+    public void setSolutionCacheSize(int size) {
+        solver.setSolutionCacheSize(size);
+    }
+
+    /**
+     * Number of measure passes that restored the child frames of an earlier size of this layout.
+     */
+    public long getSolutionCacheHits() {
+        return solver.getSolutionCacheHits();
+    }
+
+    /**
+     * Number of measure passes that found no child frames to restore for their size.
+     */
+    public long getSolutionCacheMisses() {
+        return solver.getSolutionCacheMisses();
+    }
+
+    /**
+     * Number of saved sizes that were dropped to make room for another one.
+     */
+    public long getSolutionCacheEvictions() {
+        return solver.getSolutionCacheEvictions();
+    }
+
+    /**
+     * When enabled onLayout only lays out the children whose frame changed, or that requested a layout
+     * themselves, instead of every child. Off by default.
+     */
+    public void setSkipUnchangedFrames(boolean skipUnchangedFrames) {
+        solver.setSkipUnchangedFrames(skipUnchangedFrames);
+    }
+
+    /**
+     * Reports the phase timings and counters of every measure and layout pass to listener, null turns
+     * the instrumentation off. Without a listener no clock is read and nothing is allocated.
+     */
+    public void setPassListener(LayoutSolver.PassListener listener) {
+        solver.setPassListener(listener);
+    }
+
+    /**
+     * Records the passes of this layout and the measure of every child with tracer, null stops
+     * recording. Set the same tracer on the nested layouts of a screen to see which of them measured
+     * their children again. Passes are recorded with the id this layout has now, children with theirs.
+     */
+    public void setTracer(LayoutTracer tracer) {
+        solver.setTracer(tracer, getId());
+    }
+
+    /**
+     * For large layouts in a scroll container, e.g. a canvas with thousands of children. When enabled
+     * only the children near the visible part of this layout, and the children they are based on, are
+     * measured and laid out. The others are skipped until this layout is scrolled near them, so a pass
+     * costs about the same however many children are out of sight. Children with a wrap_content size
+     * are measured once before they can be skipped. Has no effect while this layout is wrap_content.
+     */
+    public void setVirtualized(boolean virtualized) {
+        if (this.virtualized == virtualized)
+            return;
+        this.virtualized = virtualized;
+        if (virtualized) {
+            // until this layout is laid out the display sized area at its top left is taken as visible
+            final DisplayMetrics metrics = getResources().getDisplayMetrics();
+            setViewport(0, 0, metrics.widthPixels, metrics.heightPixels);
+            if (getWindowToken() != null)
+                getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        } else {
+            solver.clearViewport();
+            getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
         }
+        requestLayout();
     }
 
+    /**
+     * Number of children skipped by the last measure pass because they are not near the visible part of
+     * this layout, see {@link #setVirtualized}.
+     */
+    public int getOffscreenChildCount() {
+        return solver.getOffscreenNodeCount();
+    }
+
+    // the visible part plus its own size on every side, so a layout pass is only needed every screen
+    private void setViewport(int left, int top, int right, int bottom) {
+        final int width = right - left;
+        final int height = bottom - top;
+        viewport.set(left - width, top - height, right + width, bottom + height);
+        solver.setViewport(viewport.left, viewport.top, viewport.right, viewport.bottom);
+    }
+
+    private void updateViewport() {
+        if (!virtualized || !getLocalVisibleRect(visibleRect) || viewport.contains(visibleRect))
+            return;
+        setViewport(visibleRect.left, visibleRect.top, visibleRect.right, visibleRect.bottom);
+        requestLayout();
+    }
 
     @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        childViewMap = new HashMap<String, ChildGraphViewNode>();
-        final int count = getChildCount();
-        // first run put all child into hashmap
-        for (int i = 0; i < count; i++) {
-            View child = getChildAt(i);
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            lp.dynamicRelativeMarginLeft = null;
-            lp.dynamicRelativeMarginTop = null;
-            lp.dynamicRelativeMarginRight = null;
-            lp.dynamicRelativeMarginBottom = null;
-            ChildGraphViewNode mapObject = new ChildGraphViewNode(child);
-            childViewMap.put(child.getId() + "", mapObject);
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (virtualized)
+            getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Sets the dynamic margins of child and moves it, e.g. for every frame of an animation,
+     * see {@link #updateChildMargins}.
+     */
+    public void setChildDynamicMargins(View child, float dynamicMarginLeft, float dynamicMarginTop,
+                                       float dynamicMarginRight, float dynamicMarginBottom) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        lp.dynamicMarginLeft = dynamicMarginLeft;
+        lp.dynamicMarginTop = dynamicMarginTop;
+        lp.dynamicMarginRight = dynamicMarginRight;
+        lp.dynamicMarginBottom = dynamicMarginBottom;
+        updateChildMargins(child);
+    }
+
+    /**
+     * Applies changed margins in the LayoutParams of child, use it instead of requestLayout when only
+     * margins changed. If no size can change, child and the children based on it are moved right away
+     * without a measure pass. That is the case when this layout is not wrap_content and all of those
+     * children have a fixed or dynamic width and height, otherwise a layout is requested.
+     */
+    public void updateChildMargins(View child) {
+        final int index = indexOfChild(child);
+        if (index < 0)
+            throw new IllegalArgumentException("The view is not a child of this layout");
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        if (updateDepth > 0 || isLayoutRequested() || solver.getNodeCount() != getChildCount()
+                || !solver.moveNode(index, lp.toNodeSpec(child.getId(), nodeSpecProbe), childPlacer)) {
+            requestLayout();
         }
+    }
 
-        //third run check if there's cycle in the graph
-        for (int i = 0; i < count; i++) {
-            View child = getChildAt(i);
-            final boolean result = detectCycleInGraph(childViewMap.get(String.valueOf(child.getId())));
-            if (result) {
-                throw new RuntimeException("A CYCLE IS DETECTED BETWEEN VIEWS! PLEASE CHECK YOUR VIEW DEPENDENCY!");
-            }
+    /**
+     * Starts a batch of LayoutParams changes, e.g. new dynamic sizes, margins or base references of
+     * several children. LayoutParams can be changed in place or replaced with setLayoutParams, the layout
+     * requests of the children and this layout are held back until the matching
+     * {@link #commitLayoutParamsUpdate}. Batches can be nested.
+     */
+    public void beginLayoutParamsUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * Ends a batch started with {@link #beginLayoutParamsUpdate}. The outermost commit requests a single
+     * layout and checks the new dependency graph right away, so a cycle is reported here instead of in
+     * the next measure pass.
+     *
+     * @throws RuntimeException if the base references of the children now form a cycle
+     */
+    public void commitLayoutParamsUpdate() {
+        if (updateDepth == 0)
+            throw new IllegalStateException("commitLayoutParamsUpdate without beginLayoutParamsUpdate");
+        if (--updateDepth > 0)
+            return;
+        requestLayout();
+        updateNodes();
+        try {
+            solver.updateGraph();
+        } catch (DependencyCycleException e) {
+            throw cycleException(e);
         }
+    }
 
-        for (int i = 0; i < count; i++) {
-            View child = getChildAt(i);
-            if (child.getId() == -1) {
-                ChildGraphViewNode childNode = new ChildGraphViewNode(child);
-                childNode.state = State.EXPLORED;
-                recursiveOnMeasure(widthMeasureSpec, heightMeasureSpec, childNode, Direction.NONE);
-            } else {
-                ChildGraphViewNode childNode = childViewMap.get(String.valueOf(getChildAt(i).getId()));
-                recursiveOnMeasure(widthMeasureSpec, heightMeasureSpec, childNode, Direction.NONE);
-            }
+    @Override
+    public void requestLayout() {
+        if (updateDepth > 0)
+            return;
+        super.requestLayout();
+    }
+
+    private String describeId(int id) {
+        try {
+            return getResources().getResourceEntryName(id);
+        } catch (Resources.NotFoundException e) {
+            return "0x" + Integer.toHexString(id);
         }
+    }
 
-        // After measuring the children, we handle the case if we are wrap content
-        int specModeWidth = MeasureSpec.getMode(widthMeasureSpec);
-        int specModeHeight = MeasureSpec.getMode(heightMeasureSpec);
-
-        int maxWidth = 0;
-        int maxHeight = 0;
-        final boolean isWidthWrapContent = specModeWidth == MeasureSpec.AT_MOST;
-        final boolean isHeightWrapContent = specModeHeight == MeasureSpec.AT_MOST;
-        if (isWidthWrapContent || isHeightWrapContent) {
-            for (int i = 0; i < count; i++) {
-                View child = getChildAt(i);
-                LayoutParams lp = (LayoutParams) child.getLayoutParams();
-                if (isWidthWrapContent) {
-                    maxWidth = Math.max(maxWidth, child.getMeasuredWidth() + lp.getLeftMargin(getMeasuredWidth()) + lp.getRightMargin(getMeasuredWidth()));
-                }
-                if (isHeightWrapContent) {
-                    maxHeight = Math.max(maxHeight, child.getMeasuredHeight() + lp.getTopMargin(getMeasuredHeight()) + lp.getBottomMargin(getMeasuredHeight()));
-                }
+    private RuntimeException cycleException(DependencyCycleException e) {
+        final String cycle = e.describeCycle(new DependencyCycleException.IdNames() {
+            @Override
+            public String getName(int id) {
+                return describeId(id);
             }
+        });
+        return new RuntimeException("A CYCLE IS DETECTED BETWEEN VIEWS! PLEASE CHECK YOUR VIEW DEPENDENCY! " + cycle, e);
+    }
+
+    private void updateNodes() {
+        final int count = getChildCount();
+        solver.setNodeCount(count);
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            solver.setNode(i, lp.toNodeSpec(child.getId(), nodeSpecProbe), child.getVisibility() == GONE, child.isLayoutRequested());
+            solver.setDescendantIds(i, child instanceof DynamicRelativeLayout
+                    ? ((DynamicRelativeLayout) child).getDescendantIds() : null);
         }
-        if (isWidthWrapContent) {
-            widthMeasureSpec = MeasureSpec.makeMeasureSpec(maxWidth, MeasureSpec.AT_MOST);
-        }
-        if (isHeightWrapContent) {
-            heightMeasureSpec = MeasureSpec.makeMeasureSpec(maxHeight, MeasureSpec.AT_MOST);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        updateNodes();
+        try {
+            solver.measure(widthMeasureSpec, heightMeasureSpec,
+                    getSuggestedMinimumWidth(), getSuggestedMinimumHeight(), childMeasurer);
+        } catch (DependencyCycleException e) {
+            throw cycleException(e);
         }
-        if (isWidthWrapContent || isHeightWrapContent)
-            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        setMeasuredDimension(solver.getMeasuredWidth(), solver.getMeasuredHeight());
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        final int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            View child = getChildAt(i);
-            if (child.getVisibility() != GONE) {
-                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
-                final int childLeft = lp.getChildMarginLeft(child.getMeasuredWidth(), getMeasuredWidth());
-                final int childTop = lp.getChildMarginTop(child.getMeasuredHeight(), getMeasuredHeight());
-                child.layout(childLeft, childTop,
-                        childLeft + child.getMeasuredWidth(),
-                        childTop + child.getMeasuredHeight());
-            }
-        }
+        // the frames were already computed by onMeasure
+        solver.layout(childPlacer);
+        // the visible part is only known once this layout is placed, checked after the pass
+        if (virtualized)
+            post(viewportUpdater);
     }
 
     @Override
     public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        // children are inflated in order, so the next child is the one at getChildCount in the template.
+        // Children inflated into this layout later, or that differ from the template, parse their values
+        final LayoutTemplate template = inflatingTemplate;
+        final int index = getChildCount();
+        if (template != null && index < template.getNodeCount()
+                && template.getSpec(index).id == attrs.getIdAttributeResourceValue(NO_ID))
+            return new DynamicRelativeLayout.LayoutParams(getContext(), attrs, template.getSpec(index));
+        inflatingTemplate = null;
         return new DynamicRelativeLayout.LayoutParams(getContext(), attrs);
     }
 
@@ -352,11 +641,14 @@ public class DynamicRelativeLayout extends ViewGroup {
         // gravity for child to align center, center_vertical or center horizontal
         public int gravity = -1;
 
-        // for internal use
-        public Integer dynamicRelativeMarginLeft = null;
-        public Integer dynamicRelativeMarginTop = null;
-        public Integer dynamicRelativeMarginRight = null;
-        public Integer dynamicRelativeMarginBottom = null;
+        // children with the same params share one spec. Guarded by itself, the first spec of a child is
+        // interned when its layout is inflated, which AsyncLayoutInflater does off the main thread
+        private static final NodeSpecInterner interner = new NodeSpecInterner();
+
+        // what the engine sees of these params, refreshed every measure pass. Interned while the params keep
+        // the values they were first measured with. Params that change after that, e.g. animated margins,
+        // get a spec of their own that is updated in place, so they do not intern a spec every frame
+        private NodeSpec nodeSpec;
 
         public LayoutParams(ViewGroup.LayoutParams source) {
             super(source);
@@ -387,185 +679,70 @@ public class DynamicRelativeLayout extends ViewGroup {
             a.recycle();
         }
 
-        public int checkHeightMinMax(int height, int parentHeight) {
-            if (dynamicHeightMin > 0 && height < Math.round(dynamicHeightMin * parentHeight)) {
-                return Math.round(dynamicHeightMin * parentHeight);
-            } else if (dynamicHeightMax > 0 && height > Math.round(dynamicHeightMax * parentHeight)) {
-                return Math.round(dynamicHeightMax * parentHeight);
-            }
-
-            return height;
-        }
-
-        public int checkWidthMinMax(int width, int parentWidth) {
-            if (dynamicWidthMin > 0 && width < Math.round(dynamicWidthMin * parentWidth)) {
-                return Math.round(dynamicWidthMin * parentWidth);
-            } else if (dynamicWidthMax > 0 && height > Math.round(dynamicWidthMax * parentWidth)) {
-                return Math.round(dynamicWidthMax * parentWidth);
-            }
-            return width;
-        }
-
-        private boolean isValidPercentRange(float percentage) {
-            return (percentage >= 0 && percentage <= 1);
-        }
-
-//        public int getCalculatedChildWidth(int childWidth, int parentWidth) {
-//            if (childWidth > 0)
-//                return childWidth;
-////            if (isValidPercentRange(dynamicMarginLeft) && isValidPercentRange(dynamicMarginRight)
-////                    && isValidPercentRange(dynamicMarginRight + dynamicMarginLeft))
-////                return Math.round(parentWidth * (1 - (dynamicMarginRight + dynamicMarginLeft)));
-////            if ((isValidPercentRange(dynamicMarginLeft) && this.width == LayoutParams.MATCH_PARENT) ||
-////                    (isValidPercentRange(dynamicMarginLeft) && this.width != LayoutParams.MATCH_PARENT && rightMargin > 0))
-////                return parentWidth - rightMargin - Math.round(parentWidth * dynamicMarginLeft);
-////            if ((isValidPercentRange(dynamicMarginRight) && this.width == LayoutParams.MATCH_PARENT) ||
-////                    (isValidPercentRange(dynamicMarginRight) && this.width != LayoutParams.MATCH_PARENT && leftMargin > 0))
-////                return parentWidth - leftMargin - Math.round(parentWidth * dynamicMarginRight);
-////            if (leftMargin > 0 && rightMargin > 0)
-////                return parentWidth - leftMargin - rightMargin;
-//            if (isValidPercentRange(dynamicWidth))
-//                return Math.round(parentWidth * dynamicWidth);
-//            return childWidth;
-//        }
-
-        public int getDynamicWidth(int parentWidth) {
-            if (width > 0)
-                return checkWidthMinMax(width, parentWidth);
-            else if (isValidPercentRange(dynamicWidth))
-                return checkWidthMinMax(Math.round(parentWidth * dynamicWidth), parentWidth);
-            else
-                return width;
-        }
-
-        public int getDynamicHeight(int parentHeight) {
-            if (height > 0)
-                return checkHeightMinMax(height, parentHeight);
-            else if (isValidPercentRange(dynamicHeight))
-                return checkHeightMinMax(Math.round(parentHeight * dynamicHeight), parentHeight);
-            else
-                return height;
-        }
-
-
-//        public int getCalculatedChildHeight(int childHeight, int parentHeight) {
-//            if (childHeight > 0)
-//                return childHeight;
-////            if (isValidPercentRange(dynamicMarginTop) && isValidPercentRange(dynamicMarginBottom)
-////                    && isValidPercentRange(dynamicMarginBottom + dynamicMarginTop))
-////                return Math.round(parentHeight * (1 - (dynamicMarginTop + dynamicMarginBottom)));
-////            if ((isValidPercentRange(dynamicMarginTop) && this.height == LayoutParams.MATCH_PARENT) ||
-////                    (isValidPercentRange(dynamicMarginTop) && this.height != LayoutParams.MATCH_PARENT && bottomMargin > 0))
-////                return parentHeight - bottomMargin - Math.round(parentHeight * dynamicMarginTop);
-////            if ((isValidPercentRange(dynamicMarginBottom) && this.height == LayoutParams.MATCH_PARENT) ||
-////                    (isValidPercentRange(dynamicMarginBottom) && this.height != LayoutParams.MATCH_PARENT && topMargin > 0))
-////                return parentHeight - topMargin - Math.round(parentHeight * dynamicMarginBottom);
-////            if (topMargin > 0 && bottomMargin > 0)
-////                return parentHeight - topMargin - bottomMargin;
-//            if (isValidPercentRange(dynamicHeight))
-//                return Math.round(parentHeight * dynamicHeight);
-//            return childHeight;
-//        }
-
-        public int getChildMarginLeft(int childWidth, int parentWidth) {
-            if (dynamicRelativeMarginLeft != null) {
-                return dynamicRelativeMarginLeft;
-            }
-
-            if (dynamicRelativeMarginRight != null) {
-                return dynamicRelativeMarginRight - childWidth;
-
-            }
-
-            if (dynamicMarginLeft != 0) {
-                return Math.round(parentWidth * dynamicMarginLeft);
-            }
-
-            if (dynamicMarginRight != 0) {
-                return parentWidth - childWidth - Math.round(parentWidth * dynamicMarginRight);
-            }
-
-            if (leftMargin != 0)
-                return leftMargin;
-
-            if (rightMargin != 0)
-                return parentWidth - childWidth - rightMargin;
-
-            return 0;
-
-        }
-
-        public int getChildMarginTop(int childHeight, int parentHeight) {
-            if (dynamicRelativeMarginTop != null) {
-                return dynamicRelativeMarginTop;
-            }
-
-            if (dynamicRelativeMarginBottom != null) {
-                return dynamicRelativeMarginBottom - childHeight;
-            }
-
-            if (dynamicMarginTop != 0) {
-                return Math.round(parentHeight * dynamicMarginTop);
-            }
-
-            if (dynamicMarginBottom != 0) {
-                return parentHeight - childHeight - Math.round(parentHeight * dynamicMarginBottom);
-            }
-            if (topMargin != 0)
-                return topMargin;
-
-            if (bottomMargin != 0)
-                return parentHeight - childHeight - bottomMargin;
-            return 0;
-        }
-
-        public int getLeftMargin(int parentWidth) {
-            if (dynamicRelativeMarginLeft != null)
-                return dynamicRelativeMarginLeft;
-            else if (dynamicMarginLeft == 0 && leftMargin == 0) {
-                return 0;
-            } else if (dynamicMarginLeft != 0) {
-                return Math.round(parentWidth * dynamicMarginLeft);
-            } else {
-                return leftMargin;
-            }
+        /**
+         * Takes the dynamic values from the spec of a template instead of parsing them from attrs.
+         */
+        LayoutParams(Context c, AttributeSet attrs, NodeSpec template) {
+            super(c, attrs);
+            dynamicMarginLeft = template.dynamicMarginLeft;
+            dynamicMarginTop = template.dynamicMarginTop;
+            dynamicMarginRight = template.dynamicMarginRight;
+            dynamicMarginBottom = template.dynamicMarginBottom;
+            dynamicHeight = template.dynamicHeight;
+            dynamicWidth = template.dynamicWidth;
+            dynamicHeightMax = template.dynamicHeightMax;
+            dynamicWidthMax = template.dynamicWidthMax;
+            dynamicHeightMin = template.dynamicHeightMin;
+            dynamicWidthMin = template.dynamicWidthMin;
+            dynamicBaseRefLeft = template.dynamicBaseRefLeft;
+            dynamicBaseRefTop = template.dynamicBaseRefTop;
+            dynamicBaseRefRight = template.dynamicBaseRefRight;
+            dynamicBaseRefBottom = template.dynamicBaseRefBottom;
         }
 
-        public int getTopMargin(int parentHeight) {
-            if (dynamicRelativeMarginTop != null)
-                return dynamicRelativeMarginTop;
-            else if (dynamicMarginTop == 0 && topMargin == 0) {
-                return 0;
-            } else if (dynamicMarginTop != 0) {
-                return Math.round(parentHeight * dynamicMarginTop);
-            } else {
-                return topMargin;
+        /**
+         * Returns the spec of these params for a child with id, probe is filled to compare them with the
+         * current spec.
+         */
+        NodeSpec toNodeSpec(int id, NodeSpec probe) {
+            if (nodeSpec != null && !nodeSpec.isInterned()) {
+                nodeSpec.id = id;
+                copyTo(nodeSpec);
+                return nodeSpec;
             }
-        }
-
-
-        public int getRightMargin(int parentWidth) {
-            if (dynamicRelativeMarginRight != null)
-                return dynamicRelativeMarginRight;
-            else if (dynamicMarginRight == 0 && rightMargin == 0) {
-                return 0;
-            } else if (dynamicMarginRight != 0) {
-                return Math.round(parentWidth * dynamicMarginRight);
-            } else {
-                return rightMargin;
+            probe.id = id;
+            copyTo(probe);
+            if (nodeSpec == null) {
+                synchronized (interner) {
+                    nodeSpec = interner.intern(probe);
+                }
+            } else if (!probe.hasSameValues(nodeSpec)) {
+                nodeSpec = new NodeSpec(probe);
             }
+            return nodeSpec;
         }
 
-        public int getBottomMargin(int parentHeight) {
-            if (dynamicRelativeMarginBottom != null) {
-                return dynamicRelativeMarginBottom;
-            } else if (dynamicMarginBottom == 0 && bottomMargin == 0) {
-                return 0;
-            } else if (dynamicMarginBottom != 0) {
-                return Math.round(parentHeight * dynamicMarginBottom);
-            } else {
-                return bottomMargin;
-            }
+        private void copyTo(NodeSpec spec) {
+            spec.width = width;
+            spec.height = height;
+            spec.leftMargin = leftMargin;
+            spec.topMargin = topMargin;
+            spec.rightMargin = rightMargin;
+            spec.bottomMargin = bottomMargin;
+            spec.dynamicMarginLeft = dynamicMarginLeft;
+            spec.dynamicMarginTop = dynamicMarginTop;
+            spec.dynamicMarginRight = dynamicMarginRight;
+            spec.dynamicMarginBottom = dynamicMarginBottom;
+            spec.dynamicWidth = dynamicWidth;
+            spec.dynamicHeight = dynamicHeight;
+            spec.dynamicWidthMax = dynamicWidthMax;
+            spec.dynamicWidthMin = dynamicWidthMin;
+            spec.dynamicHeightMax = dynamicHeightMax;
+            spec.dynamicHeightMin = dynamicHeightMin;
+            spec.dynamicBaseRefLeft = dynamicBaseRefLeft;
+            spec.dynamicBaseRefTop = dynamicBaseRefTop;
+            spec.dynamicBaseRefRight = dynamicBaseRefRight;
+            spec.dynamicBaseRefBottom = dynamicBaseRefBottom;
         }
     }
 }